@@ -0,0 +1,63 @@
+package ca.utoronto.utm.mcs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class benchmarks the Bacon and separation queries through Neo4jDAO, answered by the in-memory graph store.
+ * The DAO has no driver, since none of these queries reach the database.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class GraphQueryBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    int actors;
+
+    private SyntheticGraph graph;
+    private Neo4jDAO dao;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        graph = new SyntheticGraph(actors, 42);
+        dao = new Neo4jDAO(null, graph.store, new EntityCache(0, 0));
+    }
+
+    private String randomActor(){
+        return SyntheticGraph.actorId(ThreadLocalRandom.current().nextInt(graph.actors));
+    }
+
+    @Benchmark
+    public int computeBaconNumber(){
+        return dao.computeBaconNumber(randomActor());
+    }
+
+    @Benchmark
+    public ArrayList<String> computeBaconPath(){
+        return dao.computeBaconPath(randomActor());
+    }
+
+    @Benchmark
+    public Separation computeSeparation(){
+        return dao.computeSeparation(randomActor(), randomActor());
+    }
+}
@@ -0,0 +1,219 @@
+package ca.utoronto.utm.mcs;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class benchmarks one request end to end inside ReqHandler: parsing the body, routing on the path, the DAO
+ * call and encoding the response. Exchanges are in-memory stand-ins, entity lookups are served from a warm cache and
+ * path queries from the in-memory graph store, so nothing leaves the process. The parsers are also measured on their
+ * own against org.json.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class RequestBenchmark {
+    @Param({"10000", "100000"})
+    int actors;
+
+    private SyntheticGraph graph;
+    private ReqHandler handler;
+    private byte[][] getActorBodies;
+
+    private static final byte[] ADD_ACTOR_BODY = "{\"actorId\": \"nm1001213\", \"name\": \"Zoë Saldaña\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Setup(Level.Trial)
+    public void setup(){
+        graph = new SyntheticGraph(actors, 42);
+        EntityCache cache = new EntityCache(256L << 20, 5000);
+        Neo4jDAO dao = new Neo4jDAO(null, graph.store, cache);
+        handler = new ReqHandler(dao, null, null, new BulkLoader(dao, 5000), new BatchLookup(dao, 1000),
+                new BaconAnalytics(graph.store, 1, 20), new LandmarkOracle(graph.store, 16, 5000), null);
+
+        getActorBodies = new byte[1024][];
+        for(int i = 0; i < getActorBodies.length; i++){
+            String actorId = SyntheticGraph.actorId(i % graph.actors);
+            String key = EntityCache.actorKey(actorId);
+            cache.put(key, Neo4jDAO.toJson("actorId", Map.of("id", actorId, "name", "Actor " + i)),
+                    false, cache.version(key));
+            getActorBodies[i] = ("{\"actorId\": \"" + actorId + "\"}").getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private byte[] randomActorBody(){
+        return getActorBodies[ThreadLocalRandom.current().nextInt(getActorBodies.length)];
+    }
+
+    @Benchmark
+    public int getActor(){
+        Exchange exchange = new Exchange("GET", "/api/v1/getActor", randomActorBody());
+        handler.handle(exchange);
+        return exchange.status;
+    }
+
+    @Benchmark
+    public int computeBaconNumber(){
+        Exchange exchange = new Exchange("GET", "/api/v1/computeBaconNumber", randomActorBody());
+        handler.handle(exchange);
+        return exchange.status;
+    }
+
+    @Benchmark
+    public int computeBaconPath(){
+        Exchange exchange = new Exchange("GET", "/api/v1/computeBaconPath", randomActorBody());
+        handler.handle(exchange);
+        return exchange.status;
+    }
+
+    @Benchmark
+    public int unknownRoute(){
+        Exchange exchange = new Exchange("GET", "/api/v1/nothingHere", randomActorBody());
+        handler.handle(exchange);
+        return exchange.status;
+    }
+
+    @Benchmark
+    public String parseJsonReader() throws IOException, JSONException{
+        return JsonReader.read(new ByteArrayInputStream(ADD_ACTOR_BODY)).getString("name");
+    }
+
+    @Benchmark
+    public String parseOrgJson() throws IOException, JSONException{
+        return new JSONObject(Utils.convert(new ByteArrayInputStream(ADD_ACTOR_BODY))).getString("name");
+    }
+
+    /**
+     * This class is an exchange held entirely in memory, keeping the status and body the handler sends
+     */
+    static class Exchange extends HttpExchange {
+        private final String method;
+        private final URI uri;
+        private final InputStream requestBody;
+        private final Headers requestHeaders = new Headers();
+        private final Headers responseHeaders = new Headers();
+        private final ByteArrayOutputStream responseBody = new ByteArrayOutputStream(256);
+        int status = -1;
+
+        Exchange(String method, String path, byte[] body){
+            this.method = method;
+            this.uri = URI.create(path);
+            this.requestBody = new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public Headers getRequestHeaders(){
+            return requestHeaders;
+        }
+
+        @Override
+        public Headers getResponseHeaders(){
+            return responseHeaders;
+        }
+
+        @Override
+        public URI getRequestURI(){
+            return uri;
+        }
+
+        @Override
+        public String getRequestMethod(){
+            return method;
+        }
+
+        @Override
+        public HttpContext getHttpContext(){
+            return null;
+        }
+
+        @Override
+        public void close(){
+        }
+
+        @Override
+        public InputStream getRequestBody(){
+            return requestBody;
+        }
+
+        @Override
+        public OutputStream getResponseBody(){
+            return responseBody;
+        }
+
+        @Override
+        public void sendResponseHeaders(int rCode, long responseLength){
+            status = rCode;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress(){
+            return null;
+        }
+
+        @Override
+        public int getResponseCode(){
+            return status;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress(){
+            return null;
+        }
+
+        @Override
+        public String getProtocol(){
+            return "HTTP/1.1";
+        }
+
+        @Override
+        public Object getAttribute(String name){
+            return null;
+        }
+
+        @Override
+        public void setAttribute(String name, Object value){
+        }
+
+        @Override
+        public void setStreams(InputStream i, OutputStream o){
+        }
+
+        @Override
+        public HttpPrincipal getPrincipal(){
+            return null;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ca.utoronto.utm.mcs;
+
+import java.util.Random;
+
+/**
+ * This class builds a synthetic actor-movie graph in an InMemoryGraphStore, standing in for the database in the
+ * benchmarks. There are four actors per movie and four credits per actor, with credits drawn from a skewed
+ * distribution so a few movies have large casts the way real ones do. The graph only depends on the size and the
+ * seed, so every run measures the same graph.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+final class SyntheticGraph {
+    // Movies Kevin Bacon is credited in
+    private static final int BACON_MOVIES = 40;
+
+    final int actors;
+    final int movies;
+    final InMemoryGraphStore store = new InMemoryGraphStore();
+
+    /**
+     * Constructor, builds the graph
+     * @param actors the number of actors besides Kevin Bacon
+     * @param seed the seed for the credits
+     */
+    SyntheticGraph(int actors, long seed){
+        this.actors = actors;
+        this.movies = Math.max(1, actors / 4);
+        Random random = new Random(seed);
+        for(int i = 0; i < actors; i++){
+            store.addActor(actorId(i));
+        }
+        for(int i = 0; i < movies; i++){
+            store.addMovie(movieId(i));
+        }
+        for(int i = 0; i < actors; i++){
+            for(int credit = 0; credit < 4; credit++){
+                store.addRelationship(actorId(i), movieId(movie(random)));
+            }
+        }
+
+        // Kevin Bacon goes in last, so the distance index is built once instead of being relaxed on every credit
+        store.addActor(GraphStore.KEVIN_BACON);
+        for(int credit = 0; credit < BACON_MOVIES; credit++){
+            store.addRelationship(GraphStore.KEVIN_BACON, movieId(movie(random)));
+        }
+    }
+
+    /**
+     * This method picks a movie, favouring low numbers so cast sizes are skewed
+     */
+    private int movie(Random random){
+        double u = random.nextDouble();
+        return (int) (movies * u * u);
+    }
+
+    static String actorId(int i){
+        return String.format("nm%07d", i + 1_000_000);
+    }
+
+    static String movieId(int i){
+        return String.format("tt%07d", i + 1_000_000);
+    }
+}
@@ -0,0 +1,195 @@
+package ca.utoronto.utm.mcs;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class limits how many requests for one endpoint run at once, with a short bounded queue in front. Waiting
+ * requests are parked in the queue rather than blocking a thread, and are handed a slot by whichever request gives
+ * one back, or shed once their deadline passes. The limit
+ * adapts AIMD style to the latency the endpoint is showing: every request that finishes within the target latency
+ * adds 1/limit (so about one per full window), and one that runs over the target or fails cuts the limit by a fixed
+ * fraction, at most once per smoothed latency so a single slow burst does not collapse it.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+class AdaptiveLimit {
+    // What acquire did with a request
+    enum Admission { ADMITTED, QUEUED, SHED }
+
+    // Fraction the limit is cut to when latency runs over the target
+    private static final double BACKOFF = 0.9;
+
+    // Weight of each new sample in the smoothed latency
+    private static final double SMOOTHING = 0.1;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final long targetNanos;
+
+    // Guarded by this
+    private double limit;
+    private int inFlight = 0;
+    private final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+    private double smoothedNanos;
+    private long lastDecrease = 0;
+    private long admitted = 0;
+    private long rejected = 0;
+
+    /**
+     * Constructor, creates a limit with the given bounds
+     * @param initialLimit the limit before any latency has been seen
+     * @param minLimit the limit is never cut below this
+     * @param maxLimit the limit never grows above this
+     * @param maxQueue the most requests that may wait for a slot
+     * @param targetMillis the latency the limit aims to keep requests under
+     */
+    AdaptiveLimit(int initialLimit, int minLimit, int maxLimit, int maxQueue, long targetMillis){
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueue = maxQueue;
+        this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+        this.smoothedNanos = targetNanos / 2.0;
+    }
+
+    /**
+     * This method takes a slot for a request, or parks it in the queue if the queue is not full. A parked request
+     * is admitted or shed later, on another thread, through its waiter.
+     * @param waiter what to do with the request once it leaves the queue
+     * @return   whether the request was admitted, queued or should be shed now
+     */
+    synchronized Admission acquire(Waiter waiter){
+        if(inFlight < (int) limit && queue.isEmpty()){
+            inFlight++;
+            admitted++;
+            return Admission.ADMITTED;
+        }
+        if(queue.size() >= maxQueue){
+            rejected++;
+            return Admission.SHED;
+        }
+        queue.addLast(waiter);
+        return Admission.QUEUED;
+    }
+
+    /**
+     * This method gives a slot back and adjusts the limit by how the request went, then hands any free slots to the
+     * oldest parked requests
+     * @param latencyNanos how long the request held the slot
+     * @param failed whether the request failed on the server's side
+     */
+    void release(long latencyNanos, boolean failed){
+        List<Waiter> ready = null;
+        synchronized(this){
+            inFlight--;
+            smoothedNanos += SMOOTHING * (latencyNanos - smoothedNanos);
+            long now = System.nanoTime();
+            if(failed || latencyNanos > targetNanos){
+                if(now - lastDecrease > smoothedNanos){
+                    limit = Math.max(minLimit, limit * BACKOFF);
+                    lastDecrease = now;
+                }
+            }else if(inFlight + 1 >= (int) limit / 2){
+                // Only grown while it is actually being used, so a quiet endpoint does not drift up to the maximum
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            while(inFlight < (int) limit && !queue.isEmpty()){
+                if(ready == null){
+                    ready = new ArrayList<>(1);
+                }
+                ready.add(queue.pollFirst());
+                inFlight++;
+                admitted++;
+            }
+        }
+        // Run outside the lock, since admitting hands the request to an executor
+        if(ready != null){
+            for(Waiter waiter : ready){
+                waiter.admit();
+            }
+        }
+    }
+
+    /**
+     * This method sheds the parked requests whose deadline has passed. Every request waits the same timeout, so
+     * they are all at the front of the queue.
+     * @param now System.nanoTime() of the check
+     */
+    void expire(long now){
+        List<Waiter> expired = null;
+        synchronized(this){
+            while(!queue.isEmpty() && now - queue.peekFirst().deadline >= 0){
+                if(expired == null){
+                    expired = new ArrayList<>();
+                }
+                expired.add(queue.pollFirst());
+                rejected++;
+            }
+        }
+        if(expired != null){
+            for(Waiter waiter : expired){
+                waiter.shed();
+            }
+        }
+    }
+
+    /**
+     * This method estimates how long a shed request should wait before retrying: long enough for the queue ahead of
+     * it to drain at the current limit and latency
+     * @return   the wait in whole seconds, at least 1
+     */
+    synchronized long retryAfterSeconds(){
+        double drainNanos = (queue.size() + 1) * smoothedNanos / Math.max(1, (int) limit);
+        return Math.max(1, (long) Math.ceil(drainNanos / 1e9));
+    }
+
+    synchronized int limit(){
+        return (int) limit;
+    }
+
+    synchronized int inFlight(){
+        return inFlight;
+    }
+
+    synchronized int waiting(){
+        return queue.size();
+    }
+
+    synchronized long admitted(){
+        return admitted;
+    }
+
+    synchronized long rejected(){
+        return rejected;
+    }
+
+    synchronized long smoothedMillis(){
+        return (long) (smoothedNanos / 1e6);
+    }
+
+    /**
+     * This class is a request parked in the queue, and what to do with it when it leaves
+     */
+    abstract static class Waiter {
+        // System.nanoTime() past which the request is shed instead of admitted
+        final long deadline;
+
+        Waiter(long deadline){
+            this.deadline = deadline;
+        }
+
+        /**
+         * This method runs the request, which now holds a slot it must give back with release
+         */
+        abstract void admit();
+
+        /**
+         * This method answers the request without running it
+         */
+        abstract void shed();
+    }
+}
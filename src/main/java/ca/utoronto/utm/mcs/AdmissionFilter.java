@@ -0,0 +1,274 @@
+package ca.utoronto.utm.mcs;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class sits in front of ReqHandler and sheds load before it can pile up. Every endpoint gets its own
+ * AdaptiveLimit, so a burst of expensive path queries fills only its own slots and queue while lookups keep flowing.
+ * A request that finds its endpoint's slots taken is parked in the queue without holding a thread, and run on the
+ * request executor once a slot frees. One that finds the queue full, or waits in it too long, is answered with a 503
+ * and a Retry-After instead of waiting behind everything else until the client times out.
+ *
+ * Handlers that finish an exchange after returning (the async DAO path) take the request's permit with detach and
+ * release it themselves, so the slot is held until the response is really sent.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+public class AdmissionFilter extends Filter {
+    // The permit of the request whose handler is running on this thread, for detach. Not an exchange attribute, since
+    // the JDK server shares those between every exchange on a context, and not keyed by exchange, since a transport
+    // may reuse those objects
+    private static final ThreadLocal<Permit> CURRENT = new ThreadLocal<>();
+
+    // Distinct paths given their own limit, anything past this shares one so unknown paths cannot grow the map
+    private static final int MAX_ENDPOINTS = 64;
+    private static final String OTHER = "other";
+
+    private final boolean enabled;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final long queueTimeoutNanos;
+    private final long targetMillis;
+    private final Executor executor;
+
+    private final ConcurrentHashMap<String, AdaptiveLimit> limits = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor, creates the filter with the bounds every endpoint's limit starts from
+     * @param enabled false to let every request straight through
+     * @param initialLimit the concurrency each endpoint starts with
+     * @param minLimit the lowest an endpoint's concurrency is cut to
+     * @param maxLimit the highest an endpoint's concurrency grows to
+     * @param maxQueue the most requests that may wait for each endpoint
+     * @param queueTimeoutMillis the longest a request waits in the queue before it is shed
+     * @param targetMillis the latency each endpoint's limit aims to keep requests under
+     * @param executor the executor queued requests are run on once admitted, or null to run them on the thread that
+     *                 freed their slot
+     */
+    public AdmissionFilter(boolean enabled, int initialLimit, int minLimit, int maxLimit, int maxQueue,
+                           long queueTimeoutMillis, long targetMillis, Executor executor){
+        this.enabled = enabled;
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueue = maxQueue;
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+        this.targetMillis = targetMillis;
+        this.executor = executor;
+        if(enabled && maxQueue > 0){
+            // Sheds requests that waited out their timeout, checked a few times per timeout
+            ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "admission-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(1, queueTimeoutMillis / 4);
+            sweeper.scheduleWithFixedDelay(this::expire, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public String description(){
+        return "Adaptive per-endpoint concurrency limits with load shedding";
+    }
+
+    /**
+     * This method admits, queues or sheds a request, and answers the admin admission endpoint itself
+     * @param exchange is the information given by the sender
+     * @param chain the rest of the filters and the handler
+     * @throws IOException
+     */
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException{
+        String path = exchange.getRequestURI().getPath();
+        if(path.equals("/api/v1/admin/admission")){
+            stats().send(exchange, 200);
+            return;
+        }
+        if(!enabled){
+            chain.doFilter(exchange);
+            return;
+        }
+
+        AdaptiveLimit limit = limitFor(path);
+        switch(limit.acquire(new Parked(exchange, chain, limit, System.nanoTime() + queueTimeoutNanos))){
+            case ADMITTED:
+                run(exchange, chain, limit);
+                break;
+            case QUEUED:
+                // Returns without an answer, the request is run or shed from the queue
+                break;
+            default:
+                shed(exchange, limit);
+        }
+    }
+
+    /**
+     * This method runs the rest of the chain for a request that holds a slot, and gives the slot back once the
+     * handler returns unless the handler took it over
+     */
+    private static void run(HttpExchange exchange, Chain chain, AdaptiveLimit limit) throws IOException{
+        Permit permit = new Permit(limit);
+        CURRENT.set(permit);
+        try{
+            chain.doFilter(exchange);
+        }finally{
+            // Still there means the handler finished the exchange before returning
+            boolean held = CURRENT.get() == permit;
+            CURRENT.remove();
+            if(held){
+                permit.release(exchange.getResponseCode());
+            }
+        }
+    }
+
+    /**
+     * This method answers a request that could not be admitted with a 503 and when to retry
+     */
+    private static void shed(HttpExchange exchange, AdaptiveLimit limit) throws IOException{
+        exchange.getResponseHeaders().set("Retry-After", String.valueOf(limit.retryAfterSeconds()));
+        exchange.sendResponseHeaders(503, -1);
+        exchange.close();
+    }
+
+    /**
+     * This method takes over the permit of the request being handled on this thread, for a handler that sends the
+     * response after it returns. The handler must release the permit once the response is sent.
+     * @return   the permit, or null if the request was not admitted through this filter
+     */
+    static Permit detach(){
+        Permit permit = CURRENT.get();
+        CURRENT.remove();
+        return permit;
+    }
+
+    /**
+     * This method sheds the queued requests of every endpoint that have waited too long
+     */
+    private void expire(){
+        try{
+            long now = System.nanoTime();
+            for(AdaptiveLimit limit : limits.values()){
+                limit.expire(now);
+            }
+        }catch(Exception e){
+            // An exception would stop the scheduled task for good
+            e.printStackTrace();
+        }
+    }
+
+    private AdaptiveLimit limitFor(String path){
+        AdaptiveLimit limit = limits.get(path);
+        if(limit != null){
+            return limit;
+        }
+        String key = limits.size() < MAX_ENDPOINTS ? path : OTHER;
+        return limits.computeIfAbsent(key, k -> new AdaptiveLimit(initialLimit, minLimit, maxLimit, maxQueue,
+                targetMillis));
+    }
+
+    /**
+     * This method reports the current limit and counters of every endpoint seen so far
+     */
+    private JsonWriter stats(){
+        JsonWriter writer = JsonWriter.get().beginObject().name("enabled").value(enabled);
+        writer.name("endpoints").beginObject();
+        for(Map.Entry<String, AdaptiveLimit> entry : new TreeMap<>(limits).entrySet()){
+            AdaptiveLimit limit = entry.getValue();
+            writer.name(entry.getKey()).beginObject()
+                    .name("limit").value(limit.limit())
+                    .name("inFlight").value(limit.inFlight())
+                    .name("waiting").value(limit.waiting())
+                    .name("latencyMs").value(limit.smoothedMillis())
+                    .name("admitted").value(limit.admitted())
+                    .name("rejected").value(limit.rejected())
+                    .endObject();
+        }
+        return writer.endObject().endObject();
+    }
+
+    /**
+     * This class is a request waiting in an endpoint's queue, with what it needs to carry on through the chain
+     */
+    private class Parked extends AdaptiveLimit.Waiter {
+        private final HttpExchange exchange;
+        private final Chain chain;
+        private final AdaptiveLimit limit;
+
+        Parked(HttpExchange exchange, Chain chain, AdaptiveLimit limit, long deadline){
+            super(deadline);
+            this.exchange = exchange;
+            this.chain = chain;
+            this.limit = limit;
+        }
+
+        @Override
+        void admit(){
+            Runnable resume = () -> {
+                try{
+                    run(exchange, chain, limit);
+                }catch(Exception e){
+                    e.printStackTrace();
+                    exchange.close();
+                }
+            };
+            if(executor == null){
+                resume.run();
+                return;
+            }
+            try{
+                executor.execute(resume);
+            }catch(RejectedExecutionException e){
+                // The executor is shutting down, so the slot is given back unused
+                new Permit(limit).release(503);
+                shed();
+            }
+        }
+
+        @Override
+        void shed(){
+            try{
+                AdmissionFilter.shed(exchange, limit);
+            }catch(IOException e){
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * This class is one admitted request's slot, released once however many paths try to release it
+     */
+    static class Permit {
+        private final AdaptiveLimit limit;
+        private final long started = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Permit(AdaptiveLimit limit){
+            this.limit = limit;
+        }
+
+        /**
+         * This method gives the slot back
+         * @param status the status the request was answered with, 5xx counting as a failure
+         */
+        void release(int status){
+            if(released.compareAndSet(false, true)){
+                limit.release(System.nanoTime() - started, status >= 500 || status < 0);
+            }
+        }
+    }
+}
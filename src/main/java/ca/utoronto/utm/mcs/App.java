@@ -1,10 +1,15 @@
 package ca.utoronto.utm.mcs;
 
+import com.sun.net.httpserver.HttpContext;
 import io.github.cdimascio.dotenv.Dotenv;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 /**
 * This Class creates the Server and Handler components, as well as the server context, and starts the server.
+* Run with the arguments "import <directory>" it imports the IMDb dumps in that directory instead, and with "load"
+* followed by LoadGenerator options it drives a running server with load.
 * @version 1.0
 * @author Armand Sarkezians
  */
@@ -12,21 +17,61 @@ public class App{
     //Port number for local host
     static int port = 8080;
 
-    public static void main(String[] args) throws IOException{
+    public static void main(String[] args) throws IOException, InterruptedException{
+        // Importer mode, seeds the database from the IMDb dumps in a directory instead of starting the server
+        if(args.length == 2 && args[0].equals("import")){
+            ImdbImporter importer = DaggerReqHandlerComponent.factory()
+                    .create(DaggerServerComponent.create().buildExecutor()).buildImporter();
+            importer.run(Paths.get(args[1]));
+            System.exit(0);
+        }
+
+        // Load mode, drives a server that is already running and prints its latencies
+        if(args.length >= 1 && args[0].equals("load")){
+            LoadGenerator.main(Arrays.copyOfRange(args, 1, args.length));
+            System.exit(0);
+        }
+
         //Creating Server and Handler Components
         ServerComponent serverComponent = DaggerServerComponent.create();
-        ReqHandlerComponent reqHandlerComponent = DaggerReqHandlerComponent.create();
+        ReqHandlerComponent reqHandlerComponent = DaggerReqHandlerComponent.factory()
+                .create(serverComponent.buildExecutor());
 
         //Building the handler and server
         ReqHandler reqHandler = reqHandlerComponent.buildHandler();
         Server server = serverComponent.buildServer();
 
-        //Creating the server context and starting the server
-        server.getHttpSever().createContext("/api/v1/", reqHandler);
+        //Creating the server context, behind the admission filter, and starting the server
+        HttpContext context = server.getHttpSever().createContext("/api/v1/", reqHandler);
+        context.getFilters().add(serverComponent.buildAdmissionFilter());
         server.getHttpSever().start();
 
         System.out.printf("Server started on port %d\n", port);
 
+        // Saving the in-memory graph on shutdown so the next start can skip the full load
+        if("true".equalsIgnoreCase(Dotenv.load().get("SNAPSHOT_ON_SHUTDOWN", "false"))){
+            GraphStore graphStore = reqHandler.getNeo4j().getGraphStore();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try{
+                    graphStore.saveSnapshot();
+                }catch(IOException e){
+                    e.printStackTrace();
+                }
+            }));
+        }
+
+        // Closing the log on shutdown in embedded storage, every acknowledged write is already on disk
+        if(reqHandler.getNeo4j() instanceof EmbeddedDAO){
+            EmbeddedDAO dao = (EmbeddedDAO) reqHandler.getNeo4j();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try{
+                    dao.close();
+                }catch(IOException e){
+                    e.printStackTrace();
+                }
+            }));
+        }
+
         // This code is used to get the neo4j address, you must use this so that we can mark :)
         Dotenv dotenv = Dotenv.load();
         String addr = dotenv.get("NEO4J_ADDR");
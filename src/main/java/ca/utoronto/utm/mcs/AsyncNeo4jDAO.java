@@ -0,0 +1,209 @@
+package ca.utoronto.utm.mcs;
+
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.Values;
+import org.neo4j.driver.async.AsyncSession;
+import org.neo4j.driver.summary.ResultSummary;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+* This class is the non-blocking counterpart of Neo4jDAO for the lookups and single writes. Every method sends its
+* statement on an AsyncSession and returns straight away; the result arrives on one of the driver's I/O threads, so a
+* handful of threads can keep thousands of queries in flight. It shares the driver, graph store and cache with the
+* blocking DAO, and keeps the same answers and the same invalidation rules. A write that created something updates
+* the graph store on the callback executor rather than the I/O thread, since that takes the store's write lock.
+* @version 1.0
+* @author Armand Sarkezians
+*/
+public class AsyncNeo4jDAO {
+    private final Driver driver;
+    private final GraphStore graphStore;
+    private final EntityCache cache;
+    private final QueryProfiler profiler;
+
+    // Where the work after a write runs, so the driver's I/O threads only complete futures
+    private final Executor callbacks;
+
+    /**
+    * Constructor, keeps what the blocking DAO was built with, and the executor that the graph store is updated on
+    */
+    public AsyncNeo4jDAO(Driver driver, GraphStore graphStore, EntityCache cache, QueryProfiler profiler,
+                         Executor callbacks){
+        this.driver = driver;
+        this.graphStore = graphStore;
+        this.cache = cache;
+        this.profiler = profiler;
+        this.callbacks = callbacks;
+    }
+
+    /**
+    * This method adds an actor to the database if not already there
+    * @param name the name of the actor
+    * @param actorId the id of the actor
+    * @return   completes with true if the actor was created
+    */
+    public CompletionStage<Boolean> addActor(String name, String actorId){
+        return withSession(session -> consume(session, Queries.MERGE_ACTOR,
+                Values.parameters("name", name, "actorId", actorId)))
+                .thenApplyAsync(summary -> {
+                    boolean created = summary.counters().nodesCreated() > 0;
+                    if(created){
+                        cache.invalidate(EntityCache.actorKey(actorId));
+                        graphStore.addActor(actorId);
+                    }
+                    return created;
+                }, callbacks);
+    }
+
+    /**
+    * This method adds a movie to the database if not already there
+    * @param name the name of the movie
+    * @param movieId the id of the movie
+    * @return   completes with true if the movie was created
+    */
+    public CompletionStage<Boolean> addMovie(String name, String movieId){
+        return withSession(session -> consume(session, Queries.MERGE_MOVIE,
+                Values.parameters("name", name, "movieId", movieId)))
+                .thenApplyAsync(summary -> {
+                    boolean created = summary.counters().nodesCreated() > 0;
+                    if(created){
+                        cache.invalidate(EntityCache.movieKey(movieId));
+                        graphStore.addMovie(movieId);
+                    }
+                    return created;
+                }, callbacks);
+    }
+
+    /**
+    * This method adds a relationship between an existing actor and an existing movie
+    * @param actorId the id of the actor
+    * @param movieId the id of the movie
+    * @return   completes with true if the relationship was created
+    */
+    public CompletionStage<Boolean> addRelationship(String actorId, String movieId){
+        return withSession(session -> consume(session, Queries.MERGE_RELATIONSHIP,
+                Values.parameters("actorId", actorId, "movieId", movieId)))
+                .thenApplyAsync(summary -> {
+                    boolean created = summary.counters().relationshipsCreated() > 0;
+                    if(created){
+                        cache.invalidate(EntityCache.relationshipKey(actorId, movieId));
+                        graphStore.addRelationship(actorId, movieId);
+                    }
+                    return created;
+                }, callbacks);
+    }
+
+    /**
+    * This method gets the information of an actor
+    * @param actorId the id of the actor
+    * @return   completes with the information of the actor, or "Not Found"
+    */
+    public CompletionStage<String> getActor(String actorId){
+        return lookup(EntityCache.actorKey(actorId), Queries.GET_ACTOR, "a", "actorId",
+                Values.parameters("actorId", actorId));
+    }
+
+    /**
+    * This method gets the information of a movie
+    * @param movieId the id of the movie
+    * @return   completes with the information of the movie, or "Not Found"
+    */
+    public CompletionStage<String> getMovie(String movieId){
+        return lookup(EntityCache.movieKey(movieId), Queries.GET_MOVIE, "m", "movieId",
+                Values.parameters("movieId", movieId));
+    }
+
+    /**
+    * This method checks to see if there is a relationship between an actor and a movie
+    * @param actorId the id of the actor
+    * @param movieId the id of the movie
+    * @return   completes with "TRUE" or "FALSE"
+    */
+    public CompletionStage<String> hasRelationship(String actorId, String movieId){
+        String key = EntityCache.relationshipKey(actorId, movieId);
+        String cached = cache.get(key);
+        if(cached != null){
+            return CompletableFuture.completedFuture(cached);
+        }
+        long version = cache.version(key);
+        return withSession(session -> first(session, Queries.HAS_RELATIONSHIP,
+                Values.parameters("actorId", actorId, "movieId", movieId)))
+                .thenApply(record -> {
+                    String relationship = record == null ? "Not Found" : record.get("exists").toString();
+                    cache.put(key, relationship, !relationship.equals("TRUE"), version);
+                    return relationship;
+                });
+    }
+
+    /**
+    * This method runs a lookup of one node through the cache
+    */
+    private CompletionStage<String> lookup(String key, String query, String column, String idField,
+                                           Value parameters){
+        String cached = cache.get(key);
+        if(cached != null){
+            return CompletableFuture.completedFuture(cached);
+        }
+        long version = cache.version(key);
+        return withSession(session -> first(session, query, parameters))
+                .thenApply((Record record) -> {
+                    String node = record == null ? "Not Found" : Neo4jDAO.toJson(idField, record.get(column).asMap());
+                    cache.put(key, node, node.equals("Not Found"), version);
+                    return node;
+                });
+    }
+
+    /**
+    * This method sends a statement whose rows are not needed, and completes with its summary once it is counted in
+    * the profiler
+    */
+    private CompletionStage<ResultSummary> consume(AsyncSession session, String query, Value parameters){
+        long started = System.nanoTime();
+        return session.runAsync(query, parameters).thenCompose(cursor -> cursor.consumeAsync())
+                .thenApply(summary -> {
+                    profiler.record(query, parameters, started, summary);
+                    return summary;
+                });
+    }
+
+    /**
+    * This method sends a statement and completes with its first record, or null if it has none, once it is counted
+    * in the profiler
+    */
+    private CompletionStage<Record> first(AsyncSession session, String query, Value parameters){
+        long started = System.nanoTime();
+        return session.runAsync(query, parameters).thenCompose(cursor -> cursor.nextAsync()
+                .thenCompose(record -> cursor.consumeAsync().thenApply(summary -> {
+                    profiler.record(query, parameters, started, summary);
+                    return record;
+                })));
+    }
+
+    /**
+    * This method runs some work on a new async session and closes the session once the work has finished, whether
+    * it succeeded or not
+    */
+    private <T> CompletionStage<T> withSession(Function<AsyncSession, CompletionStage<T>> work){
+        AsyncSession session = driver.asyncSession();
+        CompletionStage<T> stage;
+        try{
+            stage = work.apply(session);
+        }catch(RuntimeException e){
+            stage = CompletableFuture.failedFuture(e);
+        }
+        return stage.handle((result, error) -> session.closeAsync().thenApply(closed -> {
+            if(error != null){
+                throw error instanceof CompletionException ? (CompletionException) error
+                        : new CompletionException(error);
+            }
+            return result;
+        })).thenCompose(Function.identity());
+    }
+}
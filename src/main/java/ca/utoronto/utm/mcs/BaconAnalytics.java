@@ -0,0 +1,288 @@
+package ca.utoronto.utm.mcs;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class runs whole-graph statistics over the in-memory graph: how far apart every pair of actors is, the
+ * distribution of Bacon numbers, and the closeness centrality of every actor, so we can see who is a better centre
+ * than Kevin Bacon. A BFS from every actor is far too slow one at a time, so the actors are taken 64 at a time by
+ * MultiSourceBfs and the runs are spread across cores with fork/join. Only one job runs at a time, in the background,
+ * and its progress can be read while it runs.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+public class BaconAnalytics {
+    private final GraphStore graphStore;
+    private final int threads;
+    private final int top;
+
+    // The running or last finished job, or null if none was started
+    private volatile Job job;
+
+    /**
+     * Constructor, creates the analytics over a graph store
+     * @param graphStore the store holding the graph
+     * @param threads the number of cores a job may use
+     * @param top the number of most central actors reported
+     */
+    public BaconAnalytics(GraphStore graphStore, int threads, int top){
+        this.graphStore = graphStore;
+        this.threads = threads;
+        this.top = top;
+    }
+
+    /**
+     * This method starts a job over the graph as it is now
+     * @return   false if the store does not hold the graph in process, true if the job was started
+     * @throws IllegalStateException if a job is already running
+     */
+    public synchronized boolean start(){
+        if(job != null && job.state.equals("running")){
+            throw new IllegalStateException("An analytics job is already running");
+        }
+        GraphView view = graphStore.view();
+        if(view == null){
+            return false;
+        }
+        Job started = new Job(view);
+        job = started;
+        Thread thread = new Thread(started::run, "bacon-analytics");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * This method reports the progress of the current job, and its results once it is done
+     * @return   the writer holding the JSON report, or null if no job was started
+     */
+    public JsonWriter status(){
+        Job current = job;
+        return current == null ? null : current.write(JsonWriter.get());
+    }
+
+    /**
+     * This class is one run over a captured graph, with its progress and totals
+     */
+    private class Job {
+        final GraphView view;
+        final int batches;
+        final AtomicInteger batchesDone = new AtomicInteger();
+        final long startedAt = System.nanoTime();
+        volatile long finishedAt;
+        volatile String state = "running";
+        volatile String error;
+
+        // Indexed like view.actors, each batch fills its own range so no locking is needed
+        final long[] reached;
+        final long[] distanceSum;
+
+        // Merged from every batch under the job's monitor
+        final MultiSourceBfs.Histogram pairs = new MultiSourceBfs.Histogram();
+        final MultiSourceBfs.Histogram bacon = new MultiSourceBfs.Histogram();
+        final int baconIndex;
+
+        // Filled once every batch is done
+        double[] closeness;
+        int[] central;
+
+        Job(GraphView view){
+            this.view = view;
+            this.batches = (view.actors.length + MultiSourceBfs.WIDTH - 1) / MultiSourceBfs.WIDTH;
+            this.reached = new long[view.actors.length];
+            this.distanceSum = new long[view.actors.length];
+            // The actors are in node order, so Kevin Bacon's node can be searched for
+            int bacon = view.ids.get(IdDictionary.ACTOR, GraphStore.KEVIN_BACON);
+            this.baconIndex = bacon < 0 ? -1 : Math.max(-1, Arrays.binarySearch(view.actors, bacon));
+        }
+
+        void run(){
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try{
+                ThreadLocal<MultiSourceBfs> searches = ThreadLocal.withInitial(() -> new MultiSourceBfs(view));
+                pool.invoke(new Batches(this, searches, 0, batches));
+                rank();
+                finishedAt = System.nanoTime();
+                state = "done";
+                System.out.printf("Analytics over %d actors done in %.1fs\n", view.actors.length,
+                        (finishedAt - startedAt) / 1e9);
+            }catch(RuntimeException | OutOfMemoryError e){
+                e.printStackTrace();
+                error = String.valueOf(e);
+                finishedAt = System.nanoTime();
+                state = "failed";
+            }finally{
+                // The workers, and the search buffers they hold, go away with the pool
+                pool.shutdown();
+            }
+        }
+
+        /**
+         * This method searches from one batch of 64 actors and files the results
+         */
+        void runBatch(MultiSourceBfs search, int batch){
+            int from = batch * MultiSourceBfs.WIDTH;
+            int count = Math.min(MultiSourceBfs.WIDTH, view.actors.length - from);
+            int[] sources = new int[count];
+            System.arraycopy(view.actors, from, sources, 0, count);
+            long[] batchReached = new long[count];
+            long[] batchSum = new long[count];
+            MultiSourceBfs.Histogram batchPairs = new MultiSourceBfs.Histogram();
+            MultiSourceBfs.Histogram batchBacon = new MultiSourceBfs.Histogram();
+            int baconLane = baconIndex >= from && baconIndex < from + count ? baconIndex - from : -1;
+
+            search.run(sources, batchReached, batchSum, batchPairs, baconLane, batchBacon);
+
+            System.arraycopy(batchReached, 0, reached, from, count);
+            System.arraycopy(batchSum, 0, distanceSum, from, count);
+            synchronized(this){
+                pairs.add(batchPairs);
+                bacon.add(batchBacon);
+            }
+
+            int done = batchesDone.incrementAndGet();
+            if(done * 10L / batches != (done - 1) * 10L / batches){
+                System.out.printf("Analytics %d%% done, about %ds left\n", done * 100L / batches, etaMillis() / 1000);
+            }
+        }
+
+        /**
+         * This method works out every actor's closeness and picks the most central ones. Closeness is the
+         * Wasserman-Faust form, (r / sum) * (r / (n - 1)) for an actor reaching r others at total distance sum, so
+         * actors in small components are not rated above those in the giant one.
+         */
+        void rank(){
+            int actors = view.actors.length;
+            closeness = new double[actors];
+            PriorityQueue<Integer> best = new PriorityQueue<>((a, b) -> Double.compare(closeness[a], closeness[b]));
+            for(int i = 0; i < actors; i++){
+                if(distanceSum[i] > 0){
+                    closeness[i] = ((double) reached[i] / distanceSum[i]) * ((double) reached[i] / (actors - 1));
+                }
+                best.add(i);
+                if(best.size() > top){
+                    best.poll();
+                }
+            }
+            central = new int[best.size()];
+            for(int i = central.length - 1; i >= 0; i--){
+                central[i] = best.poll();
+            }
+        }
+
+        long elapsedMillis(){
+            long end = state.equals("running") ? System.nanoTime() : finishedAt;
+            return (end - startedAt) / 1_000_000;
+        }
+
+        /**
+         * This method estimates the time left from the rate batches have finished at so far
+         */
+        long etaMillis(){
+            int done = batchesDone.get();
+            if(done == 0){
+                return -1;
+            }
+            return elapsedMillis() * (batches - done) / done;
+        }
+
+        JsonWriter write(JsonWriter writer){
+            int done = batchesDone.get();
+            writer.beginObject()
+                    .name("state").value(state)
+                    .name("actors").value(view.actors.length)
+                    .name("batches").value(batches)
+                    .name("batchesDone").value(done)
+                    .name("progress").value(batches == 0 ? 1.0 : (double) done / batches)
+                    .name("elapsedMs").value(elapsedMillis());
+            if(state.equals("running")){
+                writer.name("etaMs").value(etaMillis());
+            }else if(state.equals("failed")){
+                writer.name("error").value(error);
+            }else{
+                writeResults(writer);
+            }
+            return writer.endObject();
+        }
+
+        private void writeResults(JsonWriter writer){
+            long actors = view.actors.length;
+            long pairCount = 0;
+            long pairSum = 0;
+            writer.name("pairsAtDistance").beginArray();
+            for(int distance = 0; distance <= pairs.maxDistance(); distance++){
+                writer.value(pairs.counts[distance]);
+                pairCount += pairs.counts[distance];
+                pairSum += pairs.counts[distance] * distance;
+            }
+            writer.endArray()
+                    .name("unreachablePairs").value(actors * (actors - 1) - pairCount)
+                    .name("averageDistance").value(pairCount == 0 ? 0.0 : (double) pairSum / pairCount);
+
+            if(baconIndex >= 0){
+                writer.name("actorsAtBaconNumber").beginArray();
+                for(int distance = 0; distance <= bacon.maxDistance(); distance++){
+                    writer.value(bacon.counts[distance]);
+                }
+                writer.endArray();
+                int rank = 1;
+                for(double value : closeness){
+                    if(value > closeness[baconIndex]){
+                        rank++;
+                    }
+                }
+                writer.name("kevinBacon");
+                writeActor(writer.beginObject().name("rank").value(rank), baconIndex).endObject();
+            }
+
+            writer.name("mostCentral").beginArray();
+            for(int actor : central){
+                writeActor(writer.beginObject(), actor).endObject();
+            }
+            writer.endArray();
+        }
+
+        private JsonWriter writeActor(JsonWriter writer, int actor){
+            return writer.name("actorId").value(view.ids.id(view.actors[actor]))
+                    .name("closeness").value(closeness[actor])
+                    .name("averageDistance").value(reached[actor] == 0 ? 0.0
+                            : (double) distanceSum[actor] / reached[actor])
+                    .name("reached").value(reached[actor]);
+        }
+    }
+
+    /**
+     * This class splits a range of batches in half until each task holds one batch
+     */
+    private static class Batches extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Job job;
+        private final ThreadLocal<MultiSourceBfs> searches;
+        private final int from;
+        private final int to;
+
+        Batches(Job job, ThreadLocal<MultiSourceBfs> searches, int from, int to){
+            this.job = job;
+            this.searches = searches;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute(){
+            if(to - from <= 1){
+                if(to > from){
+                    job.runBatch(searches.get(), from);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Batches(job, searches, from, middle), new Batches(job, searches, middle, to));
+        }
+    }
+}
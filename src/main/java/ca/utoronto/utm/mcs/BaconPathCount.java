@@ -0,0 +1,72 @@
+package ca.utoronto.utm.mcs;
+
+import java.util.ArrayList;
+
+/**
+ * This class holds the result of counting the shortest paths from Kevin Bacon to an actor
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+public class BaconPathCount {
+    // Number of movies between the actor and Kevin Bacon
+    private final int baconNumber;
+
+    // Number of distinct shortest paths, Long.MAX_VALUE once it saturates
+    private final long paths;
+
+    // The same count as a double, which keeps its magnitude past saturation
+    private final double approximatePaths;
+
+    // One of the paths chosen uniformly, starting at Kevin Bacon, or null if none was asked for
+    private final ArrayList<String> path;
+
+    /**
+     * Constructor, creates the result of a count
+     * @param baconNumber the number of movies between the actor and Kevin Bacon
+     * @param paths the number of shortest paths, saturated at Long.MAX_VALUE
+     * @param approximatePaths the number of shortest paths as a double
+     * @param path a sampled path, or null
+     */
+    public BaconPathCount(int baconNumber, long paths, double approximatePaths, ArrayList<String> path){
+        this.baconNumber = baconNumber;
+        this.paths = paths;
+        this.approximatePaths = approximatePaths;
+        this.path = path;
+    }
+
+    public int getBaconNumber(){
+        return baconNumber;
+    }
+
+    public long getPaths(){
+        return paths;
+    }
+
+    public boolean isSaturated(){
+        return paths == Long.MAX_VALUE;
+    }
+
+    public ArrayList<String> getPath(){
+        return path;
+    }
+
+    /**
+     * This method writes the result as the JSON sent back to the client. The approximate count is only written
+     * when the exact one saturated.
+     * @param writer the writer for the response
+     * @return   the writer
+     */
+    JsonWriter write(JsonWriter writer){
+        writer.beginObject()
+                .name("baconNumber").value(baconNumber)
+                .name("paths").value(paths)
+                .name("saturated").value(isSaturated());
+        if(isSaturated()){
+            writer.name("approximatePaths").value(approximatePaths);
+        }
+        if(path != null){
+            writer.name("path").value(path);
+        }
+        return writer.endObject();
+    }
+}
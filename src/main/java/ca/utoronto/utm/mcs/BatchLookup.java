@@ -0,0 +1,141 @@
+package ca.utoronto.utm.mcs;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class answers a JSON array of typed lookups in one request. Each lookup is an object with a type of getActor,
+ * getMovie, hasRelationship or computeBaconNumber and the same fields as that endpoint. Lookups of the same type are
+ * answered together, by one UNWIND query for whatever the cache does not have or by one pass over the graph store,
+ * and the results come back in the order they were asked.
+ *
+ * Each result has the status the single endpoint would have sent and, for a 200, the result it would have sent:
+ * the actor or movie object, true, or the Bacon number.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+public class BatchLookup {
+    private final Neo4jDAO dao;
+    private final int maxLookups;
+
+    /**
+     * Constructor, creates a batch endpoint reading through the DAO
+     * @param dao the DAO for the database
+     * @param maxLookups the most lookups one request may hold
+     */
+    public BatchLookup(Neo4jDAO dao, int maxLookups){
+        this.dao = dao;
+        this.maxLookups = maxLookups;
+    }
+
+    /**
+     * This method answers every lookup in a body
+     * @param inputStream the JSON array of lookups
+     * @return   the writer holding the JSON array of results, ready to send
+     * @throws IOException
+     * @throws JSONException if the body is not an array of at most maxLookups lookups
+     */
+    public JsonWriter lookup(InputStream inputStream) throws IOException, JSONException{
+        JSONArray lookups = new JSONArray(Utils.convert(inputStream));
+        int count = lookups.length();
+        if(count > maxLookups){
+            throw new JSONException("A batch holds at most " + maxLookups + " lookups, got " + count);
+        }
+
+        // Grouping the positions of each type, with the ids they ask about
+        String[] types = new String[count];
+        Group actors = new Group();
+        Group movies = new Group();
+        Group relationships = new Group();
+        Group baconNumbers = new Group();
+        for(int i = 0; i < count; i++){
+            JSONObject lookup = lookups.optJSONObject(i);
+            types[i] = lookup == null ? "" : lookup.optString("type");
+            String actorId = lookup == null ? "" : lookup.optString("actorId");
+            String movieId = lookup == null ? "" : lookup.optString("movieId");
+            if(types[i].equals("getActor") && !actorId.equals("")){
+                actors.add(i, actorId, null);
+            }else if(types[i].equals("getMovie") && !movieId.equals("")){
+                movies.add(i, movieId, null);
+            }else if(types[i].equals("hasRelationship") && !actorId.equals("") && !movieId.equals("")){
+                relationships.add(i, actorId, movieId);
+            }else if(types[i].equals("computeBaconNumber") && !actorId.equals("")){
+                baconNumbers.add(i, actorId, null);
+            }
+        }
+
+        // Answering each type together, before the response is written since the DAO encodes with the same writer
+        String[] results = new String[count];
+        int[] statuses = new int[count];
+        Arrays.fill(statuses, 400);
+        if(!actors.isEmpty()){
+            actors.nodes(dao.getActors(actors.ids), results, statuses);
+        }
+        if(!movies.isEmpty()){
+            movies.nodes(dao.getMovies(movies.ids), results, statuses);
+        }
+        if(!relationships.isEmpty()){
+            String[] exists = dao.hasRelationships(relationships.ids, relationships.otherIds);
+            for(int j = 0; j < exists.length; j++){
+                int at = relationships.positions.get(j);
+                statuses[at] = exists[j].equals("TRUE") ? 200 : 404;
+                results[at] = "true";
+            }
+        }
+        if(!baconNumbers.isEmpty()){
+            int[] numbers = dao.computeBaconNumbers(baconNumbers.ids);
+            for(int j = 0; j < numbers.length; j++){
+                int at = baconNumbers.positions.get(j);
+                statuses[at] = numbers[j] >= 0 ? 200 : 404;
+                results[at] = String.valueOf(numbers[j]);
+            }
+        }
+
+        JsonWriter writer = JsonWriter.get().beginArray();
+        for(int i = 0; i < count; i++){
+            writer.beginObject().name("type").value(types[i]).name("status").value(statuses[i]);
+            if(statuses[i] == 200){
+                writer.name("result").raw(results[i]);
+            }
+            writer.endObject();
+        }
+        return writer.endArray();
+    }
+
+    /**
+     * This class holds the lookups of one type: where each sits in the request and what it asks about
+     */
+    private static class Group {
+        final List<Integer> positions = new ArrayList<>();
+        final List<String> ids = new ArrayList<>();
+        final List<String> otherIds = new ArrayList<>();
+
+        void add(int position, String id, String otherId){
+            positions.add(position);
+            ids.add(id);
+            otherIds.add(otherId);
+        }
+
+        boolean isEmpty(){
+            return positions.isEmpty();
+        }
+
+        /**
+         * This method files the answers of a node lookup under their positions
+         */
+        void nodes(String[] nodes, String[] results, int[] statuses){
+            for(int j = 0; j < nodes.length; j++){
+                int at = positions.get(j);
+                statuses[at] = nodes[j].equals("Not Found") ? 404 : 200;
+                results[at] = nodes[j];
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package ca.utoronto.utm.mcs;
+
+import java.util.Arrays;
+
+/**
+ * This class finds a shortest path between two nodes of a CsrGraph by growing a BFS from both ends and always
+ * expanding the side with the smaller frontier. Visited sets are bitsets, and every buffer is kept between searches,
+ * so one instance should be used by one thread at a time. After a search only the bits that were set are cleared,
+ * which keeps the cost proportional to the explored region rather than the graph.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+class BidirectionalSearch {
+    // Visited bitsets for the search from the source (forward) and from the target (backward)
+    private long[] visitedForward = new long[0];
+    private long[] visitedBackward = new long[0];
+
+    // Parent and depth of each visited node, only meaningful where the matching visited bit is set
+    private int[] parentForward = new int[0];
+    private int[] parentBackward = new int[0];
+    private int[] depthForward = new int[0];
+    private int[] depthBackward = new int[0];
+
+    // Every node visited by each side, in BFS order, so levels are contiguous ranges
+    private int[] queueForward = new int[0];
+    private int[] queueBackward = new int[0];
+
+    // Nodes whose neighbours were scanned during the last search
+    private long expanded;
+
+    /**
+     * This method finds a shortest path between two nodes
+     * @param graph the graph to search
+     * @param source the first node
+     * @param target the last node
+     * @return   the nodes along the path from source to target, or null if they are not connected
+     */
+    int[] search(CsrGraph graph, int source, int target){
+        ensure(graph.nodeCount);
+        expanded = 0;
+        if(source == target){
+            return new int[]{source};
+        }
+
+        int tailForward = visit(visitedForward, parentForward, depthForward, queueForward, 0, source, -1, 0);
+        int tailBackward = visit(visitedBackward, parentBackward, depthBackward, queueBackward, 0, target, -1, 0);
+        int headForward = 0;
+        int headBackward = 0;
+        int meet = -1;
+        int best = Integer.MAX_VALUE;
+
+        while(headForward < tailForward && headBackward < tailBackward && meet < 0){
+            boolean forward = tailForward - headForward <= tailBackward - headBackward;
+            long[] visited = forward ? visitedForward : visitedBackward;
+            long[] other = forward ? visitedBackward : visitedForward;
+            int[] parent = forward ? parentForward : parentBackward;
+            int[] depth = forward ? depthForward : depthBackward;
+            int[] otherDepth = forward ? depthBackward : depthForward;
+            int[] queue = forward ? queueForward : queueBackward;
+            int head = forward ? headForward : headBackward;
+            int tail = forward ? tailForward : tailBackward;
+            int levelEnd = tail;
+
+            // Expanding one whole level, keeping the meeting point with the shortest total length
+            for(; head < levelEnd; head++){
+                int u = queue[head];
+                int next = depth[u] + 1;
+                expanded++;
+                if(u < graph.csrNodes){
+                    for(int i = graph.offsets[u], end = graph.offsets[u + 1]; i < end; i++){
+                        int v = graph.neighbors[i];
+                        if(!isSet(visited, v)){
+                            tail = visit(visited, parent, depth, queue, tail, v, u, next);
+                            if(isSet(other, v) && next + otherDepth[v] < best){
+                                best = next + otherDepth[v];
+                                meet = v;
+                            }
+                        }
+                    }
+                }
+                int[] extra = graph.delta[u];
+                for(int i = 0, end = graph.deltaSize[u]; i < end; i++){
+                    int v = extra[i];
+                    if(!isSet(visited, v)){
+                        tail = visit(visited, parent, depth, queue, tail, v, u, next);
+                        if(isSet(other, v) && next + otherDepth[v] < best){
+                            best = next + otherDepth[v];
+                            meet = v;
+                        }
+                    }
+                }
+            }
+
+            if(forward){
+                headForward = head;
+                tailForward = tail;
+            }else{
+                headBackward = head;
+                tailBackward = tail;
+            }
+        }
+
+        int[] path = null;
+        if(meet >= 0){
+            path = new int[best + 1];
+            for(int v = meet, i = depthForward[meet]; v != -1; v = parentForward[v], i--){
+                path[i] = v;
+            }
+            for(int v = parentBackward[meet], i = depthForward[meet] + 1; v != -1; v = parentBackward[v], i++){
+                path[i] = v;
+            }
+        }
+
+        // Clearing only the bits this search set
+        for(int i = 0; i < tailForward; i++){
+            clear(visitedForward, queueForward[i]);
+        }
+        for(int i = 0; i < tailBackward; i++){
+            clear(visitedBackward, queueBackward[i]);
+        }
+        return path;
+    }
+
+    /**
+     * This method returns how many nodes the last search expanded
+     */
+    long getExpanded(){
+        return expanded;
+    }
+
+    private static int visit(long[] visited, int[] parent, int[] depth, int[] queue, int tail, int v, int from,
+                             int d){
+        visited[v >>> 6] |= 1L << v;
+        parent[v] = from;
+        depth[v] = d;
+        queue[tail] = v;
+        return tail + 1;
+    }
+
+    private static boolean isSet(long[] bits, int v){
+        return (bits[v >>> 6] & (1L << v)) != 0;
+    }
+
+    private static void clear(long[] bits, int v){
+        bits[v >>> 6] &= ~(1L << v);
+    }
+
+    /**
+     * This method grows the buffers to cover new nodes
+     */
+    private void ensure(int nodes){
+        if(queueForward.length < nodes){
+            int size = Math.max(nodes, queueForward.length * 2);
+            int words = (size + 63) >>> 6;
+            visitedForward = Arrays.copyOf(visitedForward, words);
+            visitedBackward = Arrays.copyOf(visitedBackward, words);
+            parentForward = new int[size];
+            parentBackward = new int[size];
+            depthForward = new int[size];
+            depthBackward = new int[size];
+            queueForward = new int[size];
+            queueBackward = new int[size];
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package ca.utoronto.utm.mcs;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * This class keeps a few instances of a reusable buffer for calls to borrow and give back. It takes the place of a
+ * ThreadLocal for buffers sized to the whole graph: on virtual threads every request is a new thread, so a per-thread
+ * buffer would be allocated and zeroed on every call. The pool only grows to as many instances as there are calls at
+ * once, and keeps no more than its capacity once they are given back.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+class BufferPool<T> {
+    private final ArrayBlockingQueue<T> idle;
+    private final Supplier<T> factory;
+
+    /**
+     * Constructor, creates an empty pool
+     * @param capacity the most idle instances kept
+     * @param factory creates an instance when none is idle
+     */
+    BufferPool(int capacity, Supplier<T> factory){
+        this.idle = new ArrayBlockingQueue<>(capacity);
+        this.factory = factory;
+    }
+
+    /**
+     * This method takes an idle instance, or makes one if there is none
+     * @return   an instance only the caller uses until it is given back
+     */
+    T take(){
+        T buffer = idle.poll();
+        return buffer != null ? buffer : factory.get();
+    }
+
+    /**
+     * This method gives an instance back, dropping it if the pool is already full
+     * @param buffer the instance, which the caller must not use afterwards
+     */
+    void give(T buffer){
+        idle.offer(buffer);
+    }
+}
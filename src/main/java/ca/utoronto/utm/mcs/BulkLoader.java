@@ -0,0 +1,230 @@
+package ca.utoronto.utm.mcs;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class loads NDJSON records (one JSON object per line) into the database. Each record has a type of actor,
+ * movie or relationship and the same fields as the matching add endpoint. The body is read one line at a time and
+ * records are written in UNWIND batches of a fixed size, so memory use does not grow with the size of the body.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+public class BulkLoader {
+    // Most rejected lines described in a response, the rest are only counted
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    private final Neo4jDAO dao;
+    private final int batchSize;
+
+    /**
+     * Constructor, creates a loader writing through the DAO
+     * @param dao the DAO for the database
+     * @param batchSize the number of records in each transaction
+     */
+    public BulkLoader(Neo4jDAO dao, int batchSize){
+        this.dao = dao;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * This method reads every record in the stream and writes them in batches
+     * @param inputStream the NDJSON body
+     * @return   a JSON report with the totals, the counts for each batch and the first rejected lines
+     * @throws IOException
+     * @throws JSONException
+     */
+    public String load(InputStream inputStream) throws IOException, JSONException{
+        Run run = new Run();
+        try(BufferedReader br = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))){
+            String line;
+            while((line = br.readLine()) != null){
+                run.line++;
+                if(!line.isBlank()){
+                    run.add(line);
+                }
+            }
+        }
+        run.flushAll();
+        return run.report();
+    }
+
+    /**
+     * This class holds the pending batches and running counts for one load
+     */
+    private class Run {
+        List<Map<String, Object>> actors = new ArrayList<>();
+        List<Map<String, Object>> movies = new ArrayList<>();
+        List<Map<String, Object>> relationships = new ArrayList<>();
+
+        JSONArray batches = new JSONArray();
+        JSONArray errors = new JSONArray();
+        long line = 0;
+        long records = 0;
+        long created = 0;
+        long rejected = 0;
+
+        /**
+         * This method parses one line and queues it in the batch for its type
+         */
+        void add(String text) throws JSONException{
+            records++;
+            JSONObject record;
+            try{
+                record = new JSONObject(text);
+            }catch(JSONException e){
+                reject("invalid JSON");
+                return;
+            }
+
+            Map<String, Object> row = new HashMap<>();
+            switch(record.optString("type")){
+                case "actor":
+                    if(!copy(record, row, "actorId") || !copy(record, row, "name")){
+                        reject("actor needs actorId and name");
+                        return;
+                    }
+                    actors.add(row);
+                    if(actors.size() >= batchSize){
+                        flushActors();
+                    }
+                    break;
+                case "movie":
+                    if(!copy(record, row, "movieId") || !copy(record, row, "name")){
+                        reject("movie needs movieId and name");
+                        return;
+                    }
+                    movies.add(row);
+                    if(movies.size() >= batchSize){
+                        flushMovies();
+                    }
+                    break;
+                case "relationship":
+                    if(!copy(record, row, "actorId") || !copy(record, row, "movieId")){
+                        reject("relationship needs actorId and movieId");
+                        return;
+                    }
+                    relationships.add(row);
+                    if(relationships.size() >= batchSize){
+                        flushRelationships();
+                    }
+                    break;
+                default:
+                    reject("type must be actor, movie or relationship");
+            }
+        }
+
+        /**
+         * This method copies a non-empty string field into the row
+         * @return   false if the field is missing or empty
+         */
+        boolean copy(JSONObject record, Map<String, Object> row, String key){
+            String value = record.optString(key, "");
+            if(value.equals("")){
+                return false;
+            }
+            row.put(key, value);
+            return true;
+        }
+
+        void reject(String reason) throws JSONException{
+            rejected++;
+            if(errors.length() < MAX_REPORTED_ERRORS){
+                errors.put(new JSONObject().put("line", line).put("reason", reason));
+            }
+        }
+
+        void flushActors() throws JSONException{
+            if(actors.isEmpty()){
+                return;
+            }
+            int size = actors.size();
+            int batchCreated = -1;
+            try{
+                batchCreated = dao.addActors(actors);
+            }catch(Exception e){
+                e.printStackTrace();
+            }
+            record("actor", size, batchCreated);
+            actors = new ArrayList<>();
+        }
+
+        void flushMovies() throws JSONException{
+            if(movies.isEmpty()){
+                return;
+            }
+            int size = movies.size();
+            int batchCreated = -1;
+            try{
+                batchCreated = dao.addMovies(movies);
+            }catch(Exception e){
+                e.printStackTrace();
+            }
+            record("movie", size, batchCreated);
+            movies = new ArrayList<>();
+        }
+
+        /**
+         * This method writes the pending relationships, after any pending actors and movies so their ends exist
+         */
+        void flushRelationships() throws JSONException{
+            flushActors();
+            flushMovies();
+            if(relationships.isEmpty()){
+                return;
+            }
+            int size = relationships.size();
+            int batchCreated = -1;
+            try{
+                batchCreated = dao.addRelationships(relationships);
+            }catch(Exception e){
+                e.printStackTrace();
+            }
+            record("relationship", size, batchCreated);
+            relationships = new ArrayList<>();
+        }
+
+        void flushAll() throws JSONException{
+            flushRelationships();
+        }
+
+        /**
+         * This method adds the counts for a batch to the report. Records that created nothing (duplicates, or
+         * relationships with a missing end) count as rejected, and a batch that failed is rejected as a whole.
+         * @param batchCreated the number of records created, or -1 if the transaction failed
+         */
+        void record(String type, int size, int batchCreated) throws JSONException{
+            boolean failed = batchCreated < 0;
+            int batchRejected = failed ? size : size - batchCreated;
+            created += Math.max(batchCreated, 0);
+            rejected += batchRejected;
+            batches.put(new JSONObject()
+                    .put("type", type)
+                    .put("size", size)
+                    .put("created", Math.max(batchCreated, 0))
+                    .put("rejected", batchRejected)
+                    .put("failed", failed));
+        }
+
+        String report() throws JSONException{
+            return new JSONObject()
+                    .put("records", records)
+                    .put("created", created)
+                    .put("rejected", rejected)
+                    .put("batches", batches)
+                    .put("errors", errors)
+                    .toString();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package ca.utoronto.utm.mcs;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class is a thread-safe set of IMDb-style ids sharing one prefix, such as nm0000102. The number after the
+ * prefix is used as a bit index into lazily created bitset segments, so millions of ids cost a bit each instead of a
+ * String. Ids that do not fit the pattern fall back to a hash set.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+class ConcurrentIdSet {
+    // Bits per segment
+    private static final int SEGMENT_BITS = 1 << 20;
+
+    // Segments covering every non-negative int
+    private final AtomicReferenceArray<AtomicLongArray> segments =
+            new AtomicReferenceArray<>(Integer.MAX_VALUE / SEGMENT_BITS + 1);
+
+    // Ids that are not the prefix followed by digits
+    private final Set<String> others = ConcurrentHashMap.newKeySet();
+
+    // The prefix every id in the bitsets has, such as nm or tt
+    private final String prefix;
+
+    /**
+     * Constructor, creates an empty set
+     * @param prefix the prefix of the ids that go in the bitsets
+     */
+    ConcurrentIdSet(String prefix){
+        this.prefix = prefix;
+    }
+
+    /**
+     * This method adds an id
+     * @param id the id
+     * @return   true if the id was not already in the set
+     */
+    boolean add(String id){
+        int number = parse(prefix, id);
+        return number < 0 ? others.add(id) : set(number);
+    }
+
+    /**
+     * This method checks for an id
+     * @param id the id
+     * @return   true if the id is in the set
+     */
+    boolean contains(String id){
+        int number = parse(prefix, id);
+        return number < 0 ? others.contains(id) : get(number);
+    }
+
+    /**
+     * This method returns the number in an id such as nm0000102, or -1 if it has another shape. IMDb pads numbers to
+     * seven digits, so only exactly seven digits or more than seven without a leading zero are accepted; anything
+     * else would turn into the same number as a canonical id.
+     * @param prefix the prefix the id must start with
+     * @param id the id
+     * @return   the number, or -1
+     */
+    static int parse(String prefix, String id){
+        int start = prefix.length();
+        int length = id.length();
+        if(length != start + 7 && (length < start + 7 || length > start + 10 || id.charAt(start) == '0')){
+            return -1;
+        }
+        if(!id.startsWith(prefix)){
+            return -1;
+        }
+        long number = 0;
+        for(int i = start; i < length; i++){
+            char c = id.charAt(i);
+            if(c < '0' || c > '9'){
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        if(number > Integer.MAX_VALUE){
+            return -1;
+        }
+        return (int) number;
+    }
+
+    private boolean set(int number){
+        AtomicLongArray segment = segment(number / SEGMENT_BITS);
+        int bit = number % SEGMENT_BITS;
+        long mask = 1L << bit;
+        while(true){
+            long word = segment.get(bit >>> 6);
+            if((word & mask) != 0){
+                return false;
+            }
+            if(segment.compareAndSet(bit >>> 6, word, word | mask)){
+                return true;
+            }
+        }
+    }
+
+    private boolean get(int number){
+        AtomicLongArray segment = segments.get(number / SEGMENT_BITS);
+        if(segment == null){
+            return false;
+        }
+        int bit = number % SEGMENT_BITS;
+        return (segment.get(bit >>> 6) & (1L << bit)) != 0;
+    }
+
+    private AtomicLongArray segment(int index){
+        AtomicLongArray segment = segments.get(index);
+        if(segment == null){
+            segments.compareAndSet(index, null, new AtomicLongArray(SEGMENT_BITS / 64));
+            segment = segments.get(index);
+        }
+        return segment;
+    }
+}
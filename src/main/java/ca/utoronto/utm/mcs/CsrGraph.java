@@ -0,0 +1,202 @@
+package ca.utoronto.utm.mcs;
+
+import java.util.Arrays;
+
+/**
+ * This class holds the adjacency of the in-memory actor-movie graph. Nodes are dense ints, and the edges are kept in
+ * CSR form (an offset array into one neighbour array). Edges added after the last rebuild live in small per-node delta
+ * arrays until there are enough of them to fold into the CSR. The fields are left package-private so traversals can
+ * walk them in tight loops; callers are responsible for locking.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+class CsrGraph {
+    // Minimum number of delta edges before the CSR arrays are rebuilt
+    private static final int MIN_COMPACT_EDGES = 4096;
+
+    int nodeCount = 0;
+
+    // CSR adjacency covering the first csrNodes nodes
+    int[] offsets = new int[1];
+    int[] neighbors = new int[0];
+    int csrNodes = 0;
+
+    // Adjacency added since the last rebuild
+    int[][] delta = new int[1024][];
+    int[] deltaSize = new int[1024];
+    int deltaEdges = 0;
+
+    /**
+     * This method adds a node with no edges
+     * @return   the id of the new node
+     */
+    int addNode(){
+        if(nodeCount == delta.length){
+            delta = Arrays.copyOf(delta, nodeCount * 2);
+            deltaSize = Arrays.copyOf(deltaSize, nodeCount * 2);
+        }
+        return nodeCount++;
+    }
+
+    /**
+     * This method adds an undirected edge unless it is already there
+     * @param u one end of the edge
+     * @param v the other end of the edge
+     * @return   true if the edge was added
+     */
+    boolean addEdge(int u, int v){
+        if(adjacent(u, v)){
+            return false;
+        }
+        appendDelta(u, v);
+        appendDelta(v, u);
+        deltaEdges++;
+
+        // Fold the deltas into the CSR once they make up a good fraction of the graph
+        if(deltaEdges > Math.max(MIN_COMPACT_EDGES, neighbors.length / 8)){
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * This method returns how many neighbours a node has across the CSR and delta arrays
+     */
+    int degree(int u){
+        int base = u < csrNodes ? offsets[u + 1] - offsets[u] : 0;
+        return base + deltaSize[u];
+    }
+
+    /**
+     * This method checks for an edge by scanning the neighbours of whichever endpoint has fewer
+     */
+    boolean adjacent(int a, int b){
+        if(degree(a) > degree(b)){
+            int t = a;
+            a = b;
+            b = t;
+        }
+        if(a < csrNodes){
+            for(int i = offsets[a], end = offsets[a + 1]; i < end; i++){
+                if(neighbors[i] == b){
+                    return true;
+                }
+            }
+        }
+        int[] extra = delta[a];
+        for(int i = 0, end = deltaSize[a]; i < end; i++){
+            if(extra[i] == b){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This method replaces the graph with CSR arrays read from a snapshot
+     * @param nodes the number of nodes
+     * @param csrOffsets the offset of each node's neighbours, with one extra entry at the end
+     * @param csrNeighbors the neighbours of every node
+     */
+    void restore(int nodes, int[] csrOffsets, int[] csrNeighbors){
+        nodeCount = nodes;
+        offsets = csrOffsets;
+        neighbors = csrNeighbors;
+        csrNodes = nodes;
+        delta = new int[Math.max(nodes, 1024)][];
+        deltaSize = new int[Math.max(nodes, 1024)];
+        deltaEdges = 0;
+    }
+
+    /**
+     * This method removes every node and edge
+     */
+    void clear(){
+        nodeCount = 0;
+        offsets = new int[1];
+        neighbors = new int[0];
+        csrNodes = 0;
+        delta = new int[1024][];
+        deltaSize = new int[1024];
+        deltaEdges = 0;
+    }
+
+    private void appendDelta(int u, int v){
+        int[] extra = delta[u];
+        if(extra == null){
+            extra = delta[u] = new int[4];
+        }else if(deltaSize[u] == extra.length){
+            extra = delta[u] = Arrays.copyOf(extra, extra.length * 2);
+        }
+        extra[deltaSize[u]++] = v;
+    }
+
+    /**
+     * This method folds every delta edge into a fresh set of CSR arrays covering all nodes
+     */
+    void compact(){
+        int[][] merged = merge(nodeCount, csrNodes, offsets, neighbors, delta, deltaSize);
+        offsets = merged[0];
+        neighbors = merged[1];
+        csrNodes = nodeCount;
+        Arrays.fill(delta, null);
+        Arrays.fill(deltaSize, 0);
+        deltaEdges = 0;
+    }
+
+    /**
+     * This method builds CSR arrays covering every node from CSR and delta arrays, without changing them. The CSR
+     * arrays are never written in place and a delta array only ever has entries appended past its size, or is
+     * replaced, so arrays and sizes captured under the lock can be merged after it is released.
+     * @return   the offsets, with one extra entry at the end, and the neighbours
+     */
+    static int[][] merge(int nodes, int csrNodes, int[] offsets, int[] neighbors, int[][] delta, int[] deltaSize){
+        int[] newOffsets = new int[nodes + 1];
+        for(int u = 0; u < nodes; u++){
+            int base = u < csrNodes ? offsets[u + 1] - offsets[u] : 0;
+            newOffsets[u + 1] = newOffsets[u] + base + deltaSize[u];
+        }
+        int[] newNeighbors = new int[newOffsets[nodes]];
+        for(int u = 0; u < nodes; u++){
+            int at = newOffsets[u];
+            if(u < csrNodes){
+                int length = offsets[u + 1] - offsets[u];
+                System.arraycopy(neighbors, offsets[u], newNeighbors, at, length);
+                at += length;
+            }
+            if(deltaSize[u] > 0){
+                System.arraycopy(delta[u], 0, newNeighbors, at, deltaSize[u]);
+            }
+        }
+        return new int[][]{newOffsets, newNeighbors};
+    }
+
+    /**
+     * This method replaces the CSR arrays with ones built from an edge list by counting sort
+     * @param sources one end of each edge
+     * @param targets the other end of each edge
+     * @param edges the number of edges in the arrays
+     */
+    void rebuild(int[] sources, int[] targets, int edges){
+        int[] newOffsets = new int[nodeCount + 1];
+        for(int i = 0; i < edges; i++){
+            newOffsets[sources[i] + 1]++;
+            newOffsets[targets[i] + 1]++;
+        }
+        for(int u = 0; u < nodeCount; u++){
+            newOffsets[u + 1] += newOffsets[u];
+        }
+        int[] fill = Arrays.copyOf(newOffsets, nodeCount);
+        int[] newNeighbors = new int[newOffsets[nodeCount]];
+        for(int i = 0; i < edges; i++){
+            newNeighbors[fill[sources[i]]++] = targets[i];
+            newNeighbors[fill[targets[i]]++] = sources[i];
+        }
+        offsets = newOffsets;
+        neighbors = newNeighbors;
+        csrNodes = nodeCount;
+        Arrays.fill(delta, null);
+        Arrays.fill(deltaSize, 0);
+        deltaEdges = 0;
+    }
+}
@@ -0,0 +1,184 @@
+package ca.utoronto.utm.mcs;
+
+import java.util.Arrays;
+
+/**
+ * This class keeps the BFS distance and parent of every node from one root. It is built once with a full BFS and
+ * then kept exact as edges are added, by relaxing outwards from whichever endpoint got closer to the root. Edges are
+ * never removed, so distances only ever shrink and the relaxation never has to undo anything. Callers are responsible
+ * for locking, the same way they are for the graph.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+class DistanceIndex {
+    // The root node, or -1 while the root is not in the graph
+    private int root = -1;
+
+    // Hops from the root (-1 when unreached) and the previous node on one shortest path
+    private int[] dist = new int[0];
+    private int[] parent = new int[0];
+
+    // Queue reused by every BFS and relaxation
+    private int[] queue = new int[0];
+
+    /**
+     * This method recomputes every distance with a full BFS from the root
+     * @param graph the graph being indexed
+     * @param root the root node, or -1 if it is not in the graph
+     */
+    void build(CsrGraph graph, int root){
+        this.root = root;
+        ensure(graph.nodeCount);
+        Arrays.fill(dist, -1);
+        if(root < 0){
+            return;
+        }
+        dist[root] = 0;
+        parent[root] = -1;
+        queue[0] = root;
+        relax(graph, 1);
+    }
+
+    /**
+     * This method brings the index up to date after an edge was added
+     * @param graph the graph, already containing the new edge
+     * @param u one end of the new edge
+     * @param v the other end of the new edge
+     */
+    void edgeAdded(CsrGraph graph, int u, int v){
+        if(root < 0){
+            return;
+        }
+        ensure(graph.nodeCount);
+        if(closer(u, v)){
+            dist[v] = dist[u] + 1;
+            parent[v] = u;
+            queue[0] = v;
+            relax(graph, 1);
+        }else if(closer(v, u)){
+            dist[u] = dist[v] + 1;
+            parent[u] = v;
+            queue[0] = u;
+            relax(graph, 1);
+        }
+    }
+
+    /**
+     * This method returns the hops from the root to a node
+     * @param node the node
+     * @return   the distance, or -1 if the node cannot reach the root
+     */
+    int distance(int node){
+        return node < dist.length ? dist[node] : -1;
+    }
+
+    /**
+     * This method returns the node before this one on a shortest path from the root
+     * @param node the node
+     * @return   the parent, or -1 for the root
+     */
+    int parent(int node){
+        return parent[node];
+    }
+
+    int root(){
+        return root;
+    }
+
+    /**
+     * This method copies the distances of the first nodes, for writing a snapshot
+     */
+    int[] distances(int nodes){
+        int[] copy = new int[nodes];
+        System.arraycopy(dist, 0, copy, 0, Math.min(nodes, dist.length));
+        for(int i = dist.length; i < nodes; i++){
+            copy[i] = -1;
+        }
+        return copy;
+    }
+
+    /**
+     * This method copies the parents of the first nodes, for writing a snapshot
+     */
+    int[] parents(int nodes){
+        int[] copy = new int[nodes];
+        System.arraycopy(parent, 0, copy, 0, Math.min(nodes, parent.length));
+        return copy;
+    }
+
+    /**
+     * This method takes over distances and parents read from a snapshot
+     */
+    void restore(int root, int[] distances, int[] parents){
+        this.root = root;
+        this.dist = distances;
+        this.parent = parents;
+        this.queue = new int[distances.length];
+    }
+
+    /**
+     * This method forgets the root and every distance
+     */
+    void clear(){
+        root = -1;
+        dist = new int[0];
+        parent = new int[0];
+        queue = new int[0];
+    }
+
+    /**
+     * This method checks if going through u would give v a shorter path to the root
+     */
+    private boolean closer(int u, int v){
+        return dist[u] >= 0 && (dist[v] < 0 || dist[u] + 1 < dist[v]);
+    }
+
+    /**
+     * This method runs a BFS from the nodes already in the queue, lowering the distance of any neighbour that the
+     * queued node gives a shorter path to. Only nodes whose distance changed are expanded.
+     * @param graph the graph being indexed
+     * @param tail the number of nodes already in the queue
+     */
+    private void relax(CsrGraph graph, int tail){
+        int[] offsets = graph.offsets;
+        int[] neighbors = graph.neighbors;
+        int head = 0;
+        while(head < tail){
+            int u = queue[head++];
+            int next = dist[u] + 1;
+            if(u < graph.csrNodes){
+                for(int i = offsets[u], end = offsets[u + 1]; i < end; i++){
+                    int v = neighbors[i];
+                    if(dist[v] < 0 || next < dist[v]){
+                        dist[v] = next;
+                        parent[v] = u;
+                        queue[tail++] = v;
+                    }
+                }
+            }
+            int[] extra = graph.delta[u];
+            for(int i = 0, end = graph.deltaSize[u]; i < end; i++){
+                int v = extra[i];
+                if(dist[v] < 0 || next < dist[v]){
+                    dist[v] = next;
+                    parent[v] = u;
+                    queue[tail++] = v;
+                }
+            }
+        }
+    }
+
+    /**
+     * This method grows the arrays to cover new nodes, which start out unreached
+     */
+    private void ensure(int nodes){
+        if(dist.length < nodes){
+            int size = Math.max(nodes, dist.length * 2);
+            int old = dist.length;
+            dist = Arrays.copyOf(dist, size);
+            parent = Arrays.copyOf(parent, size);
+            queue = new int[size];
+            Arrays.fill(dist, old, size, -1);
+        }
+    }
+}
@@ -0,0 +1,458 @@
+package ca.utoronto.utm.mcs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * This class is the DAO for the embedded storage mode, which runs without a Neo4j database. Every write is checked
+ * against in-memory maps, appended to a WriteAheadLog and applied; it returns once the log has it on disk, so a write
+ * costs a local append and a shared fsync. Reads are answered from the maps, and path queries from the graph store as
+ * usual. On startup the log is replayed to rebuild the maps and the graph store, and a background thread replaces the
+ * log with a checkpoint of the state once enough segments have built up.
+ *
+ * Writes are applied before their fsync returns, so a read running alongside can see a write that a crash in that
+ * window would lose; the write itself is never acknowledged until it is durable.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+public class EmbeddedDAO extends Neo4jDAO implements Closeable {
+    // How often the log is checked for enough segments to checkpoint
+    private static final long COMPACT_CHECK_MILLIS = 1000;
+
+    private static final TreeSet<String> EMPTY = new TreeSet<>();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Names by id, and the ids on each side of every relationship in order, for paging. Guarded by lock.
+    private final HashMap<String, String> actors = new HashMap<>();
+    private final HashMap<String, String> movies = new HashMap<>();
+    private final HashMap<String, TreeSet<String>> filmographies = new HashMap<>();
+    private final HashMap<String, TreeSet<String>> casts = new HashMap<>();
+
+    private final WriteAheadLog log;
+    private final int compactSegments;
+    private final ScheduledExecutorService compactor;
+
+    /**
+     * Constructor, recovers the state from the log in a directory and starts appending after it
+     * @param graphStore the graph store for Bacon queries, empty, filled from the log
+     * @param cache the cache of the DAO, which the embedded DAO does not need since its reads are in memory
+     * @param directory the directory of the log
+     * @param segmentBytes the size a log segment is closed at
+     * @param compactSegments the number of closed segments that triggers a checkpoint
+     * @throws IOException if the log cannot be read
+     */
+    public EmbeddedDAO(GraphStore graphStore, EntityCache cache, Path directory, long segmentBytes,
+                       int compactSegments) throws IOException{
+        super(null, graphStore, cache);
+        this.compactSegments = compactSegments;
+
+        long started = System.nanoTime();
+        this.log = new WriteAheadLog(directory, segmentBytes, this::apply);
+        System.out.printf("Recovered %d actors and %d movies from %s in %.2fs\n", actors.size(), movies.size(),
+                directory, (System.nanoTime() - started) / 1e9);
+
+        this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.compactor.scheduleWithFixedDelay(() -> {
+            try{
+                if(log.segmentsSinceCheckpoint() >= this.compactSegments){
+                    checkpoint();
+                }
+            }catch(Exception e){
+                // An exception would stop the scheduled task for good
+                e.printStackTrace();
+            }
+        }, COMPACT_CHECK_MILLIS, COMPACT_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * This method replaces the log so far with a checkpoint of the state. Writes carry on while it is written; those
+     * that land in the segment started for it are replayed on top, which is harmless since every record is an add.
+     * @return   the size of the checkpoint in bytes
+     * @throws IOException
+     */
+    public long checkpoint() throws IOException{
+        long number = log.startCheckpoint();
+        Map<String, String> actorCopy;
+        Map<String, String> movieCopy;
+        List<String> pairs = new ArrayList<>();
+        lock.readLock().lock();
+        try{
+            actorCopy = new HashMap<>(actors);
+            movieCopy = new HashMap<>(movies);
+            for(Map.Entry<String, TreeSet<String>> entry : filmographies.entrySet()){
+                for(String movieId : entry.getValue()){
+                    pairs.add(entry.getKey());
+                    pairs.add(movieId);
+                }
+            }
+        }finally{
+            lock.readLock().unlock();
+        }
+
+        long started = System.nanoTime();
+        long bytes = log.writeCheckpoint(number, sink -> {
+            for(Map.Entry<String, String> actor : actorCopy.entrySet()){
+                sink.write(WriteAheadLog.ACTOR, actor.getKey(), actor.getValue());
+            }
+            for(Map.Entry<String, String> movie : movieCopy.entrySet()){
+                sink.write(WriteAheadLog.MOVIE, movie.getKey(), movie.getValue());
+            }
+            for(int i = 0; i < pairs.size(); i += 2){
+                sink.write(WriteAheadLog.RELATIONSHIP, pairs.get(i), pairs.get(i + 1));
+            }
+        });
+        System.out.printf("Wrote a %d byte checkpoint in %.2fs\n", bytes, (System.nanoTime() - started) / 1e9);
+        return bytes;
+    }
+
+    /**
+     * This method stops the compactor and closes the log
+     */
+    @Override
+    public void close() throws IOException{
+        compactor.shutdownNow();
+        log.close();
+    }
+
+    @Override
+    public void cleanDatabase(){
+        long ticket;
+        lock.writeLock().lock();
+        try{
+            ticket = append(WriteAheadLog.CLEAR, null, null);
+            apply(WriteAheadLog.CLEAR, null, null);
+        }finally{
+            lock.writeLock().unlock();
+        }
+        sync(ticket);
+        getCache().clear();
+    }
+
+    @Override
+    public void warmUp(){
+        // There is no database to warm
+    }
+
+    @Override
+    public void createSchema(){
+        // The maps are the only index
+    }
+
+    @Override
+    public Boolean addActor(String name, String actorId){
+        return addOne(WriteAheadLog.ACTOR, actorId, name);
+    }
+
+    @Override
+    public Boolean addMovie(String name, String movieId){
+        return addOne(WriteAheadLog.MOVIE, movieId, name);
+    }
+
+    @Override
+    public Boolean addRelationship(String actorId, String movieId){
+        return addOne(WriteAheadLog.RELATIONSHIP, actorId, movieId);
+    }
+
+    /**
+     * This method applies a run of single writes in order under one lock, with one fsync for the lot
+     * @param rows one map per write, holding its type (actor, movie or relationship) and the fields of that add
+     * @return   for each write, whether it created something
+     */
+    @Override
+    public boolean[] addInOrder(List<Map<String, Object>> rows){
+        boolean[] created = new boolean[rows.size()];
+        long ticket = 0;
+        lock.writeLock().lock();
+        try{
+            for(int i = 0; i < created.length; i++){
+                Map<String, Object> row = rows.get(i);
+                String actorId = (String) row.get("actorId");
+                String movieId = (String) row.get("movieId");
+                String name = (String) row.get("name");
+                long written;
+                switch((String) row.get("type")){
+                    case "actor":
+                        written = add(WriteAheadLog.ACTOR, actorId, name);
+                        break;
+                    case "movie":
+                        written = add(WriteAheadLog.MOVIE, movieId, name);
+                        break;
+                    default:
+                        written = add(WriteAheadLog.RELATIONSHIP, actorId, movieId);
+                }
+                created[i] = written > 0;
+                ticket = Math.max(ticket, written);
+            }
+        }finally{
+            lock.writeLock().unlock();
+        }
+        sync(ticket);
+        return created;
+    }
+
+    @Override
+    public int addActors(List<Map<String, Object>> rows){
+        return addAll(WriteAheadLog.ACTOR, rows, "actorId", "name");
+    }
+
+    @Override
+    public int addMovies(List<Map<String, Object>> rows){
+        return addAll(WriteAheadLog.MOVIE, rows, "movieId", "name");
+    }
+
+    @Override
+    public int addRelationships(List<Map<String, Object>> rows){
+        return addAll(WriteAheadLog.RELATIONSHIP, rows, "actorId", "movieId");
+    }
+
+    @Override
+    public String getActor(String actorId){
+        lock.readLock().lock();
+        try{
+            return node(actors, "actorId", actorId);
+        }finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String getMovie(String movieId){
+        lock.readLock().lock();
+        try{
+            return node(movies, "movieId", movieId);
+        }finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String hasRelationship(String actorId, String movieId){
+        lock.readLock().lock();
+        try{
+            return related(actorId, movieId);
+        }finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String[] getActors(List<String> actorIds){
+        String[] results = new String[actorIds.size()];
+        lock.readLock().lock();
+        try{
+            for(int i = 0; i < results.length; i++){
+                results[i] = node(actors, "actorId", actorIds.get(i));
+            }
+        }finally{
+            lock.readLock().unlock();
+        }
+        return results;
+    }
+
+    @Override
+    public String[] getMovies(List<String> movieIds){
+        String[] results = new String[movieIds.size()];
+        lock.readLock().lock();
+        try{
+            for(int i = 0; i < results.length; i++){
+                results[i] = node(movies, "movieId", movieIds.get(i));
+            }
+        }finally{
+            lock.readLock().unlock();
+        }
+        return results;
+    }
+
+    @Override
+    public String[] hasRelationships(List<String> actorIds, List<String> movieIds){
+        String[] results = new String[actorIds.size()];
+        lock.readLock().lock();
+        try{
+            for(int i = 0; i < results.length; i++){
+                results[i] = related(actorIds.get(i), movieIds.get(i));
+            }
+        }finally{
+            lock.readLock().unlock();
+        }
+        return results;
+    }
+
+    @Override
+    public int getFilmography(String actorId, String after, int limit, BiConsumer<String, String> row){
+        return page(actors, filmographies, movies, actorId, after, limit, row);
+    }
+
+    @Override
+    public int getCast(String movieId, String after, int limit, BiConsumer<String, String> row){
+        return page(movies, casts, actors, movieId, after, limit, row);
+    }
+
+    /**
+     * This method makes one single write durable
+     */
+    private boolean addOne(byte type, String first, String second){
+        long ticket;
+        lock.writeLock().lock();
+        try{
+            ticket = add(type, first, second);
+        }finally{
+            lock.writeLock().unlock();
+        }
+        sync(ticket);
+        return ticket > 0;
+    }
+
+    /**
+     * This method makes a batch of writes of one type durable with one fsync
+     * @return   how many of them created something
+     */
+    private int addAll(byte type, List<Map<String, Object>> rows, String firstField, String secondField){
+        int created = 0;
+        long ticket = 0;
+        lock.writeLock().lock();
+        try{
+            for(Map<String, Object> row : rows){
+                long written = add(type, (String) row.get(firstField), (String) row.get(secondField));
+                if(written > 0){
+                    created++;
+                    ticket = written;
+                }
+            }
+        }finally{
+            lock.writeLock().unlock();
+        }
+        sync(ticket);
+        return created;
+    }
+
+    /**
+     * This method logs and applies a write if it creates something, called with the write lock held. An actor or
+     * movie is created if its id is new, and a relationship if both ends exist and it does not.
+     * @return   the ticket to sync on, or 0 if nothing was created
+     */
+    private long add(byte type, String first, String second){
+        boolean creates;
+        switch(type){
+            case WriteAheadLog.ACTOR:
+                creates = !actors.containsKey(first);
+                break;
+            case WriteAheadLog.MOVIE:
+                creates = !movies.containsKey(first);
+                break;
+            default:
+                creates = actors.containsKey(first) && movies.containsKey(second)
+                        && !filmographies.getOrDefault(first, EMPTY).contains(second);
+        }
+        if(!creates){
+            return 0;
+        }
+        long ticket = append(type, first, second);
+        apply(type, first, second);
+        return ticket;
+    }
+
+    private long append(byte type, String first, String second){
+        try{
+            return log.append(type, first, second);
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void sync(long ticket){
+        if(ticket <= 0){
+            return;
+        }
+        try{
+            log.sync(ticket);
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * This method applies one record to the maps and the graph store, for a new write and for every record replayed
+     * from the log, so it must be safe to apply a record twice
+     */
+    private void apply(byte type, String first, String second){
+        switch(type){
+            case WriteAheadLog.ACTOR:
+                actors.put(first, second);
+                getGraphStore().addActor(first);
+                break;
+            case WriteAheadLog.MOVIE:
+                movies.put(first, second);
+                getGraphStore().addMovie(first);
+                break;
+            case WriteAheadLog.RELATIONSHIP:
+                filmographies.computeIfAbsent(first, id -> new TreeSet<>()).add(second);
+                casts.computeIfAbsent(second, id -> new TreeSet<>()).add(first);
+                getGraphStore().addRelationship(first, second);
+                break;
+            case WriteAheadLog.CLEAR:
+                actors.clear();
+                movies.clear();
+                filmographies.clear();
+                casts.clear();
+                getGraphStore().clear();
+                break;
+            default:
+                throw new IllegalStateException("Unknown record type " + type);
+        }
+    }
+
+    private static String node(Map<String, String> names, String idField, String id){
+        String name = names.get(id);
+        return name == null && !names.containsKey(id) ? "Not Found" : toJson(idField, id, name);
+    }
+
+    private String related(String actorId, String movieId){
+        return filmographies.getOrDefault(actorId, EMPTY).contains(movieId) ? "TRUE" : "FALSE";
+    }
+
+    /**
+     * This method copies one page of an actor's movies or a movie's cast under the lock, and hands the rows on after
+     * releasing it so a slow client does not hold up writes
+     */
+    private int page(Map<String, String> owners, Map<String, TreeSet<String>> lists, Map<String, String> names,
+                     String id, String after, int limit, BiConsumer<String, String> row){
+        List<String> page = new ArrayList<>();
+        int found = 0;
+        lock.readLock().lock();
+        try{
+            if(!owners.containsKey(id)){
+                return -1;
+            }
+            for(String itemId : lists.getOrDefault(id, EMPTY).tailSet(after, false)){
+                if(++found > limit){
+                    break;
+                }
+                page.add(itemId);
+                page.add(names.get(itemId));
+            }
+        }finally{
+            lock.readLock().unlock();
+        }
+        for(int i = 0; i < page.size(); i += 2){
+            row.accept(page.get(i), page.get(i + 1));
+        }
+        return found;
+    }
+}
@@ -0,0 +1,236 @@
+package ca.utoronto.utm.mcs;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class caches the answers of the DAO's lookups (getActor, getMovie and hasRelationship) so repeated reads of
+ * the same entity skip the database. It is bounded by an estimate of the bytes its entries take rather than by a
+ * count, and split into stripes that each keep their own LRU order under their own lock.
+ *
+ * Misses are cached too, but only for a short time, since the entity may be created by another process. A read that
+ * was started before an invalidation of the same stripe is not stored, so a slow read can never put back a value that
+ * a write has just replaced.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+public class EntityCache {
+    private static final int STRIPES = 16;
+
+    // Rough bytes an entry costs besides its characters: the map node, the entry and two String headers
+    private static final int ENTRY_OVERHEAD = 112;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final long negativeTtlNanos;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Constructor, creates an empty cache
+     * @param maxBytes the most bytes the entries may take, 0 disables the cache
+     * @param negativeTtlMillis how long a miss is remembered
+     */
+    public EntityCache(long maxBytes, long negativeTtlMillis){
+        for(int i = 0; i < STRIPES; i++){
+            stripes[i] = new Stripe(maxBytes / STRIPES);
+        }
+        this.negativeTtlNanos = negativeTtlMillis * 1_000_000;
+    }
+
+    /**
+     * This method looks up a key
+     * @param key the key
+     * @return   the cached value, or null if there is none
+     */
+    public String get(String key){
+        String value = stripe(key).get(key, System.nanoTime());
+        if(value == null){
+            misses.increment();
+        }else{
+            hits.increment();
+        }
+        return value;
+    }
+
+    /**
+     * This method returns the version of a key's stripe, to be read before going to the database and handed back
+     * to put
+     * @param key the key
+     * @return   the version
+     */
+    public long version(String key){
+        return stripe(key).version();
+    }
+
+    /**
+     * This method stores a value read from the database, unless the key's stripe was invalidated since the read
+     * started
+     * @param key the key
+     * @param value the value
+     * @param negative true if the value records that nothing was found
+     * @param version what version returned before the read
+     */
+    public void put(String key, String value, boolean negative, long version){
+        long expires = negative ? System.nanoTime() + negativeTtlNanos : Long.MAX_VALUE;
+        evictions.add(stripe(key).put(key, value, expires, version));
+    }
+
+    /**
+     * This method drops a key after a write that may have changed it
+     * @param key the key
+     */
+    public void invalidate(String key){
+        stripe(key).invalidate(key);
+        invalidations.increment();
+    }
+
+    /**
+     * This method drops every entry
+     */
+    public void clear(){
+        for(Stripe stripe : stripes){
+            stripe.clear();
+        }
+    }
+
+    /**
+     * This method reports the counters and the current size of the cache
+     * @return   a JSON object with hits, misses, hitRate, evictions, invalidations, entries and bytes
+     * @throws JSONException
+     */
+    public String stats() throws JSONException{
+        long entries = 0;
+        long bytes = 0;
+        for(Stripe stripe : stripes){
+            synchronized(stripe){
+                entries += stripe.entries.size();
+                bytes += stripe.bytes;
+            }
+        }
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        JSONObject json = new JSONObject();
+        json.put("hits", hitCount);
+        json.put("misses", missCount);
+        json.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        json.put("evictions", evictions.sum());
+        json.put("invalidations", invalidations.sum());
+        json.put("entries", entries);
+        json.put("bytes", bytes);
+        return json.toString();
+    }
+
+    // Keys, one namespace per kind of lookup
+    static String actorKey(String actorId){
+        return "actor:" + actorId;
+    }
+
+    static String movieKey(String movieId){
+        return "movie:" + movieId;
+    }
+
+    static String relationshipKey(String actorId, String movieId){
+        return "acted:" + actorId + ":" + movieId;
+    }
+
+    private Stripe stripe(String key){
+        int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    /**
+     * This method estimates the heap an entry takes
+     */
+    private static long weigh(String key, String value){
+        return ENTRY_OVERHEAD + 2L * (key.length() + value.length());
+    }
+
+    private static class Entry {
+        final String value;
+        final long expires;
+        final long weight;
+
+        Entry(String value, long expires, long weight){
+            this.value = value;
+            this.expires = expires;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * This class is one stripe of the cache, an access-ordered map trimmed to its share of the bytes
+     */
+    private static class Stripe {
+        final long maxBytes;
+        final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+        long bytes = 0;
+        long version = 0;
+
+        Stripe(long maxBytes){
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized String get(String key, long now){
+            Entry entry = entries.get(key);
+            if(entry == null){
+                return null;
+            }
+            if(entry.expires < now){
+                entries.remove(key);
+                bytes -= entry.weight;
+                return null;
+            }
+            return entry.value;
+        }
+
+        synchronized long version(){
+            return version;
+        }
+
+        /**
+         * @return   how many entries were evicted to make room
+         */
+        synchronized int put(String key, String value, long expires, long readVersion){
+            long weight = weigh(key, value);
+            if(readVersion != version || weight > maxBytes){
+                return 0;
+            }
+            Entry old = entries.put(key, new Entry(value, expires, weight));
+            if(old != null){
+                bytes -= old.weight;
+            }
+            bytes += weight;
+
+            int evicted = 0;
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while(bytes > maxBytes && eldest.hasNext()){
+                bytes -= eldest.next().getValue().weight;
+                eldest.remove();
+                evicted++;
+            }
+            return evicted;
+        }
+
+        synchronized void invalidate(String key){
+            version++;
+            Entry old = entries.remove(key);
+            if(old != null){
+                bytes -= old.weight;
+            }
+        }
+
+        synchronized void clear(){
+            version++;
+            entries.clear();
+            bytes = 0;
+        }
+    }
+}
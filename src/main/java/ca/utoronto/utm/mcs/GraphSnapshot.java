@@ -0,0 +1,267 @@
+package ca.utoronto.utm.mcs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * This class is a binary image of the in-memory graph: the id dictionary, the CSR adjacency and the Bacon distance
+ * index. Reading one back is a handful of bulk copies out of a memory-mapped file, so a restart does not have to
+ * pull the whole graph out of the database again.
+ *
+ * Layout, little-endian: a 64 byte header (magic, version, epoch, node count, Bacon root, neighbour count, id bytes,
+ * body length, CRC32C of the body), then the body: one kind byte per node (0 actor, 1 movie), the id offsets and
+ * UTF-8 id bytes, the CSR offsets and neighbours, and the Bacon distances and parents. Sections are padded to 4 bytes.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+class GraphSnapshot {
+    private static final int MAGIC = 0x5347424B; // "KBGS"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+
+    // Largest region mapped at once
+    private static final int WINDOW = 1 << 30;
+
+    // Database time the snapshot was taken at, writes from then on have to be replayed
+    final long epoch;
+
+    final int nodeCount;
+    final String[] ids;
+    final byte[] kinds;
+    final int[] offsets;
+    final int[] neighbors;
+    final int baconRoot;
+    final int[] baconDist;
+    final int[] baconParent;
+
+    GraphSnapshot(long epoch, int nodeCount, String[] ids, byte[] kinds, int[] offsets, int[] neighbors,
+                  int baconRoot, int[] baconDist, int[] baconParent){
+        this.epoch = epoch;
+        this.nodeCount = nodeCount;
+        this.ids = ids;
+        this.kinds = kinds;
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+        this.baconRoot = baconRoot;
+        this.baconDist = baconDist;
+        this.baconParent = baconParent;
+    }
+
+    /**
+     * This method writes the snapshot to a temporary file and moves it over the path, so a crash mid-write never
+     * leaves a half-written snapshot behind
+     * @param path where the snapshot goes
+     * @return   the size of the file in bytes
+     * @throws IOException
+     */
+    long write(Path path) throws IOException{
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        byte[][] encoded = new byte[nodeCount][];
+        int[] idOffsets = new int[nodeCount + 1];
+        for(int i = 0; i < nodeCount; i++){
+            encoded[i] = ids[i].getBytes(StandardCharsets.UTF_8);
+            idOffsets[i + 1] = idOffsets[i] + encoded[i].length;
+        }
+
+        long size;
+        try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+            Writer out = new Writer(channel);
+            out.bytes(kinds, nodeCount);
+            out.pad();
+            out.ints(idOffsets, nodeCount + 1);
+            for(int i = 0; i < nodeCount; i++){
+                out.bytes(encoded[i], encoded[i].length);
+            }
+            out.pad();
+            out.ints(offsets, nodeCount + 1);
+            out.ints(neighbors, offsets[nodeCount]);
+            out.ints(baconDist, nodeCount);
+            out.ints(baconParent, nodeCount);
+            long bodyLength = out.finish();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putLong(epoch).putInt(nodeCount).putInt(baconRoot)
+                    .putLong(offsets[nodeCount]).putLong(idOffsets[nodeCount]).putLong(bodyLength)
+                    .putLong(out.crc.getValue());
+            header.clear();
+            channel.write(header, 0);
+            channel.force(true);
+            size = channel.size();
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return size;
+    }
+
+    /**
+     * This method maps a snapshot file and copies its sections out
+     * @param path the snapshot file
+     * @return   the snapshot
+     * @throws IOException if the file is not a snapshot, is a different version or fails its checksum
+     */
+    static GraphSnapshot read(Path path) throws IOException{
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if(header.getInt() != MAGIC){
+                throw new IOException(path + " is not a graph snapshot");
+            }
+            int version = header.getInt();
+            if(version != VERSION){
+                throw new IOException(path + " is snapshot version " + version + ", expected " + VERSION);
+            }
+            long epoch = header.getLong();
+            int nodeCount = header.getInt();
+            int baconRoot = header.getInt();
+            long neighborCount = header.getLong();
+            long idBytes = header.getLong();
+            long bodyLength = header.getLong();
+            long checksum = header.getLong();
+            if(channel.size() != HEADER_BYTES + bodyLength || neighborCount > Integer.MAX_VALUE){
+                throw new IOException(path + " is truncated");
+            }
+            if(crc(channel, HEADER_BYTES, bodyLength) != checksum){
+                throw new IOException(path + " failed its checksum");
+            }
+
+            Reader in = new Reader(channel, HEADER_BYTES);
+            byte[] kinds = in.bytes(nodeCount);
+            in.pad();
+            int[] idOffsets = in.ints(nodeCount + 1);
+            byte[] idData = in.bytes((int) idBytes);
+            in.pad();
+            String[] ids = new String[Math.max(nodeCount, 1024)];
+            for(int i = 0; i < nodeCount; i++){
+                ids[i] = new String(idData, idOffsets[i], idOffsets[i + 1] - idOffsets[i], StandardCharsets.UTF_8);
+            }
+            int[] offsets = in.ints(nodeCount + 1);
+            int[] neighbors = in.ints((int) neighborCount);
+            int[] baconDist = in.ints(nodeCount);
+            int[] baconParent = in.ints(nodeCount);
+            return new GraphSnapshot(epoch, nodeCount, ids, kinds, offsets, neighbors, baconRoot, baconDist,
+                    baconParent);
+        }
+    }
+
+    /**
+     * This method computes the CRC32C of a region of the file one mapped window at a time
+     */
+    private static long crc(FileChannel channel, long position, long length) throws IOException{
+        CRC32C crc = new CRC32C();
+        while(length > 0){
+            int window = (int) Math.min(WINDOW, length);
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, window));
+            position += window;
+            length -= window;
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * This class writes sections through one buffer, keeping the running checksum and length of the body
+     */
+    private static class Writer {
+        final FileChannel channel;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        final CRC32C crc = new CRC32C();
+        long length = 0;
+
+        Writer(FileChannel channel) throws IOException{
+            this.channel = channel;
+            channel.position(HEADER_BYTES);
+        }
+
+        void bytes(byte[] values, int count) throws IOException{
+            for(int i = 0; i < count; ){
+                int n = Math.min(count - i, buffer.remaining());
+                buffer.put(values, i, n);
+                i += n;
+                if(!buffer.hasRemaining()){
+                    drain();
+                }
+            }
+            length += count;
+        }
+
+        void ints(int[] values, int count) throws IOException{
+            for(int i = 0; i < count; ){
+                int n = Math.min(count - i, buffer.remaining() / 4);
+                buffer.asIntBuffer().put(values, i, n);
+                buffer.position(buffer.position() + n * 4);
+                i += n;
+                if(buffer.remaining() < 4){
+                    drain();
+                }
+            }
+            length += 4L * count;
+        }
+
+        void pad() throws IOException{
+            int padding = (int) ((4 - length % 4) % 4);
+            bytes(new byte[padding], padding);
+        }
+
+        long finish() throws IOException{
+            drain();
+            return length;
+        }
+
+        private void drain() throws IOException{
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while(buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * This class copies sections out of the file, mapping at most one window at a time
+     */
+    private static class Reader {
+        final FileChannel channel;
+        long position;
+
+        Reader(FileChannel channel, long position){
+            this.channel = channel;
+            this.position = position;
+        }
+
+        byte[] bytes(int count) throws IOException{
+            byte[] values = new byte[count];
+            for(int i = 0; i < count; ){
+                int n = Math.min(count - i, WINDOW);
+                channel.map(FileChannel.MapMode.READ_ONLY, position, n).get(values, i, n);
+                position += n;
+                i += n;
+            }
+            return values;
+        }
+
+        int[] ints(int count) throws IOException{
+            int[] values = new int[count];
+            for(int i = 0; i < count; ){
+                int n = Math.min(count - i, WINDOW / 4);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * n);
+                window.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(values, i, n);
+                position += 4L * n;
+                i += n;
+            }
+            return values;
+        }
+
+        void pad(){
+            position += (4 - (position - HEADER_BYTES) % 4) % 4;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package ca.utoronto.utm.mcs;
+
+import org.neo4j.driver.Driver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This interface describes where the actor-movie graph used for path queries lives. The Neo4jDAO keeps it up to date
+ * through its write paths and asks it for Bacon paths, so the backend can be swapped without touching the handler.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+public interface GraphStore {
+    // Kevin Bacon's actor ID, the root of every Bacon query
+    String KEVIN_BACON = "nm0000102";
+
+    /**
+     * This method populates the store from the database at startup
+     * @param driver the driver for the database holding the graph
+     */
+    void load(Driver driver);
+
+    /**
+     * This method records an actor that was added to the database
+     * @param actorId the id of the actor
+     */
+    void addActor(String actorId);
+
+    /**
+     * This method records a movie that was added to the database
+     * @param movieId the id of the movie
+     */
+    void addMovie(String movieId);
+
+    /**
+     * This method records an ACTED_IN relationship that was added to the database
+     * @param actorId the id of the actor in the relationship
+     * @param movieId the id of the movie in the relationship
+     */
+    void addRelationship(String actorId, String movieId);
+
+    /**
+     * This method checks to see if an actor is known to the store
+     * @param actorId the id of the actor being checked
+     * @return   true if the actor exists
+     */
+    boolean hasActor(String actorId);
+
+    /**
+     * This method determines the Bacon number of an actor
+     * @param actorId the actor that needs a connection to kevin bacon
+     * @return   the number of movies between the actor and Kevin Bacon, or -1 if there is no path
+     */
+    int computeBaconNumber(String actorId);
+
+    /**
+     * This method determines the Bacon numbers of many actors at once
+     * @param actorIds the actors
+     * @return   the Bacon number of each actor, in the same order, with -1 where there is no path
+     */
+    int[] computeBaconNumbers(List<String> actorIds);
+
+    /**
+     * This method determines the shortest path from Kevin Bacon to an actor
+     * @param actorId the actor that needs a connection to kevin bacon
+     * @return   the ids along the path, starting at Kevin Bacon, or null if there is no path
+     */
+    ArrayList<String> computeBaconPath(String actorId);
+
+    /**
+     * This method determines the shortest path between any two actors
+     * @param fromActorId the actor the path starts at
+     * @param toActorId the actor the path ends at
+     * @return   the distance and path between the actors, or null if either is missing or they are not connected
+     */
+    Separation computeSeparation(String fromActorId, String toActorId);
+
+    /**
+     * This method counts the distinct shortest paths from Kevin Bacon to an actor without listing them. A store that
+     * could only count by listing every path does not count at all, see supportsPathCounting.
+     * @param actorId the actor the paths end at
+     * @param sample whether to also choose one of the paths uniformly at random
+     * @return   the count, or null if the actor is missing or has no path, or the store does not count paths
+     */
+    BaconPathCount countBaconPaths(String actorId, boolean sample);
+
+    /**
+     * This method tells whether the store can count Bacon paths without listing them, so callers can tell a store
+     * that does not count from an actor with no path
+     * @return   true if countBaconPaths gives an answer
+     */
+    boolean supportsPathCounting();
+
+    /**
+     * This method captures the graph for a whole-graph job, which can then run without holding up the store
+     * @return   the captured graph, or null if this store does not hold the graph in process
+     */
+    GraphView view();
+
+    /**
+     * This method counts the changes made to the graph, so a background job can tell whether what it built from a
+     * view is out of date
+     * @return   a number that grows whenever a node or edge is added or the store is emptied or reloaded
+     */
+    long version();
+
+    /**
+     * This method writes the store's in-process state to disk so the next startup can skip loading it
+     * @return   the size of the snapshot in bytes, or -1 if this store has nothing to snapshot
+     * @throws IOException
+     */
+    long saveSnapshot() throws IOException;
+
+    /**
+     * This method removes everything from the store
+     */
+    void clear();
+}
@@ -0,0 +1,50 @@
+package ca.utoronto.utm.mcs;
+
+/**
+ * This class holds the actor-movie graph as it was at one moment, for whole-graph jobs that run for too long to hold
+ * the store's lock. The CSR arrays are shared with the store when it had no deltas, which is safe since it never
+ * changes them in place, and built from its CSR and delta arrays otherwise.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+class GraphView {
+    final int nodeCount;
+    final int[] offsets;
+    final int[] neighbors;
+
+    // The id of every node, and whether it is an actor
+    final IdDictionary ids;
+    final boolean[] isActor;
+
+    // Every actor node, in node order
+    final int[] actors;
+
+    /**
+     * Constructor, creates a view over CSR arrays that cover every node
+     * @param nodeCount the number of nodes
+     * @param offsets the offset of each node's neighbours, with one extra entry at the end
+     * @param neighbors the neighbours of every node
+     * @param ids the ids of every node, not changed after
+     * @param isActor whether each node is an actor
+     */
+    GraphView(int nodeCount, int[] offsets, int[] neighbors, IdDictionary ids, boolean[] isActor){
+        this.nodeCount = nodeCount;
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+        this.ids = ids;
+        this.isActor = isActor;
+
+        int count = 0;
+        for(int node = 0; node < nodeCount; node++){
+            if(isActor[node]){
+                count++;
+            }
+        }
+        this.actors = new int[count];
+        for(int node = 0, at = 0; node < nodeCount; node++){
+            if(isActor[node]){
+                actors[at++] = node;
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package ca.utoronto.utm.mcs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class commits the single add endpoints in groups. Requests put their write in a bounded queue and one writer
+ * thread takes up to batchSize of them, waiting at most maxDelay after the first, and commits them in one transaction
+ * through Neo4jDAO.addInOrder. Each request's future completes only after its group commits, so a 200 still means the
+ * write is durable; what changes is that many requests share one commit instead of paying for their own.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+public class GroupCommitter {
+    private final Neo4jDAO dao;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Write> queue;
+
+    /**
+     * Constructor, creates the committer and starts its writer thread
+     * @param dao the DAO for the database
+     * @param batchSize the most writes in one transaction
+     * @param maxDelayMillis the longest the first write of a group waits for others to join it
+     * @param queueSize the most writes waiting, past which requests block until there is room
+     */
+    public GroupCommitter(Neo4jDAO dao, int batchSize, long maxDelayMillis, int queueSize){
+        this.dao = dao;
+        this.batchSize = batchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+
+        Thread writer = new Thread(this::run, "group-commit");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * This method queues an addActor
+     * @return   completes with whether the actor was created, once its group commits
+     */
+    public CompletableFuture<Boolean> addActor(String name, String actorId){
+        return submit(Map.of("type", "actor", "name", name, "actorId", actorId));
+    }
+
+    /**
+     * This method queues an addMovie
+     * @return   completes with whether the movie was created, once its group commits
+     */
+    public CompletableFuture<Boolean> addMovie(String name, String movieId){
+        return submit(Map.of("type", "movie", "name", name, "movieId", movieId));
+    }
+
+    /**
+     * This method queues an addRelationship
+     * @return   completes with whether the relationship was created, once its group commits
+     */
+    public CompletableFuture<Boolean> addRelationship(String actorId, String movieId){
+        return submit(Map.of("type", "relationship", "actorId", actorId, "movieId", movieId));
+    }
+
+    private CompletableFuture<Boolean> submit(Map<String, Object> row){
+        Write write = new Write(row);
+        try{
+            queue.put(write);
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            write.result.completeExceptionally(e);
+        }
+        return write.result;
+    }
+
+    /**
+     * This method is the writer thread: it gathers a group and commits it, forever
+     */
+    private void run(){
+        List<Write> group = new ArrayList<>(batchSize);
+        while(true){
+            try{
+                group.add(queue.take());
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while(group.size() < batchSize){
+                    if(queue.drainTo(group, batchSize - group.size()) > 0){
+                        continue;
+                    }
+                    Write next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if(next == null){
+                        break;
+                    }
+                    group.add(next);
+                }
+                commit(group);
+            }catch(InterruptedException e){
+                for(Write write : group){
+                    write.result.completeExceptionally(e);
+                }
+                return;
+            }finally{
+                group.clear();
+            }
+        }
+    }
+
+    /**
+     * This method commits one group and completes every future in it, with the error if the commit failed
+     */
+    private void commit(List<Write> group){
+        List<Map<String, Object>> rows = new ArrayList<>(group.size());
+        for(Write write : group){
+            rows.add(write.row);
+        }
+        try{
+            boolean[] created = dao.addInOrder(rows);
+            for(int i = 0; i < group.size(); i++){
+                group.get(i).result.complete(created[i]);
+            }
+        }catch(Exception e){
+            e.printStackTrace();
+            for(Write write : group){
+                write.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * This class is one queued write and the future of its request
+     */
+    private static class Write {
+        final Map<String, Object> row;
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        Write(Map<String, Object> row){
+            this.row = row;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package ca.utoronto.utm.mcs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * This class interns actor and movie ids to the node ints of the graph. IMDb-style ids, nm or tt and then digits
+ * (nm0000102, tt0087277), are packed into one long holding the namespace, the prefix, the number of digits, so
+ * leading zeros survive, and the number itself. Those codes sit in an open-addressing table of primitives and are
+ * only turned back into Strings when a path is answered. Any other id falls back to a HashMap. A node then costs a
+ * long for its code and about two table slots, where a HashMap entry, its String and the String[] slot cost over
+ * 100 bytes.
+ *
+ * Not thread-safe, InMemoryGraphStore guards it with its lock.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+class IdDictionary {
+    // Namespaces, like the labels in the database an actor and a movie may share an id
+    static final int ACTOR = 0;
+    static final int MOVIE = 1;
+
+    // Prefixes by their code, 0 marks an id that did not fit
+    private static final String[] PREFIXES = {null, "nm", "tt"};
+
+    // Code layout: bit 58 the namespace, bits 56-57 the prefix, bits 52-55 the number of digits and the low 52 bits
+    // the number, 15 digits being the most that fit. A fallback id has prefix 0 and its index in others instead.
+    private static final int NAMESPACE_SHIFT = 58;
+    private static final int PREFIX_SHIFT = 56;
+    private static final int DIGITS_SHIFT = 52;
+    private static final long NUMBER_MASK = (1L << DIGITS_SHIFT) - 1;
+    private static final int MAX_DIGITS = 15;
+
+    // The code of every node
+    private long[] codes;
+    private int size = 0;
+
+    // Open-addressing table from code to node, a key of 0 is an empty slot (every packed code has a prefix)
+    private long[] keys;
+    private int[] nodes;
+    private int count = 0;
+
+    // Ids that are not IMDb-style, per namespace, and by their index
+    private final HashMap<String, Integer> otherActors;
+    private final HashMap<String, Integer> otherMovies;
+    private final ArrayList<String> others;
+
+    /**
+     * Constructor, creates an empty dictionary
+     */
+    IdDictionary(){
+        this.codes = new long[1024];
+        this.keys = new long[2048];
+        this.nodes = new int[2048];
+        this.otherActors = new HashMap<>();
+        this.otherMovies = new HashMap<>();
+        this.others = new ArrayList<>();
+    }
+
+    private IdDictionary(IdDictionary from){
+        this.codes = Arrays.copyOf(from.codes, from.size);
+        this.size = from.size;
+        this.keys = from.keys.clone();
+        this.nodes = from.nodes.clone();
+        this.count = from.count;
+        this.otherActors = new HashMap<>(from.otherActors);
+        this.otherMovies = new HashMap<>(from.otherMovies);
+        this.others = new ArrayList<>(from.others);
+    }
+
+    /**
+     * This method copies the dictionary, for a job that reads it after the lock is released
+     */
+    IdDictionary copy(){
+        return new IdDictionary(this);
+    }
+
+    /**
+     * This method finds the node of an id
+     * @param namespace ACTOR or MOVIE
+     * @param id the string id
+     * @return   the node, or -1 if the id was never put
+     */
+    int get(int namespace, String id){
+        long code = encode(namespace, id);
+        if(code == 0){
+            Integer node = fallback(namespace).get(id);
+            return node == null ? -1 : node;
+        }
+        for(int slot = slot(code); ; slot = (slot + 1) & (keys.length - 1)){
+            if(keys[slot] == code){
+                return nodes[slot];
+            }else if(keys[slot] == 0){
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * This method gives an id its node, which must be new to the dictionary
+     * @param namespace ACTOR or MOVIE
+     * @param id the string id
+     * @param node the node
+     */
+    void put(int namespace, String id, int node){
+        long code = encode(namespace, id);
+        if(code == 0){
+            fallback(namespace).put(id, node);
+            code = (long) namespace << NAMESPACE_SHIFT | others.size();
+            others.add(id);
+        }else{
+            if(2 * (count + 1) > keys.length){
+                grow();
+            }
+            insert(code, node);
+            count++;
+        }
+        if(node >= codes.length){
+            codes = Arrays.copyOf(codes, Math.max(node + 1, codes.length * 2));
+        }
+        codes[node] = code;
+        size = Math.max(size, node + 1);
+    }
+
+    /**
+     * This method turns a node back into its string id
+     */
+    String id(int node){
+        long code = codes[node];
+        int prefix = (int) (code >>> PREFIX_SHIFT) & 3;
+        if(prefix == 0){
+            return others.get((int) (code & NUMBER_MASK));
+        }
+        int digits = (int) (code >>> DIGITS_SHIFT) & 15;
+        long number = code & NUMBER_MASK;
+        char[] chars = new char[2 + digits];
+        chars[0] = PREFIXES[prefix].charAt(0);
+        chars[1] = PREFIXES[prefix].charAt(1);
+        for(int i = chars.length - 1; i >= 2; i--){
+            chars[i] = (char) ('0' + number % 10);
+            number /= 10;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * This method tells which namespace a node is in
+     * @return   ACTOR or MOVIE
+     */
+    int namespace(int node){
+        return (int) (codes[node] >>> NAMESPACE_SHIFT) & 1;
+    }
+
+    /**
+     * This method empties the dictionary
+     */
+    void clear(){
+        codes = new long[1024];
+        size = 0;
+        keys = new long[2048];
+        nodes = new int[2048];
+        count = 0;
+        otherActors.clear();
+        otherMovies.clear();
+        others.clear();
+    }
+
+    /**
+     * This method packs an IMDb-style id into its code
+     * @return   the code, or 0 if the id is not IMDb-style
+     */
+    private static long encode(int namespace, String id){
+        int digits = id.length() - 2;
+        if(digits < 1 || digits > MAX_DIGITS){
+            return 0;
+        }
+        int prefix;
+        if(id.startsWith("nm")){
+            prefix = 1;
+        }else if(id.startsWith("tt")){
+            prefix = 2;
+        }else{
+            return 0;
+        }
+        long number = 0;
+        for(int i = 2; i < id.length(); i++){
+            char c = id.charAt(i);
+            if(c < '0' || c > '9'){
+                return 0;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return (long) namespace << NAMESPACE_SHIFT | (long) prefix << PREFIX_SHIFT | (long) digits << DIGITS_SHIFT
+                | number;
+    }
+
+    private HashMap<String, Integer> fallback(int namespace){
+        return namespace == ACTOR ? otherActors : otherMovies;
+    }
+
+    private int slot(long code){
+        // Fibonacci hashing, the low bits of sequential ids alone would cluster
+        return (int) ((code * 0x9E3779B97F4A7C15L) >>> (64 - Integer.numberOfTrailingZeros(keys.length)));
+    }
+
+    private void insert(long code, int node){
+        int slot = slot(code);
+        while(keys[slot] != 0){
+            slot = (slot + 1) & (keys.length - 1);
+        }
+        keys[slot] = code;
+        nodes[slot] = node;
+    }
+
+    private void grow(){
+        long[] oldKeys = keys;
+        int[] oldNodes = nodes;
+        keys = new long[oldKeys.length * 2];
+        nodes = new int[oldNodes.length * 2];
+        for(int i = 0; i < oldKeys.length; i++){
+            if(oldKeys[i] != 0){
+                insert(oldKeys[i], oldNodes[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package ca.utoronto.utm.mcs;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class seeds the database from IMDb's name.basics.tsv, title.basics.tsv and title.principals.tsv dumps
+ * (decompressed). Each file is memory-mapped in chunks that are parsed in parallel, one chunk per task, so no file is
+ * ever read onto the heap and the work spreads over every core. Only actor and actress credits are kept, and only
+ * the names and titles those credits mention are written.
+ *
+ * The import runs in four passes: the principals are scanned once to find which nm and tt ids are needed, then the
+ * actors and the movies are written, and finally the principals are scanned again to write the relationships once
+ * both of their ends exist.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+public class ImdbImporter {
+    // Bytes of a file given to one task
+    private static final long CHUNK_SIZE = 64L << 20;
+
+    // Longest line expected, a chunk's last line may run this far past the chunk
+    private static final int MAX_LINE = 1 << 20;
+
+    // Most columns any pass looks at
+    private static final int MAX_COLUMNS = 4;
+
+    private final Neo4jDAO dao;
+    private final int batchSize;
+    private final int threads;
+
+    // Ids credited as actors, and the ids already written so repeated rows are only sent once
+    private final ConcurrentIdSet creditedActors = new ConcurrentIdSet("nm");
+    private final ConcurrentIdSet creditedTitles = new ConcurrentIdSet("tt");
+    private final ConcurrentIdSet writtenActors = new ConcurrentIdSet("nm");
+    private final ConcurrentIdSet writtenTitles = new ConcurrentIdSet("tt");
+
+    /**
+     * Constructor, creates an importer writing through the DAO
+     * @param dao the DAO for the database
+     * @param batchSize the number of rows in each write transaction
+     * @param threads the number of chunks parsed at once
+     */
+    public ImdbImporter(Neo4jDAO dao, int batchSize, int threads){
+        this.dao = dao;
+        this.batchSize = batchSize;
+        this.threads = threads;
+    }
+
+    /**
+     * This method imports the three dumps found in a directory
+     * @param directory the directory holding the decompressed TSV files
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void run(Path directory) throws IOException, InterruptedException{
+        Path names = directory.resolve("name.basics.tsv");
+        Path titles = directory.resolve("title.basics.tsv");
+        Path principals = directory.resolve("title.principals.tsv");
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try{
+            scan(pool, principals, new Pass("Finding actor credits"){
+                @Override
+                void row(Line line, List<Map<String, Object>> batch){
+                    if(isActorCredit(line)){
+                        creditedActors.add(line.text(2));
+                        creditedTitles.add(line.text(0));
+                    }
+                }
+            });
+            scan(pool, names, new Pass("Writing actors"){
+                @Override
+                void row(Line line, List<Map<String, Object>> batch){
+                    String actorId = line.text(0);
+                    if(creditedActors.contains(actorId) && writtenActors.add(actorId)){
+                        Map<String, Object> row = new HashMap<>();
+                        row.put("actorId", actorId);
+                        row.put("name", line.text(1));
+                        batch.add(row);
+                    }
+                }
+
+                @Override
+                int write(List<Map<String, Object>> batch){
+                    return dao.addActors(batch);
+                }
+            });
+            scan(pool, titles, new Pass("Writing movies"){
+                @Override
+                void row(Line line, List<Map<String, Object>> batch){
+                    String movieId = line.text(0);
+                    if(creditedTitles.contains(movieId) && writtenTitles.add(movieId)){
+                        Map<String, Object> row = new HashMap<>();
+                        row.put("movieId", movieId);
+                        row.put("name", line.text(2));
+                        batch.add(row);
+                    }
+                }
+
+                @Override
+                int write(List<Map<String, Object>> batch){
+                    return dao.addMovies(batch);
+                }
+            });
+            scan(pool, principals, new Pass("Writing relationships"){
+                @Override
+                void row(Line line, List<Map<String, Object>> batch){
+                    if(isActorCredit(line)){
+                        Map<String, Object> row = new HashMap<>();
+                        row.put("actorId", line.text(2));
+                        row.put("movieId", line.text(0));
+                        batch.add(row);
+                    }
+                }
+
+                @Override
+                int write(List<Map<String, Object>> batch){
+                    return dao.addRelationships(batch);
+                }
+            });
+        }finally{
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * This method checks the category column of a title.principals row
+     */
+    private static boolean isActorCredit(Line line){
+        return line.is(3, "actor") || line.is(3, "actress");
+    }
+
+    /**
+     * This method splits a file into chunks and runs a pass over all of them on the pool
+     */
+    private void scan(ExecutorService pool, Path file, Pass pass) throws IOException, InterruptedException{
+        long started = System.nanoTime();
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            long size = channel.size();
+            List<Future<?>> chunks = new ArrayList<>();
+            for(long start = 0; start < size; start += CHUNK_SIZE){
+                long chunkStart = start;
+                chunks.add(pool.submit(() -> {
+                    scanChunk(channel, size, chunkStart, Math.min(size, chunkStart + CHUNK_SIZE), pass);
+                    return null;
+                }));
+            }
+            for(Future<?> chunk : chunks){
+                chunk.get();
+            }
+        }catch(ExecutionException e){
+            throw new IOException("Import of " + file + " failed", e.getCause());
+        }
+        System.out.printf("%s: %d rows read, %d written in %.1fs\n", pass.name, pass.rows.get(),
+                pass.written.get(), (System.nanoTime() - started) / 1e9);
+    }
+
+    /**
+     * This method parses every line that starts inside [start, end). The mapping starts one byte early so the
+     * chunk can tell whether its first byte begins a line, and runs past the end so the last line can be finished.
+     */
+    private void scanChunk(FileChannel channel, long size, long start, long end, Pass pass) throws IOException{
+        long mapStart = Math.max(0, start - 1);
+        long mapEnd = Math.min(size, end + MAX_LINE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+        int limit = (int) (mapEnd - mapStart);
+        int stop = (int) (end - mapStart);
+
+        int position;
+        if(start == 0){
+            // The first line of every dump is its header
+            position = nextLine(buffer, 0, limit);
+        }else{
+            position = buffer.get(0) == '\n' ? 1 : nextLine(buffer, 0, limit);
+        }
+
+        Line line = new Line(buffer);
+        List<Map<String, Object>> batch = new ArrayList<>();
+        while(position < stop && position < limit){
+            int lineEnd = position;
+            while(lineEnd < limit && buffer.get(lineEnd) != '\n'){
+                lineEnd++;
+            }
+            if(lineEnd == limit && mapEnd < size){
+                throw new IOException("Line at byte " + (mapStart + position) + " is longer than " + MAX_LINE);
+            }
+            line.split(position, lineEnd);
+            pass.rows.incrementAndGet();
+            pass.row(line, batch);
+            if(batch.size() >= batchSize){
+                pass.flush(batch);
+                batch = new ArrayList<>();
+            }
+            position = lineEnd + 1;
+        }
+        pass.flush(batch);
+    }
+
+    /**
+     * This method returns the position just after the next newline
+     */
+    private static int nextLine(MappedByteBuffer buffer, int position, int limit){
+        while(position < limit && buffer.get(position) != '\n'){
+            position++;
+        }
+        return position + 1;
+    }
+
+    /**
+     * This class is one pass over a file: what to do with each row, and how to write a full batch
+     */
+    private abstract static class Pass {
+        final String name;
+        final AtomicLong rows = new AtomicLong();
+        final AtomicLong written = new AtomicLong();
+
+        Pass(String name){
+            this.name = name;
+        }
+
+        abstract void row(Line line, List<Map<String, Object>> batch);
+
+        /**
+         * This method writes a batch, passes that only collect ids never fill one
+         * @return   the number of entities created
+         */
+        int write(List<Map<String, Object>> batch){
+            return 0;
+        }
+
+        void flush(List<Map<String, Object>> batch){
+            if(!batch.isEmpty()){
+                written.addAndGet(write(batch));
+            }
+        }
+    }
+
+    /**
+     * This class is a view of one tab-separated line in a mapped buffer. Columns are only decoded when asked for.
+     */
+    private static class Line {
+        private final MappedByteBuffer buffer;
+        private final int[] starts = new int[MAX_COLUMNS];
+        private final int[] ends = new int[MAX_COLUMNS];
+        private byte[] bytes = new byte[256];
+        private int columns;
+
+        Line(MappedByteBuffer buffer){
+            this.buffer = buffer;
+        }
+
+        /**
+         * This method finds the first MAX_COLUMNS columns of the line in [start, end)
+         */
+        void split(int start, int end){
+            if(end > start && buffer.get(end - 1) == '\r'){
+                end--;
+            }
+            columns = 0;
+            int columnStart = start;
+            for(int i = start; i < end && columns < MAX_COLUMNS; i++){
+                if(buffer.get(i) == '\t'){
+                    starts[columns] = columnStart;
+                    ends[columns++] = i;
+                    columnStart = i + 1;
+                }
+            }
+            if(columns < MAX_COLUMNS){
+                starts[columns] = columnStart;
+                ends[columns++] = end;
+            }
+        }
+
+        /**
+         * This method compares a column to an ASCII string without decoding it
+         */
+        boolean is(int column, String value){
+            if(column >= columns || ends[column] - starts[column] != value.length()){
+                return false;
+            }
+            for(int i = 0; i < value.length(); i++){
+                if(buffer.get(starts[column] + i) != value.charAt(i)){
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * This method decodes a column as UTF-8
+         */
+        String text(int column){
+            if(column >= columns){
+                return "";
+            }
+            int length = ends[column] - starts[column];
+            if(bytes.length < length){
+                bytes = new byte[length];
+            }
+            buffer.get(starts[column], bytes, 0, length);
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,527 @@
+package ca.utoronto.utm.mcs;
+
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Result;
+import org.neo4j.driver.Session;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class keeps the actor-movie graph in memory so that path queries never go to the database. Actors and movies
+ * are interned to int ids over a CSR graph, and a distance index rooted at Kevin Bacon is kept up to date on every
+ * write, so a Bacon number is one array lookup and a Bacon path is a walk up the parent array.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+public class InMemoryGraphStore implements GraphStore {
+    // How far before the database's clock a snapshot's epoch is set, so writes still in flight are replayed
+    private static final long EPOCH_MARGIN_MS = 60_000;
+
+    // Idle search and counting buffers kept, each is sized to the graph and enough for the cores to be busy
+    private static final int POOLED_BUFFERS = Runtime.getRuntime().availableProcessors() * 2;
+
+    // Where snapshots are written and read, or null to always load from the database
+    private final Path snapshotPath;
+
+    // The driver the store was loaded from, used to read the database's clock for a snapshot
+    private volatile Driver driver;
+
+    // Guards every field below, reads (path queries) can run side by side
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Interned ids, actors and movies have separate namespaces just like the labels in the database
+    private final IdDictionary ids = new IdDictionary();
+
+    // The adjacency, and the distances from Kevin Bacon over it
+    private final CsrGraph graph = new CsrGraph();
+    private final DistanceIndex baconIndex = new DistanceIndex();
+
+    // Bumped on every change under the write lock, read without it
+    private volatile long version = 0;
+
+    // Buffers for searches between arbitrary actors and for path counts, borrowed per call
+    private final BufferPool<BidirectionalSearch> searches = new BufferPool<>(POOLED_BUFFERS, BidirectionalSearch::new);
+    private final BufferPool<PathCounter> counters = new BufferPool<>(POOLED_BUFFERS, PathCounter::new);
+
+    /**
+     * Constructor, creates an empty store that always loads from the database
+     */
+    public InMemoryGraphStore(){
+        this(null);
+    }
+
+    /**
+     * Constructor, creates an empty store that starts from a snapshot when there is one
+     * @param snapshotPath where snapshots are written and read
+     */
+    public InMemoryGraphStore(Path snapshotPath){
+        this.snapshotPath = snapshotPath;
+    }
+
+    /**
+     * This method fills the store. If a snapshot exists it is read back and only what the database created since the
+     * snapshot's epoch is replayed; otherwise, or if the snapshot cannot be used, the whole graph is read from the
+     * database.
+     * @param driver the driver for the database holding the graph
+     */
+    @Override
+    public void load(Driver driver){
+        this.driver = driver;
+        if(snapshotPath != null && Files.exists(snapshotPath)){
+            try{
+                long started = System.nanoTime();
+                GraphSnapshot snapshot = GraphSnapshot.read(snapshotPath);
+                restore(snapshot);
+                System.out.printf("Restored %d nodes from %s in %.2fs\n", snapshot.nodeCount, snapshotPath,
+                        (System.nanoTime() - started) / 1e9);
+                replay(driver, snapshot.epoch);
+                return;
+            }catch(IOException e){
+                e.printStackTrace();
+                clear();
+            }
+        }
+        loadFromDatabase(driver);
+    }
+
+    /**
+     * This method reads every actor, movie and ACTED_IN relationship out of the database, builds the CSR arrays
+     * in one pass and then runs one full BFS from Kevin Bacon
+     * @param driver the driver for the database holding the graph
+     */
+    private void loadFromDatabase(Driver driver){
+        int[] sources = new int[1024];
+        int[] targets = new int[1024];
+        int edges = 0;
+
+        lock.writeLock().lock();
+        try(Session session = driver.session()){
+            Result actors = session.run(Queries.ALL_ACTOR_IDS);
+            while(actors.hasNext()){
+                intern(IdDictionary.ACTOR, actors.next().get("id").asString());
+            }
+            Result movies = session.run(Queries.ALL_MOVIE_IDS);
+            while(movies.hasNext()){
+                intern(IdDictionary.MOVIE, movies.next().get("id").asString());
+            }
+
+            Result relationships = session.run(Queries.ALL_RELATIONSHIPS);
+            while(relationships.hasNext()){
+                Record record = relationships.next();
+                if(edges == sources.length){
+                    sources = Arrays.copyOf(sources, edges * 2);
+                    targets = Arrays.copyOf(targets, edges * 2);
+                }
+                sources[edges] = ids.get(IdDictionary.ACTOR, record.get("actorId").asString());
+                targets[edges] = ids.get(IdDictionary.MOVIE, record.get("movieId").asString());
+                edges++;
+            }
+            graph.rebuild(sources, targets, edges);
+            baconIndex.build(graph, ids.get(IdDictionary.ACTOR, KEVIN_BACON));
+        }finally{
+            lock.writeLock().unlock();
+        }
+        System.out.printf("Loaded %d nodes and %d relationships into memory\n", graph.nodeCount, edges);
+    }
+
+    @Override
+    public void addActor(String actorId){
+        lock.writeLock().lock();
+        try{
+            int actor = intern(IdDictionary.ACTOR, actorId);
+            // Kevin Bacon showing up for the first time roots the index
+            if(actorId.equals(KEVIN_BACON) && baconIndex.root() != actor){
+                baconIndex.build(graph, actor);
+            }
+        }finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void addMovie(String movieId){
+        lock.writeLock().lock();
+        try{
+            intern(IdDictionary.MOVIE, movieId);
+        }finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This method adds the edge and relaxes the Bacon distances outwards from it
+     * @param actorId the id of the actor in the relationship
+     * @param movieId the id of the movie in the relationship
+     */
+    @Override
+    public void addRelationship(String actorId, String movieId){
+        lock.writeLock().lock();
+        try{
+            int actor = ids.get(IdDictionary.ACTOR, actorId);
+            int movie = ids.get(IdDictionary.MOVIE, movieId);
+            if(actor >= 0 && movie >= 0 && graph.addEdge(actor, movie)){
+                version++;
+                baconIndex.edgeAdded(graph, actor, movie);
+            }
+        }finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean hasActor(String actorId){
+        lock.readLock().lock();
+        try{
+            return ids.get(IdDictionary.ACTOR, actorId) >= 0;
+        }finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * This method looks the Bacon number up in the distance index. Paths alternate actor and movie, so the number
+     * of movies is half the number of hops.
+     * @param actorId the actor that needs a connection to kevin bacon
+     * @return   the Bacon number, or -1 if there is no path
+     */
+    @Override
+    public int computeBaconNumber(String actorId){
+        lock.readLock().lock();
+        try{
+            int actor = ids.get(IdDictionary.ACTOR, actorId);
+            if(actor < 0){
+                return -1;
+            }
+            int hops = baconIndex.distance(actor);
+            return hops < 0 ? -1 : hops / 2;
+        }finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * This method looks up many Bacon numbers under one read lock
+     * @param actorIds the actors
+     * @return   the Bacon number of each actor, or -1 where there is no path
+     */
+    @Override
+    public int[] computeBaconNumbers(List<String> actorIds){
+        int[] numbers = new int[actorIds.size()];
+        lock.readLock().lock();
+        try{
+            for(int i = 0; i < numbers.length; i++){
+                int actor = ids.get(IdDictionary.ACTOR, actorIds.get(i));
+                int hops = actor < 0 ? -1 : baconIndex.distance(actor);
+                numbers[i] = hops < 0 ? -1 : hops / 2;
+            }
+        }finally{
+            lock.readLock().unlock();
+        }
+        return numbers;
+    }
+
+    /**
+     * This method walks the parent array from the actor back to Kevin Bacon
+     * @param actorId the actor that needs a connection to kevin bacon
+     * @return   the ids along the path, starting at Kevin Bacon, or null if there is no path
+     */
+    @Override
+    public ArrayList<String> computeBaconPath(String actorId){
+        lock.readLock().lock();
+        try{
+            int actor = ids.get(IdDictionary.ACTOR, actorId);
+            if(actor < 0){
+                return null;
+            }
+            int hops = baconIndex.distance(actor);
+            if(hops < 0){
+                return null;
+            }
+
+            // Filling from the back so the path starts at Kevin Bacon
+            String[] path = new String[hops + 1];
+            for(int v = actor, i = hops; v != -1; v = baconIndex.parent(v), i--){
+                path[i] = ids.id(v);
+            }
+            return new ArrayList<>(Arrays.asList(path));
+        }finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * This method runs a bidirectional BFS between the two actors with the calling thread's buffers
+     * @param fromActorId the actor the path starts at
+     * @param toActorId the actor the path ends at
+     * @return   the distance and path between the actors, or null if either is missing or they are not connected
+     */
+    @Override
+    public Separation computeSeparation(String fromActorId, String toActorId){
+        lock.readLock().lock();
+        try{
+            int from = ids.get(IdDictionary.ACTOR, fromActorId);
+            int to = ids.get(IdDictionary.ACTOR, toActorId);
+            if(from < 0 || to < 0){
+                return null;
+            }
+            BidirectionalSearch search = searches.take();
+            try{
+                int[] nodes = search.search(graph, from, to);
+                if(nodes == null){
+                    return null;
+                }
+                ArrayList<String> path = new ArrayList<>(nodes.length);
+                for(int node : nodes){
+                    path.add(ids.id(node));
+                }
+                return new Separation(path, search.getExpanded());
+            }finally{
+                searches.give(search);
+            }
+        }finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * This method counts the shortest paths over the layers of the Bacon index, which already holds every node's
+     * distance from Kevin Bacon, with buffers borrowed from the pool
+     * @param actorId the actor the paths end at
+     * @param sample whether to also choose one of the paths uniformly at random
+     * @return   the count, or null if the actor is missing or has no path
+     */
+    @Override
+    public BaconPathCount countBaconPaths(String actorId, boolean sample){
+        lock.readLock().lock();
+        try{
+            int actor = ids.get(IdDictionary.ACTOR, actorId);
+            if(actor < 0){
+                return null;
+            }
+            PathCounter counter = counters.take();
+            try{
+                if(!counter.count(graph, baconIndex, actor, sample)){
+                    return null;
+                }
+                ArrayList<String> path = null;
+                if(sample){
+                    path = new ArrayList<>(counter.getPath().length);
+                    for(int node : counter.getPath()){
+                        path.add(ids.id(node));
+                    }
+                }
+                return new BaconPathCount(baconIndex.distance(actor) / 2, counter.getCount(), counter.getWeight(),
+                        path);
+            }finally{
+                counters.give(counter);
+            }
+        }finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * This method tells whether the store can count Bacon paths, which it always can from the adjacency
+     * @return   true
+     */
+    @Override
+    public boolean supportsPathCounting(){
+        return true;
+    }
+
+    /**
+     * This method captures the CSR arrays, the per-node delta arrays and the ids under the read lock, which are
+     * reference and O(V) copies, and folds the deltas into fresh CSR arrays after releasing it. Queries are never held
+     * up, writes only for the copies, and the live graph keeps compacting on its own schedule.
+     * @return   the captured graph
+     */
+    @Override
+    public GraphView view(){
+        int nodes;
+        int csrNodes;
+        int[] offsets;
+        int[] neighbors;
+        int[][] delta = null;
+        int[] deltaSize = null;
+        IdDictionary captured;
+        lock.readLock().lock();
+        try{
+            nodes = graph.nodeCount;
+            csrNodes = graph.csrNodes;
+            offsets = graph.offsets;
+            neighbors = graph.neighbors;
+            if(graph.deltaEdges > 0 || csrNodes < nodes){
+                delta = Arrays.copyOf(graph.delta, nodes);
+                deltaSize = Arrays.copyOf(graph.deltaSize, nodes);
+            }
+            captured = ids.copy();
+        }finally{
+            lock.readLock().unlock();
+        }
+
+        if(delta != null){
+            int[][] merged = CsrGraph.merge(nodes, csrNodes, offsets, neighbors, delta, deltaSize);
+            offsets = merged[0];
+            neighbors = merged[1];
+        }
+        boolean[] isActor = new boolean[nodes];
+        for(int node = 0; node < nodes; node++){
+            isActor[node] = captured.namespace(node) == IdDictionary.ACTOR;
+        }
+        return new GraphView(nodes, offsets, neighbors, captured, isActor);
+    }
+
+    @Override
+    public long version(){
+        return version;
+    }
+
+    /**
+     * This method writes the graph and Bacon index to the snapshot file. The deltas are folded into the CSR and the
+     * arrays captured under the lock, then the file is written outside it; the CSR arrays are never changed in place,
+     * so only the small per-node arrays need copying.
+     * @return   the size of the snapshot in bytes, or -1 if no snapshot path is configured
+     * @throws IOException
+     */
+    @Override
+    public long saveSnapshot() throws IOException{
+        if(snapshotPath == null){
+            return -1;
+        }
+        long epoch = now() - EPOCH_MARGIN_MS;
+        int nodes;
+        IdDictionary captured;
+        int[] offsets, neighbors, baconDist, baconParent;
+        int baconRoot;
+        lock.writeLock().lock();
+        try{
+            graph.compact();
+            nodes = graph.nodeCount;
+            captured = ids.copy();
+            offsets = graph.offsets;
+            neighbors = graph.neighbors;
+            baconRoot = baconIndex.root();
+            baconDist = baconIndex.distances(nodes);
+            baconParent = baconIndex.parents(nodes);
+        }finally{
+            lock.writeLock().unlock();
+        }
+
+        // The file keeps string ids, decoded from the copy so the lock is not held for it
+        String[] strings = new String[nodes];
+        byte[] kinds = new byte[nodes];
+        for(int node = 0; node < nodes; node++){
+            strings[node] = captured.id(node);
+            kinds[node] = (byte) captured.namespace(node);
+        }
+        return new GraphSnapshot(epoch, nodes, strings, kinds, offsets, neighbors, baconRoot, baconDist,
+                baconParent).write(snapshotPath);
+    }
+
+    /**
+     * This method empties the store, and deletes the snapshot since it no longer matches the database
+     */
+    @Override
+    public void clear(){
+        if(snapshotPath != null){
+            try{
+                Files.deleteIfExists(snapshotPath);
+            }catch(IOException e){
+                e.printStackTrace();
+            }
+        }
+        lock.writeLock().lock();
+        try{
+            ids.clear();
+            graph.clear();
+            version++;
+            baconIndex.clear();
+        }finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This method replaces everything in the store with the contents of a snapshot
+     */
+    private void restore(GraphSnapshot snapshot){
+        lock.writeLock().lock();
+        try{
+            ids.clear();
+            for(int node = 0; node < snapshot.nodeCount; node++){
+                ids.put(snapshot.kinds[node] == 0 ? IdDictionary.ACTOR : IdDictionary.MOVIE, snapshot.ids[node], node);
+            }
+            graph.restore(snapshot.nodeCount, snapshot.offsets, snapshot.neighbors);
+            baconIndex.restore(snapshot.baconRoot, snapshot.baconDist, snapshot.baconParent);
+            version++;
+        }finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This method applies every actor, movie and relationship the database created since an epoch. Anything the
+     * snapshot already had is ignored, so replaying a little too much is harmless.
+     */
+    private void replay(Driver driver, long epoch){
+        long replayed = 0;
+        try(Session session = driver.session()){
+            Map<String, Object> parameters = Map.of("epoch", epoch);
+            Result actors = session.run(Queries.ACTOR_IDS_SINCE, parameters);
+            while(actors.hasNext()){
+                addActor(actors.next().get("id").asString());
+                replayed++;
+            }
+            Result movies = session.run(Queries.MOVIE_IDS_SINCE, parameters);
+            while(movies.hasNext()){
+                addMovie(movies.next().get("id").asString());
+                replayed++;
+            }
+            Result relationships = session.run(Queries.RELATIONSHIPS_SINCE, parameters);
+            while(relationships.hasNext()){
+                Record record = relationships.next();
+                addRelationship(record.get("actorId").asString(), record.get("movieId").asString());
+                replayed++;
+            }
+        }
+        System.out.printf("Replayed %d writes made since the snapshot\n", replayed);
+    }
+
+    /**
+     * This method reads the database's clock, which is what createdAt is stamped with
+     */
+    private long now(){
+        Driver current = this.driver;
+        if(current == null){
+            return System.currentTimeMillis();
+        }
+        try(Session session = current.session()){
+            return session.run(Queries.NOW).single().get("now").asLong();
+        }
+    }
+
+    /**
+     * This method returns the int id for a string id, giving it the next free one if it is new
+     * @param namespace IdDictionary.ACTOR or IdDictionary.MOVIE
+     * @param id the string id
+     * @return   the int id
+     */
+    private int intern(int namespace, String id){
+        int node = ids.get(namespace, id);
+        if(node >= 0){
+            return node;
+        }
+        node = graph.addNode();
+        ids.put(namespace, id, node);
+        version++;
+        return node;
+    }
+}
@@ -0,0 +1,280 @@
+package ca.utoronto.utm.mcs;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * This class parses request bodies, which are small flat JSON objects such as {"actorId": "...", "name": "..."},
+ * straight from their UTF-8 bytes. The body is read into a per-thread buffer that is reused between requests, and only
+ * the top-level members are kept, so a request costs its member strings and little else. Values that are not strings
+ * are kept as their JSON text, the same thing org.json's getString gives for them.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+class JsonReader {
+    // Bodies up to this size keep their buffer for the next request on the thread
+    private static final int POOLED_BYTES = 64 << 10;
+
+    private static final ThreadLocal<byte[]> BUFFERS = ThreadLocal.withInitial(() -> new byte[4096]);
+
+    private String[] names = new String[4];
+    private String[] values = new String[4];
+    private int members = 0;
+
+    // The body being parsed and the position in it
+    private byte[] bytes;
+    private int position;
+    private int limit;
+
+    private JsonReader(){
+    }
+
+    /**
+     * This method reads a whole body and parses it as one JSON object
+     * @param inputStream the body
+     * @return   the members of the object
+     * @throws IOException
+     * @throws JSONException if the body is not a JSON object
+     */
+    static JsonReader read(InputStream inputStream) throws IOException, JSONException{
+        byte[] buffer = BUFFERS.get();
+        int length = 0;
+        try(inputStream){
+            int n;
+            while((n = inputStream.read(buffer, length, buffer.length - length)) >= 0){
+                length += n;
+                if(length == buffer.length){
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+            }
+        }
+        if(buffer.length <= POOLED_BYTES){
+            BUFFERS.set(buffer);
+        }
+        return parse(buffer, length);
+    }
+
+    /**
+     * This method parses one JSON object out of the first bytes of an array
+     * @param bytes UTF-8 JSON
+     * @param length the number of bytes to parse
+     * @return   the members of the object
+     * @throws JSONException if the bytes are not a JSON object
+     */
+    static JsonReader parse(byte[] bytes, int length) throws JSONException{
+        JsonReader reader = new JsonReader();
+        reader.bytes = bytes;
+        reader.limit = length;
+        reader.object();
+        reader.bytes = null;
+        return reader;
+    }
+
+    /**
+     * This method checks for a member
+     * @param name the name of the member
+     * @return   true if the object had the member
+     */
+    boolean has(String name){
+        return indexOf(name) >= 0;
+    }
+
+    /**
+     * This method returns a member as a string
+     * @param name the name of the member
+     * @return   the value, or its JSON text if it is not a string
+     * @throws JSONException if the object has no such member
+     */
+    String getString(String name) throws JSONException{
+        int index = indexOf(name);
+        if(index < 0){
+            throw new JSONException("JSONObject[\"" + name + "\"] not found.");
+        }
+        return values[index];
+    }
+
+    private int indexOf(String name){
+        for(int i = members - 1; i >= 0; i--){
+            if(names[i].equals(name)){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void object() throws JSONException{
+        expect('{');
+        if(peek() == '}'){
+            position++;
+            end();
+            return;
+        }
+        while(true){
+            expect('"');
+            String name = string();
+            expect(':');
+            String value = value();
+            if(members == names.length){
+                names = Arrays.copyOf(names, members * 2);
+                values = Arrays.copyOf(values, members * 2);
+            }
+            names[members] = name;
+            values[members++] = value;
+
+            byte next = peek();
+            position++;
+            if(next == '}'){
+                end();
+                return;
+            }else if(next != ','){
+                throw error("Expected a ',' or '}'");
+            }
+        }
+    }
+
+    /**
+     * This method checks that nothing but whitespace follows the object
+     */
+    private void end() throws JSONException{
+        if(position < limit && peek() != 0){
+            throw error("Unexpected text after the object");
+        }
+    }
+
+    private String value() throws JSONException{
+        byte first = peek();
+        if(first == '"'){
+            position++;
+            return string();
+        }
+        int start = position;
+        if(first == '{' || first == '['){
+            skipNested();
+        }else{
+            while(position < limit && bytes[position] != ',' && bytes[position] != '}'
+                    && !whitespace(bytes[position])){
+                position++;
+            }
+            if(position == start){
+                throw error("Missing value");
+            }
+        }
+        return new String(bytes, start, position - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * This method decodes a string whose opening quote was just read. Strings without escapes, which is nearly all
+     * of them, are decoded in one go.
+     */
+    private String string() throws JSONException{
+        int start = position;
+        while(position < limit){
+            byte b = bytes[position];
+            if(b == '"'){
+                return new String(bytes, start, position++ - start, StandardCharsets.UTF_8);
+            }else if(b == '\\'){
+                return escapedString(start);
+            }
+            position++;
+        }
+        throw error("Unterminated string");
+    }
+
+    private String escapedString(int start) throws JSONException{
+        StringBuilder sb = new StringBuilder(new String(bytes, start, position - start, StandardCharsets.UTF_8));
+        int run = position;
+        while(position < limit){
+            byte b = bytes[position];
+            if(b == '"'){
+                sb.append(new String(bytes, run, position++ - run, StandardCharsets.UTF_8));
+                return sb.toString();
+            }else if(b != '\\'){
+                position++;
+                continue;
+            }
+            sb.append(new String(bytes, run, position - run, StandardCharsets.UTF_8));
+            if(position + 1 >= limit){
+                break;
+            }
+            byte escaped = bytes[position + 1];
+            position += 2;
+            switch(escaped){
+                case '"': sb.append('"'); break;
+                case '\\': sb.append('\\'); break;
+                case '/': sb.append('/'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    if(position + 4 > limit){
+                        throw error("Bad unicode escape");
+                    }
+                    try{
+                        sb.append((char) Integer.parseInt(new String(bytes, position, 4, StandardCharsets.US_ASCII), 16));
+                    }catch(NumberFormatException e){
+                        throw error("Bad unicode escape");
+                    }
+                    position += 4;
+                    break;
+                default:
+                    throw error("Bad escape");
+            }
+            run = position;
+        }
+        throw error("Unterminated string");
+    }
+
+    /**
+     * This method skips an object or array value, including any strings inside it
+     */
+    private void skipNested() throws JSONException{
+        int depth = 0;
+        while(position < limit){
+            byte b = bytes[position++];
+            if(b == '{' || b == '['){
+                depth++;
+            }else if(b == '}' || b == ']'){
+                if(--depth == 0){
+                    return;
+                }
+            }else if(b == '"'){
+                while(position < limit && bytes[position] != '"'){
+                    position += bytes[position] == '\\' ? 2 : 1;
+                }
+                position++;
+            }
+        }
+        throw error("Unterminated value");
+    }
+
+    /**
+     * This method skips whitespace and returns the next byte without consuming it, or 0 at the end
+     */
+    private byte peek(){
+        while(position < limit && whitespace(bytes[position])){
+            position++;
+        }
+        return position < limit ? bytes[position] : 0;
+    }
+
+    private void expect(char c) throws JSONException{
+        if(peek() != c){
+            throw error("Expected '" + c + "'");
+        }
+        position++;
+    }
+
+    private static boolean whitespace(byte b){
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private JSONException error(String message){
+        return new JSONException(message + " at " + position);
+    }
+}
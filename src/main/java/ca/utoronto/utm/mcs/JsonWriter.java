@@ -0,0 +1,295 @@
+package ca.utoronto.utm.mcs;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class writes JSON responses as UTF-8 bytes into a growable buffer, encoding each character as it is written
+ * instead of building a String first. Every thread keeps one writer and reuses its buffer, so the byte length of the
+ * body is known exactly when the headers are sent. A writer must be finished before its thread starts the next one.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+class JsonWriter {
+    // Buffers that grew past this are dropped after use rather than kept for the thread
+    private static final int POOLED_BYTES = 64 << 10;
+
+    private static final ThreadLocal<JsonWriter> WRITERS = ThreadLocal.withInitial(JsonWriter::new);
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] buffer = new byte[1024];
+    private int length = 0;
+
+    // One bit per open object or array, set once it has a member so the next one is preceded by a comma
+    private long hasMembers = 0;
+    private int depth = 0;
+
+    // True right after a member name, when the value must not be preceded by a comma
+    private boolean afterName = false;
+
+    private JsonWriter(){
+    }
+
+    /**
+     * This method returns the calling thread's writer, emptied
+     * @return   the writer
+     */
+    static JsonWriter get(){
+        JsonWriter writer = WRITERS.get();
+        if(writer.buffer.length > POOLED_BYTES){
+            writer.buffer = new byte[1024];
+        }
+        writer.length = 0;
+        writer.hasMembers = 0;
+        writer.depth = 0;
+        writer.afterName = false;
+        return writer;
+    }
+
+    JsonWriter beginObject(){
+        separate();
+        put((byte) '{');
+        open();
+        return this;
+    }
+
+    JsonWriter endObject(){
+        depth--;
+        put((byte) '}');
+        return this;
+    }
+
+    JsonWriter beginArray(){
+        separate();
+        put((byte) '[');
+        open();
+        return this;
+    }
+
+    JsonWriter endArray(){
+        depth--;
+        put((byte) ']');
+        return this;
+    }
+
+    /**
+     * This method writes the name of the next member of an object
+     */
+    JsonWriter name(String name){
+        separate();
+        quoted(name);
+        put((byte) ':');
+        afterName = true;
+        return this;
+    }
+
+    JsonWriter value(String value){
+        separate();
+        if(value == null){
+            ascii("null");
+        }else{
+            quoted(value);
+        }
+        return this;
+    }
+
+    JsonWriter value(long value){
+        separate();
+        ascii(Long.toString(value));
+        return this;
+    }
+
+    /**
+     * This method writes a number, or null for the NaN and infinities JSON has no way to write
+     */
+    JsonWriter value(double value){
+        separate();
+        ascii(Double.isFinite(value) ? Double.toString(value) : "null");
+        return this;
+    }
+
+    JsonWriter value(boolean value){
+        separate();
+        ascii(value ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * This method writes a value that is already JSON text, such as a cached actor
+     */
+    JsonWriter raw(String json){
+        separate();
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+        return this;
+    }
+
+    /**
+     * This method writes a list of strings as an array
+     */
+    JsonWriter value(List<String> values){
+        beginArray();
+        for(String value : values){
+            value(value);
+        }
+        return endArray();
+    }
+
+    /**
+     * This method returns the number of bytes written so far
+     */
+    int length(){
+        return length;
+    }
+
+    /**
+     * This method copies what was written to a stream
+     * @param out the stream
+     * @throws IOException
+     */
+    void writeTo(OutputStream out) throws IOException{
+        out.write(buffer, 0, length);
+    }
+
+    /**
+     * This method copies what was written so far to a stream and empties the buffer, keeping its place in the
+     * structure, so a long response can be streamed out while it is still being written
+     * @param out the stream
+     * @throws IOException
+     */
+    void flush(OutputStream out) throws IOException{
+        out.write(buffer, 0, length);
+        length = 0;
+    }
+
+    /**
+     * This method sends what was written as the whole body of a response
+     * @param exchange the exchange to finish
+     * @param status the status code
+     * @throws IOException
+     */
+    void send(HttpExchange exchange, int status) throws IOException{
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, length);
+        try(OutputStream os = exchange.getResponseBody()){
+            writeTo(os);
+        }
+    }
+
+    /**
+     * This method decodes what was written, for callers that keep the JSON as a String
+     */
+    @Override
+    public String toString(){
+        return new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private void open(){
+        hasMembers &= ~(1L << depth);
+        depth++;
+    }
+
+    /**
+     * This method writes the comma before a value or member name when it is not the first in its container
+     */
+    private void separate(){
+        if(afterName){
+            afterName = false;
+            return;
+        }
+        if(depth == 0){
+            return;
+        }
+        long bit = 1L << (depth - 1);
+        if((hasMembers & bit) != 0){
+            put((byte) ',');
+        }else{
+            hasMembers |= bit;
+        }
+    }
+
+    /**
+     * This method writes a string in quotes, escaping what JSON requires and encoding the rest as UTF-8
+     */
+    private void quoted(String s){
+        ensure(s.length() * 3 + 2);
+        byte[] b = buffer;
+        int at = length;
+        b[at++] = '"';
+        for(int i = 0; i < s.length(); i++){
+            char c = s.charAt(i);
+            if(c >= 0x20 && c < 0x80 && c != '"' && c != '\\'){
+                b[at++] = (byte) c;
+            }else if(c < 0x80){
+                // Escapes are at most 6 bytes for one char, which the 3 per char reserved cannot always hold
+                length = at;
+                ensure(6 + (s.length() - i) * 3 + 1);
+                b = buffer;
+                at = escape(b, at, c);
+            }else if(c < 0x800){
+                b[at++] = (byte) (0xC0 | (c >> 6));
+                b[at++] = (byte) (0x80 | (c & 0x3F));
+            }else if(Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))){
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                b[at++] = (byte) (0xF0 | (cp >> 18));
+                b[at++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                b[at++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                b[at++] = (byte) (0x80 | (cp & 0x3F));
+            }else if(Character.isSurrogate(c)){
+                b[at++] = '?';
+            }else{
+                b[at++] = (byte) (0xE0 | (c >> 12));
+                b[at++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[at++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        b[at++] = '"';
+        length = at;
+    }
+
+    private static int escape(byte[] b, int at, char c){
+        b[at++] = '\\';
+        switch(c){
+            case '"': b[at++] = '"'; break;
+            case '\\': b[at++] = '\\'; break;
+            case '\n': b[at++] = 'n'; break;
+            case '\r': b[at++] = 'r'; break;
+            case '\t': b[at++] = 't'; break;
+            case '\b': b[at++] = 'b'; break;
+            case '\f': b[at++] = 'f'; break;
+            default:
+                b[at++] = 'u';
+                b[at++] = '0';
+                b[at++] = '0';
+                b[at++] = HEX[c >> 4];
+                b[at++] = HEX[c & 0xF];
+        }
+        return at;
+    }
+
+    private void ascii(String s){
+        ensure(s.length());
+        for(int i = 0; i < s.length(); i++){
+            buffer[length++] = (byte) s.charAt(i);
+        }
+    }
+
+    private void put(byte b){
+        ensure(1);
+        buffer[length++] = b;
+    }
+
+    private void ensure(int extra){
+        if(length + extra > buffer.length){
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package ca.utoronto.utm.mcs;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class estimates how far apart two actors are from distances to a few landmarks, the same idea as the Bacon
+ * index but with the K actors in the most movies as roots instead of only Kevin Bacon. By the triangle inequality the
+ * distance between u and v is at least |d(u,L) - d(v,L)| and at most d(u,L) + d(L,v) for every landmark L, so an
+ * estimate is a scan of 2K shorts with no search at all. Hubs sit on most shortest paths, so the bounds are usually
+ * tight and often meet.
+ *
+ * The tables are built from a view of the graph on a background thread, and rebuilt whenever the store's version shows
+ * that something was added, at most once per refresh interval and never sooner than ten times the last build took.
+ * Between rebuilds an estimate may be stale: edges are only ever added, so the upper bound stays a real path, but the
+ * lower bound may be a little high. An actor added since the last build is not in the tables at all, and its distance
+ * is reported as unknown until the next one.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+public class LandmarkOracle {
+    // Distance of a node no path reaches
+    private static final short UNREACHED = -1;
+
+    // A rebuild waits this many times as long as the last one took, so it costs at most a tenth of one core
+    private static final int BACKOFF = 10;
+
+    private final GraphStore graphStore;
+    private final int landmarkCount;
+
+    // The tables currently served, or null until the first build
+    private volatile Tables tables;
+
+    // Set once the store has given no view, which it never will, so there will never be tables
+    private volatile boolean unsupported = false;
+
+    // System.nanoTime() before which no rebuild starts, only used by the refresh thread
+    private long nextBuild = 0;
+
+    /**
+     * Constructor, creates the oracle and starts its refresh thread
+     * @param graphStore the store holding the graph
+     * @param landmarkCount the number of landmarks, K
+     * @param refreshMillis how often the store is checked for changes, or 0 for no refresh thread, leaving the
+     *                      owner to call refresh
+     */
+    public LandmarkOracle(GraphStore graphStore, int landmarkCount, long refreshMillis){
+        this.graphStore = graphStore;
+        this.landmarkCount = landmarkCount;
+        if(refreshMillis <= 0){
+            return;
+        }
+
+        ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "landmark-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::refresh, 0, refreshMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * This method rebuilds the tables if the graph changed since they were built, and the last build is far enough
+     * behind. A store that does not hold the graph in process gives no view, and the oracle stays empty.
+     */
+    void refresh(){
+        try{
+            Tables current = tables;
+            long version = graphStore.version();
+            long started = System.nanoTime();
+            if(current != null && (current.version == version || started - nextBuild < 0)){
+                return;
+            }
+            GraphView view = graphStore.view();
+            if(view == null){
+                unsupported = true;
+            }else{
+                tables = build(view, version);
+                long took = System.nanoTime() - started;
+                nextBuild = started + BACKOFF * took;
+                System.out.printf("Built %d landmark tables over %d nodes in %.2fs\n", tables.landmarks.length,
+                        view.nodeCount, took / 1e9);
+            }
+        }catch(Exception e){
+            // An exception would stop the scheduled task for good
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * This method tells whether the oracle can ever give estimates, which it cannot over a store that does not hold
+     * the graph in process. It is true until the first refresh has found out.
+     * @return   false if the tables will never be built
+     */
+    public boolean supported(){
+        return !unsupported;
+    }
+
+    /**
+     * This method bounds the separation of two actors, in movies like computeSeparation
+     * @param fromActorId one actor
+     * @param toActorId the other actor
+     * @return   the writer holding the JSON estimate, or null if either actor is not in the store
+     * @throws IllegalStateException if the tables have not been built
+     */
+    public JsonWriter estimate(String fromActorId, String toActorId){
+        Tables current = tables;
+        if(current == null){
+            throw new IllegalStateException("The landmark tables have not been built");
+        }
+        int from = current.ids.get(IdDictionary.ACTOR, fromActorId);
+        int to = current.ids.get(IdDictionary.ACTOR, toActorId);
+        if((from < 0 && !graphStore.hasActor(fromActorId)) || (to < 0 && !graphStore.hasActor(toActorId))){
+            return null;
+        }
+        if(from < 0 || to < 0){
+            // Added since the tables were built, so nothing is known about where it sits until they are rebuilt
+            return JsonWriter.get().beginObject()
+                    .name("fromActorId").value(fromActorId)
+                    .name("toActorId").value(toActorId)
+                    .name("connected").value((String) null)
+                    .name("lowerBound").value(fromActorId.equals(toActorId) ? 0 : 1)
+                    .name("upperBound").value((String) null)
+                    .name("exact").value(false)
+                    .name("landmarks").value(current.landmarks.length)
+                    .name("stale").value(true)
+                    .name("ageMs").value(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - current.builtAt))
+                    .endObject();
+        }
+
+        // Hops between two actors are always even, a movie between each pair
+        int k = current.landmarks.length;
+        int lower = from == to ? 0 : 2;
+        int upper = from == to ? 0 : Integer.MAX_VALUE;
+        boolean separated = false;
+        for(int l = 0; l < k; l++){
+            int du = current.dist[from * k + l];
+            int dv = current.dist[to * k + l];
+            if(du == UNREACHED && dv == UNREACHED){
+                continue;
+            }else if(du == UNREACHED || dv == UNREACHED){
+                // One is in the landmark's component and the other is not
+                separated = true;
+                break;
+            }
+            lower = Math.max(lower, Math.abs(du - dv));
+            upper = Math.min(upper, du + dv);
+        }
+
+        JsonWriter writer = JsonWriter.get().beginObject()
+                .name("fromActorId").value(fromActorId)
+                .name("toActorId").value(toActorId);
+        if(separated){
+            writer.name("connected").value(false);
+        }else if(upper == Integer.MAX_VALUE){
+            // No landmark is in either component, only a search could tell whether they are the same one
+            writer.name("connected").value((String) null)
+                    .name("lowerBound").value(lower / 2)
+                    .name("upperBound").value((String) null)
+                    .name("exact").value(false);
+        }else{
+            // Some landmark reaches both, so upper is a real path
+            writer.name("connected").value(true)
+                    .name("lowerBound").value(lower / 2)
+                    .name("upperBound").value(upper / 2)
+                    .name("exact").value(lower == upper);
+        }
+        return writer.name("landmarks").value(k)
+                .name("stale").value(current.version != graphStore.version())
+                .name("ageMs").value(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - current.builtAt))
+                .endObject();
+    }
+
+    /**
+     * This method picks the actors in the most movies and runs a BFS from each
+     */
+    private Tables build(GraphView view, long version){
+        int[] landmarks = pick(view);
+        int k = landmarks.length;
+        short[] dist = new short[view.nodeCount * k];
+        Arrays.fill(dist, UNREACHED);
+        int[] queue = new int[view.nodeCount];
+        for(int l = 0; l < k; l++){
+            int head = 0, tail = 0;
+            dist[landmarks[l] * k + l] = 0;
+            queue[tail++] = landmarks[l];
+            while(head < tail){
+                int u = queue[head++];
+                short next = (short) Math.min(Short.MAX_VALUE, dist[u * k + l] + 1);
+                for(int i = view.offsets[u]; i < view.offsets[u + 1]; i++){
+                    int v = view.neighbors[i];
+                    if(dist[v * k + l] == UNREACHED){
+                        dist[v * k + l] = next;
+                        queue[tail++] = v;
+                    }
+                }
+            }
+        }
+        return new Tables(version, view.ids, landmarks, dist);
+    }
+
+    /**
+     * This method finds the landmarkCount actors of highest degree, fewer if there are not that many actors
+     */
+    private int[] pick(GraphView view){
+        int k = Math.min(landmarkCount, view.actors.length);
+        // Sorting by degree, then node, packed into longs so no boxing is needed
+        long[] byDegree = new long[view.actors.length];
+        for(int i = 0; i < byDegree.length; i++){
+            int actor = view.actors[i];
+            byDegree[i] = (long) (view.offsets[actor + 1] - view.offsets[actor]) << 32 | actor;
+        }
+        Arrays.sort(byDegree);
+        int[] landmarks = new int[k];
+        for(int i = 0; i < k; i++){
+            landmarks[i] = (int) byDegree[byDegree.length - 1 - i];
+        }
+        return landmarks;
+    }
+
+    /**
+     * This class is one build: the landmarks and the distance of every node to each, K shorts per node side by side
+     * so an estimate reads two runs of K
+     */
+    private static class Tables {
+        final long version;
+        final long builtAt = System.nanoTime();
+        final IdDictionary ids;
+        final int[] landmarks;
+        final short[] dist;
+
+        Tables(long version, IdDictionary ids, int[] landmarks, short[] dist){
+            this.version = version;
+            this.ids = ids;
+            this.landmarks = landmarks;
+            this.dist = dist;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package ca.utoronto.utm.mcs;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class counts latencies in log-linear buckets: every power of two is split into 64 equal buckets, so any
+ * recorded value is off by less than 1.6% and the whole range from 1us to over an hour fits in a few thousand counters.
+ * Recording is one atomic increment, so many threads can share one histogram.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+class LatencyHistogram {
+    // Buckets per power of two, as a shift
+    private static final int SUB_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    // Powers of two covered, values above the last are clamped into it
+    private static final int MAGNITUDES = 33;
+
+    private final AtomicLongArray counts = new AtomicLongArray((MAGNITUDES + 1) * SUB_BUCKETS);
+
+    /**
+     * This method counts one latency
+     * @param micros the latency in microseconds
+     */
+    void record(long micros){
+        counts.incrementAndGet(index(Math.max(0, micros)));
+    }
+
+    /**
+     * This method adds every count of another histogram to this one
+     */
+    void add(LatencyHistogram other){
+        for(int i = 0; i < counts.length(); i++){
+            long count = other.counts.get(i);
+            if(count != 0){
+                counts.addAndGet(i, count);
+            }
+        }
+    }
+
+    long count(){
+        long total = 0;
+        for(int i = 0; i < counts.length(); i++){
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * This method returns the latency at a percentile
+     * @param percentile the percentile, from 0 to 100
+     * @return   the upper edge of the bucket holding it, in microseconds, or 0 if nothing was recorded
+     */
+    long percentile(double percentile){
+        long total = count();
+        if(total == 0){
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for(int i = 0; i < counts.length(); i++){
+            seen += counts.get(i);
+            if(seen >= rank){
+                return upper(i);
+            }
+        }
+        return upper(counts.length() - 1);
+    }
+
+    /**
+     * This method returns the largest latency recorded, to the precision of its bucket
+     */
+    long max(){
+        for(int i = counts.length() - 1; i >= 0; i--){
+            if(counts.get(i) != 0){
+                return upper(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * This method finds the bucket of a value. Values under SUB_BUCKETS get a bucket each; above that, the magnitude
+     * picks a block of buckets and the next SUB_BITS bits below the leading one pick the bucket in it.
+     */
+    private static int index(long value){
+        if(value < SUB_BUCKETS){
+            return (int) value;
+        }
+        int magnitude = 64 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        if(magnitude > MAGNITUDES){
+            return (MAGNITUDES + 1) * SUB_BUCKETS - 1;
+        }
+        int sub = (int) (value >>> (magnitude - 1)) & (SUB_BUCKETS - 1);
+        return magnitude * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * This method returns the largest value that falls in a bucket
+     */
+    private static long upper(int index){
+        int magnitude = index / SUB_BUCKETS;
+        int sub = index % SUB_BUCKETS;
+        if(magnitude == 0){
+            return sub;
+        }
+        return ((long) (SUB_BUCKETS + sub + 1) << (magnitude - 1)) - 1;
+    }
+}
@@ -0,0 +1,360 @@
+package ca.utoronto.utm.mcs;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class drives a running server with a weighted mix of /api/v1 calls and reports throughput and latency
+ * percentiles per endpoint. It seeds its own small graph through bulkLoad first, so every lookup has something to
+ * find.
+ *
+ * In open-loop mode requests are started on a fixed schedule whether or not earlier ones have finished, and each
+ * latency is measured from when the request was due rather than when it was sent. A server that stalls therefore
+ * shows up in the percentiles instead of just slowing the generator down (coordinated omission). In closed-loop mode
+ * a fixed number of connections each send their next request as soon as the last one returns, which finds the peak
+ * throughput; its latencies are service times.
+ *
+ * Run with "load" followed by options, e.g. "load --mode open --rate 2000 --duration 60". Options are --url, --mode
+ * (open or closed), --rate (requests per second, open loop), --connections (closed loop), --duration and --warmup
+ * (seconds), --seed-actors and --mix, a list such as getActor=30,computeBaconPath=10.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+public class LoadGenerator {
+    private static final String DEFAULT_MIX = "getActor=30,getMovie=10,hasRelationship=10,computeBaconNumber=25," +
+            "computeBaconPath=15,addActor=5,addRelationship=5";
+
+    private final String url;
+    private final boolean openLoop;
+    private final int rate;
+    private final int connections;
+    private final int durationSeconds;
+    private final int warmupSeconds;
+    private final int seedActors;
+    private final List<String> endpoints = new ArrayList<>();
+    private final int[] cumulativeWeights;
+
+    private final HttpClient client;
+    private final ExecutorService pool;
+
+    // Results per endpoint, only recorded for requests due after the warm-up
+    private final Map<String, Stats> stats = new LinkedHashMap<>();
+    private long recordFrom;
+
+    // Furthest the open-loop schedule fell behind, a large value means the generator and not the server was the limit
+    private long maxLagNanos = 0;
+
+    // Fresh ids for the writes in the mix
+    private final AtomicInteger nextActor = new AtomicInteger();
+
+    /**
+     * Constructor, reads the options
+     * @param options the option names without their dashes, mapped to their values
+     */
+    public LoadGenerator(Map<String, String> options){
+        this.url = options.getOrDefault("url", "http://localhost:8080") + "/api/v1";
+        this.openLoop = !options.getOrDefault("mode", "open").equals("closed");
+        this.rate = Integer.parseInt(options.getOrDefault("rate", "1000"));
+        this.connections = Integer.parseInt(options.getOrDefault("connections", "64"));
+        this.durationSeconds = Integer.parseInt(options.getOrDefault("duration", "30"));
+        this.warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        this.seedActors = Integer.parseInt(options.getOrDefault("seed-actors", "2000"));
+
+        String[] mix = options.getOrDefault("mix", DEFAULT_MIX).split(",");
+        cumulativeWeights = new int[mix.length];
+        int total = 0;
+        for(int i = 0; i < mix.length; i++){
+            String[] entry = mix[i].split("=");
+            endpoints.add(entry[0].trim());
+            total += Integer.parseInt(entry[1].trim());
+            cumulativeWeights[i] = total;
+            stats.put(entry[0].trim(), new Stats());
+        }
+
+        this.pool = Executors.newFixedThreadPool(Math.max(4, openLoop ? Runtime.getRuntime().availableProcessors()
+                : connections));
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(pool)
+                .build();
+    }
+
+    /**
+     * This method parses "--name value" pairs and runs the load
+     * @param args the options
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public static void main(String[] args) throws IOException, InterruptedException{
+        Map<String, String> options = new HashMap<>();
+        for(int i = 0; i + 1 < args.length; i += 2){
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        new LoadGenerator(options).run();
+    }
+
+    /**
+     * This method seeds the graph, runs the warm-up and the measured period, and prints the report
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void run() throws IOException, InterruptedException{
+        seed();
+        long start = System.nanoTime();
+        recordFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = recordFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        if(openLoop){
+            runOpenLoop(start, end);
+        }else{
+            runClosedLoop(end);
+        }
+        pool.shutdown();
+        pool.awaitTermination(30, TimeUnit.SECONDS);
+        report();
+    }
+
+    /**
+     * This method writes the actors, movies and credits the mix reads from, with Kevin Bacon in some of the movies
+     */
+    private void seed() throws IOException, InterruptedException{
+        Random random = new Random(1);
+        int movies = Math.max(1, seedActors / 4);
+        StringBuilder body = new StringBuilder();
+        body.append("{\"type\":\"actor\",\"actorId\":\"").append(GraphStore.KEVIN_BACON)
+                .append("\",\"name\":\"Kevin Bacon\"}\n");
+        for(int i = 0; i < seedActors; i++){
+            body.append("{\"type\":\"actor\",\"actorId\":\"").append(actorId(i)).append("\",\"name\":\"Actor ")
+                    .append(i).append("\"}\n");
+        }
+        for(int i = 0; i < movies; i++){
+            body.append("{\"type\":\"movie\",\"movieId\":\"").append(movieId(i)).append("\",\"name\":\"Movie ")
+                    .append(i).append("\"}\n");
+        }
+        for(int i = 0; i < seedActors; i++){
+            for(int credit = 0; credit < 3; credit++){
+                body.append("{\"type\":\"relationship\",\"actorId\":\"").append(actorId(i))
+                        .append("\",\"movieId\":\"").append(movieId(random.nextInt(movies))).append("\"}\n");
+            }
+        }
+        for(int credit = 0; credit < 10; credit++){
+            body.append("{\"type\":\"relationship\",\"actorId\":\"").append(GraphStore.KEVIN_BACON)
+                    .append("\",\"movieId\":\"").append(movieId(random.nextInt(movies))).append("\"}\n");
+        }
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(url + "/bulkLoad"))
+                .PUT(HttpRequest.BodyPublishers.ofString(body.toString())).build(), HttpResponse.BodyHandlers.ofString());
+        System.out.printf("Seeded %d actors and %d movies: %d\n", seedActors, movies, response.statusCode());
+    }
+
+    /**
+     * This method starts requests at a fixed rate from one scheduling thread. Each is timed from its due time, so
+     * time spent waiting on a slow server or a busy client counts against the server.
+     */
+    private void runOpenLoop(long start, long end) throws InterruptedException{
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        AtomicLong outstanding = new AtomicLong();
+        for(long due = start; due < end; due += interval){
+            long wait = due - System.nanoTime();
+            if(wait > 0){
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }else{
+                maxLagNanos = Math.max(maxLagNanos, -wait);
+            }
+            String endpoint = pickEndpoint();
+            long dueTime = due;
+            outstanding.incrementAndGet();
+            client.sendAsync(request(endpoint), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        finish(endpoint, dueTime, response, error);
+                        outstanding.decrementAndGet();
+                    });
+        }
+        // Give stragglers a chance to finish, they still count from their due time
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while(outstanding.get() > 0 && System.nanoTime() < deadline){
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * This method runs a fixed number of connections that each send back to back
+     */
+    private void runClosedLoop(long end) throws InterruptedException{
+        List<Thread> workers = new ArrayList<>();
+        for(int i = 0; i < connections; i++){
+            Thread worker = new Thread(() -> {
+                while(System.nanoTime() < end){
+                    String endpoint = pickEndpoint();
+                    long sent = System.nanoTime();
+                    try{
+                        finish(endpoint, sent, client.send(request(endpoint), HttpResponse.BodyHandlers.discarding()),
+                                null);
+                    }catch(IOException e){
+                        finish(endpoint, sent, null, e);
+                    }catch(InterruptedException e){
+                        return;
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        for(Thread worker : workers){
+            worker.join();
+        }
+    }
+
+    private void finish(String endpoint, long startedAt, HttpResponse<?> response, Throwable error){
+        long micros = (System.nanoTime() - startedAt) / 1000;
+        if(startedAt < recordFrom){
+            return;
+        }
+        Stats endpointStats = stats.get(endpoint);
+        endpointStats.latency.record(micros);
+        if(error != null){
+            endpointStats.errors.increment();
+        }else{
+            endpointStats.status(response.statusCode()).increment();
+        }
+    }
+
+    private String pickEndpoint(){
+        int roll = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for(int i = 0; i < cumulativeWeights.length; i++){
+            if(roll < cumulativeWeights[i]){
+                return endpoints.get(i);
+            }
+        }
+        return endpoints.get(endpoints.size() - 1);
+    }
+
+    /**
+     * This method builds a request for an endpoint over the seeded ids
+     */
+    private HttpRequest request(String endpoint){
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String actorId = actorId(random.nextInt(seedActors));
+        String movieId = movieId(random.nextInt(Math.max(1, seedActors / 4)));
+        String method = "GET";
+        String body;
+        switch(endpoint){
+            case "getMovie":
+                body = "{\"movieId\":\"" + movieId + "\"}";
+                break;
+            case "hasRelationship":
+                body = "{\"actorId\":\"" + actorId + "\",\"movieId\":\"" + movieId + "\"}";
+                break;
+            case "computeSeparation":
+                body = "{\"fromActorId\":\"" + actorId + "\",\"toActorId\":\"" +
+                        actorId(random.nextInt(seedActors)) + "\"}";
+                break;
+            case "addActor":
+                method = "PUT";
+                body = "{\"actorId\":\"nm7" + String.format("%06d", nextActor.getAndIncrement() % 1_000_000) +
+                        "\",\"name\":\"Load Actor\"}";
+                break;
+            case "addRelationship":
+                method = "PUT";
+                body = "{\"actorId\":\"" + actorId + "\",\"movieId\":\"" + movieId + "\"}";
+                break;
+            default:
+                body = "{\"actorId\":\"" + actorId + "\"}";
+        }
+        return HttpRequest.newBuilder(URI.create(url + "/" + endpoint))
+                .timeout(Duration.ofSeconds(30))
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static String actorId(int i){
+        return "nm8" + String.format("%06d", i);
+    }
+
+    private static String movieId(int i){
+        return "tt8" + String.format("%06d", i);
+    }
+
+    /**
+     * This method prints throughput and percentiles for each endpoint and for everything together
+     */
+    private void report(){
+        System.out.printf("%s loop, %ds measured%s\n", openLoop ? "Open" : "Closed", durationSeconds,
+                openLoop ? " at " + rate + " req/s" : " over " + connections + " connections");
+        if(openLoop){
+            System.out.printf("Schedule fell behind by at most %.2f ms\n", maxLagNanos / 1e6);
+        }
+        System.out.printf("%-20s %9s %9s %9s %9s %9s %9s  %s\n", "endpoint", "req/s", "p50 ms", "p99 ms",
+                "p99.9 ms", "max ms", "errors", "statuses");
+        Stats all = new Stats();
+        for(Map.Entry<String, Stats> entry : stats.entrySet()){
+            print(entry.getKey(), entry.getValue());
+            all.add(entry.getValue());
+        }
+        print("all", all);
+    }
+
+    private void print(String name, Stats endpointStats){
+        LatencyHistogram latency = endpointStats.latency;
+        System.out.printf("%-20s %9.1f %9.2f %9.2f %9.2f %9.2f %9d  %s\n", name,
+                (double) latency.count() / durationSeconds, latency.percentile(50) / 1000.0,
+                latency.percentile(99) / 1000.0, latency.percentile(99.9) / 1000.0, latency.max() / 1000.0,
+                endpointStats.errors.sum(), endpointStats.statuses());
+    }
+
+    /**
+     * This class holds the latencies and outcomes of one endpoint
+     */
+    private static class Stats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+
+        // Counts for status codes 100 to 599
+        final LongAdder[] statuses = new LongAdder[600];
+
+        Stats(){
+            for(int i = 0; i < statuses.length; i++){
+                statuses[i] = new LongAdder();
+            }
+        }
+
+        LongAdder status(int code){
+            return statuses[Math.min(Math.max(code, 0), statuses.length - 1)];
+        }
+
+        void add(Stats other){
+            latency.add(other.latency);
+            errors.add(other.errors.sum());
+            for(int i = 0; i < statuses.length; i++){
+                statuses[i].add(other.statuses[i].sum());
+            }
+        }
+
+        String statuses(){
+            StringBuilder sb = new StringBuilder();
+            for(int i = 0; i < statuses.length; i++){
+                long count = statuses[i].sum();
+                if(count > 0){
+                    sb.append(sb.length() == 0 ? "" : " ").append(i).append('=').append(count);
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package ca.utoronto.utm.mcs;
+
+import java.util.Arrays;
+
+/**
+ * This class runs a BFS from up to 64 actors at once over a GraphView. Each node carries one bit per source in a long,
+ * for the sources that have seen it and those whose frontier it is on, so a single pass over the edges advances all
+ * 64 searches by one level. How many actors each source reaches at a level is kept in a bit-sliced counter (bit j of
+ * every source's count lives in one long), so counting is also one word operation per node rather than one per source.
+ * Each instance holds buffers sized to the graph and is used by one thread at a time.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+class MultiSourceBfs {
+    // The number of sources in one run, one per bit of a long
+    static final int WIDTH = 64;
+
+    // Bits in each source's per-level count, enough for any number of actors that fits in an int
+    private static final int COUNTER_BITS = 32;
+
+    private final GraphView view;
+    private final long[] seen;
+    private final long[] frontier;
+    private final long[] next;
+    private final long[] counter = new long[COUNTER_BITS];
+
+    /**
+     * Constructor, allocates the per-node words for one graph
+     * @param view the graph to search
+     */
+    MultiSourceBfs(GraphView view){
+        this.view = view;
+        this.seen = new long[view.nodeCount];
+        this.frontier = new long[view.nodeCount];
+        this.next = new long[view.nodeCount];
+    }
+
+    /**
+     * This method searches from a run of actors and adds what it finds to the totals given
+     * @param sources the actor nodes to search from, at most WIDTH
+     * @param reached for each source, the number of other actors it reaches
+     * @param distanceSum for each source, the sum of its Bacon-style distances (movies between) to those actors
+     * @param pairs the number of (source, actor) pairs at each distance
+     * @param baconLane the index in sources of Kevin Bacon, or -1 if he is not among them
+     * @param bacon the number of actors at each Bacon number, added to only when baconLane is set
+     */
+    void run(int[] sources, long[] reached, long[] distanceSum, Histogram pairs, int baconLane, Histogram bacon){
+        Arrays.fill(seen, 0);
+        Arrays.fill(frontier, 0);
+        for(int lane = 0; lane < sources.length; lane++){
+            seen[sources[lane]] |= 1L << lane;
+            frontier[sources[lane]] |= 1L << lane;
+        }
+
+        int[] offsets = view.offsets;
+        int[] neighbors = view.neighbors;
+        boolean[] isActor = view.isActor;
+        int nodes = view.nodeCount;
+        boolean active = true;
+        for(int level = 1; active; level++){
+            // Pushing every frontier bit to the neighbours of the nodes carrying it
+            for(int v = 0; v < nodes; v++){
+                long bits = frontier[v];
+                if(bits == 0){
+                    continue;
+                }
+                for(int i = offsets[v], end = offsets[v + 1]; i < end; i++){
+                    next[neighbors[i]] |= bits;
+                }
+            }
+
+            // Keeping only the bits that reach a node for the first time, which become the next frontier
+            active = false;
+            boolean counted = false;
+            for(int w = 0; w < nodes; w++){
+                long bits = next[w] & ~seen[w];
+                next[w] = 0;
+                frontier[w] = bits;
+                if(bits == 0){
+                    continue;
+                }
+                seen[w] |= bits;
+                active = true;
+                if(isActor[w]){
+                    count(bits);
+                    counted = true;
+                }
+            }
+
+            // Actors are only ever an even number of hops apart, one movie in between for every two
+            if(counted){
+                int distance = level / 2;
+                for(int lane = 0; lane < sources.length; lane++){
+                    long found = lane(lane);
+                    reached[lane] += found;
+                    distanceSum[lane] += found * distance;
+                    pairs.add(distance, found);
+                    if(lane == baconLane){
+                        bacon.add(distance, found);
+                    }
+                }
+                Arrays.fill(counter, 0);
+            }
+        }
+    }
+
+    /**
+     * This method adds one to the count of every source whose bit is set, as a ripple-carry add across the slices
+     */
+    private void count(long bits){
+        for(int j = 0; bits != 0 && j < COUNTER_BITS; j++){
+            long carry = counter[j] & bits;
+            counter[j] ^= bits;
+            bits = carry;
+        }
+    }
+
+    /**
+     * This method reads one source's count back out of the slices
+     */
+    private long lane(int lane){
+        long value = 0;
+        for(int j = 0; j < COUNTER_BITS; j++){
+            value |= ((counter[j] >>> lane) & 1L) << j;
+        }
+        return value;
+    }
+
+    /**
+     * This class counts something at each distance, growing as longer distances turn up
+     */
+    static class Histogram {
+        long[] counts = new long[16];
+
+        void add(int distance, long count){
+            if(distance >= counts.length){
+                counts = Arrays.copyOf(counts, Math.max(counts.length * 2, distance + 1));
+            }
+            counts[distance] += count;
+        }
+
+        void add(Histogram other){
+            for(int distance = 0; distance < other.counts.length; distance++){
+                if(other.counts[distance] != 0){
+                    add(distance, other.counts[distance]);
+                }
+            }
+        }
+
+        /**
+         * This method returns the largest distance with a count, or -1 if there is none
+         */
+        int maxDistance(){
+            for(int distance = counts.length - 1; distance >= 0; distance--){
+                if(counts[distance] != 0){
+                    return distance;
+                }
+            }
+            return -1;
+        }
+    }
+}
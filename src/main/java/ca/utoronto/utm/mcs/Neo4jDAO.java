@@ -2,14 +2,19 @@ package ca.utoronto.utm.mcs;
 
 import org.neo4j.driver.*;
 import org.neo4j.driver.Record;
-import org.neo4j.driver.exceptions.NoSuchRecordException;
-import org.neo4j.driver.types.Node;
-import org.neo4j.driver.types.Path;
+import org.neo4j.driver.summary.ResultSummary;
 
 import javax.inject.Inject;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 /**
 * This class deals with the Neo4j database. It talks to the database and gets/posts all required information
@@ -17,154 +22,361 @@ import java.util.Map;
 * @author Armand Sarkezians
 */
 public class Neo4jDAO {
-    //Session and Driver variables to create a connection with the database
-    private final Session session;
+    //Driver used to create a connection with the database, sessions are taken from its pool per operation
     private final Driver driver;
 
+    // The graph that Bacon path queries are answered from
+    private final GraphStore graphStore;
+
+    // Answers of getActor, getMovie and hasRelationship, invalidated by the writes that can change them
+    private final EntityCache cache;
+
+    // Timings of every statement sent, and the slow ones
+    private final QueryProfiler profiler;
+
     //Database URL and authentication, as per A1 requirements
     private final String uriDb = "bolt://localhost:7687";
     private final String username = "neo4j";
     private final String password = "123456";
 
     /**
-    * Constructor, creates the driver for the database using authentication variables posted above, and creates a session
-    * based on the driver.
+    * Constructor, keeps the driver for the database. Sessions are not thread-safe, so every operation opens a
+    * short-lived one from the driver's connection pool instead of sharing one.
     */
     @Inject
-    public Neo4jDAO(Driver driver){
+    public Neo4jDAO(Driver driver, GraphStore graphStore, EntityCache cache, QueryProfiler profiler){
         this.driver = driver;
-        this.session = this.driver.session();
+        this.graphStore = graphStore;
+        this.cache = cache;
+        this.profiler = profiler;
+    }
+
+    /**
+    * Constructor, for a DAO whose statements are only counted, with no slow-query log
+    */
+    public Neo4jDAO(Driver driver, GraphStore graphStore, EntityCache cache){
+        this(driver, graphStore, cache, QueryProfiler.statisticsOnly());
+    }
+
+    public GraphStore getGraphStore(){
+        return graphStore;
+    }
+
+    public EntityCache getCache(){
+        return cache;
+    }
+
+    public QueryProfiler getProfiler(){
+        return profiler;
     }
 
     public void cleanDatabase(){
-        this.session.run("MATCH (n) DETACH DELETE n");
+        try(Session session = this.driver.session()){
+            session.run(Queries.CLEAN_DATABASE).consume();
+        }
+        this.cache.clear();
+        this.graphStore.clear();
+    }
+
+    /**
+    * This method gets every statement in the query catalogue planned and cached by the database, so requests do not
+    * pay for planning. Reads are run against an id that matches nothing, writes are only EXPLAINed.
+    */
+    public void warmUp(){
+        try(Session session = this.driver.session()){
+            for(String query : Queries.READS){
+                session.run(query, Queries.WARM_UP_PARAMETERS).consume();
+            }
+            for(String query : Queries.WRITES){
+                session.run("EXPLAIN " + query, Queries.WARM_UP_PARAMETERS).consume();
+            }
+        }
     }
 
     /**
-    * This method adds an actor to the database if not already there
+    * This method creates the uniqueness constraints on actor and movie ids, which also index them. It is safe to run
+    * on every startup.
+    */
+    public void createSchema(){
+        try(Session session = this.driver.session()){
+            for(String query : Queries.SCHEMA){
+                session.run(query).consume();
+            }
+        }
+    }
+
+    /**
+    * This method adds an actor to the database if not already there, in one MERGE round trip
     * @param name the name of the actor being put in the database
     * @param actorId the id of the actor being put in the database
     * @return    to check if the actor already existed (for 200 or 400 code)
     */
     public Boolean addActor(String name, String actorId){
-        // To make sure the actor is not already in the system
-        if(getActor(actorId).equals("Not Found")) {
-            String query;
-            query = "CREATE (a:actor {name:\"%s\", id:\"%s\"})";
-            query = String.format(query, name, actorId);
-            this.session.run(query);
-            return true;
+        boolean created;
+        try(Session session = this.driver.session()){
+            created = consume(session, Queries.MERGE_ACTOR, Values.parameters("name", name, "actorId", actorId))
+                    .counters().nodesCreated() > 0;
         }
-        return false;
+        // Actor was not in the database and was added
+        if(created){
+            this.cache.invalidate(EntityCache.actorKey(actorId));
+            this.graphStore.addActor(actorId);
+        }
+        return created;
     }
 
     /**
-    * This method adds a movie to the database if not already there
+    * This method adds a movie to the database if not already there, in one MERGE round trip
     * @param name the name of the movie being put in the database
     * @param movieId the id of the movie being put in the database
     * @return   to check if the movie already existed (for 200 or 400 code)
     */
     public Boolean addMovie(String name, String movieId){
-        // To make sure the movie is not already in the system
-        if(getMovie(movieId).equals("Not Found")) {
-
-            //Create the text needed to be sent to the database
-            String query;
-            query = "CREATE (m:movie {name:\"%s\", id:\"%s\"})";
-            query = String.format(query, name, movieId);
-
-            //Send the command to the database
-            this.session.run(query);
-
-            // Movie was not in database
-            return true;
+        boolean created;
+        //Send the command to the database
+        try(Session session = this.driver.session()){
+            created = consume(session, Queries.MERGE_MOVIE, Values.parameters("name", name, "movieId", movieId))
+                    .counters().nodesCreated() > 0;
         }
-        // Movie was already in database
-        return false;
+        // Movie was not in database and was added
+        if(created){
+            this.cache.invalidate(EntityCache.movieKey(movieId));
+            this.graphStore.addMovie(movieId);
+        }
+        return created;
     }
 
     /**
-    * This method adds a relationship between an already existing actor and an already existing movie
+    * This method adds a relationship between an already existing actor and an already existing movie, in one MERGE
+    * round trip. Nothing is created when the actor or movie is missing, since the MATCH finds no row.
     * @param actorId the id of the actor added to the relationship
     * @param movieId the id of the movie added to the relationship
     * @return   to check if the relationship already existed(for 200 or 400 code)
     */
     public Boolean addRelationship(String actorId, String movieId){
-        // In the case that the movie or actor does not exist
-        if(getMovie(movieId).equals("Not Found") || getActor(actorId).equals("Not Found")){
-            return false;
+        boolean created;
+        // Send query to database
+        try(Session session = this.driver.session()){
+            created = consume(session, Queries.MERGE_RELATIONSHIP,
+                    Values.parameters("actorId", actorId, "movieId", movieId))
+                    .counters().relationshipsCreated() > 0;
+        }
+        //Relationship did not exist and was added
+        if(created){
+            this.cache.invalidate(EntityCache.relationshipKey(actorId, movieId));
+            this.graphStore.addRelationship(actorId, movieId);
         }
+        return created;
+    }
 
-        // Ensure that the relationship didn't previously exist
-        if(hasRelationship(actorId, movieId).equals("Not Found") || hasRelationship(actorId, movieId).equals("FALSE")){
+    /**
+    * This method applies a run of single writes in one transaction, in the order given, so a relationship sees an
+    * actor or movie added before it in the same run. Consecutive writes of one type go in one statement, and a new
+    * statement is started whenever an id repeats, so each statement can tell which of its rows created something.
+    * @param rows one map per write, holding its type (actor, movie or relationship) and the fields of that add
+    * @return   for each write, whether it created something, which is what the single add would have returned
+    */
+    public boolean[] addInOrder(List<Map<String, Object>> rows){
+        boolean[] created = new boolean[rows.size()];
+        try(Session session = this.driver.session()){
+            session.writeTransaction(tx -> {
+                Arrays.fill(created, false);
+                List<Map<String, Object>> statement = new ArrayList<>();
+                Set<String> keys = new HashSet<>();
+                String type = null;
+                for(int i = 0; i < rows.size(); i++){
+                    Map<String, Object> row = rows.get(i);
+                    String key = row.get("actorId") + ":" + row.get("movieId");
+                    if(!row.get("type").equals(type) || !keys.add(key)){
+                        runGroup(tx, type, statement, created, this.profiler);
+                        statement = new ArrayList<>();
+                        keys.clear();
+                        keys.add(key);
+                        type = (String) row.get("type");
+                    }
+                    Map<String, Object> indexed = new HashMap<>(row);
+                    indexed.put("i", i);
+                    statement.add(indexed);
+                }
+                runGroup(tx, type, statement, created, this.profiler);
+                return null;
+            });
+        }
 
-            //Create the text needed to be sent to the database
-            String query;
-            query = "MATCH (a:actor), (m: movie)" +
-                    "WHERE a.id=\"%s\" AND m.id=\"%s\"" +
-                    "CREATE (a)-[r:ACTED_IN]->(m)";
-            query = String.format(query, actorId, movieId);
+        // Only once the transaction committed do the cache and graph store see the writes
+        for(int i = 0; i < rows.size(); i++){
+            if(!created[i]){
+                continue;
+            }
+            Map<String, Object> row = rows.get(i);
+            String actorId = (String) row.get("actorId");
+            String movieId = (String) row.get("movieId");
+            switch((String) row.get("type")){
+                case "actor":
+                    this.cache.invalidate(EntityCache.actorKey(actorId));
+                    this.graphStore.addActor(actorId);
+                    break;
+                case "movie":
+                    this.cache.invalidate(EntityCache.movieKey(movieId));
+                    this.graphStore.addMovie(movieId);
+                    break;
+                default:
+                    this.cache.invalidate(EntityCache.relationshipKey(actorId, movieId));
+                    this.graphStore.addRelationship(actorId, movieId);
+            }
+        }
+        return created;
+    }
 
-            // Send query to database
-            this.session.run(query);
+    /**
+    * This method runs one statement of addInOrder and marks the rows that created something
+    */
+    private static void runGroup(Transaction tx, String type, List<Map<String, Object>> rows, boolean[] created,
+                                 QueryProfiler profiler){
+        if(rows.isEmpty()){
+            return;
+        }
+        String query = type.equals("actor") ? Queries.GROUP_MERGE_ACTORS
+                : type.equals("movie") ? Queries.GROUP_MERGE_MOVIES : Queries.GROUP_MERGE_RELATIONSHIPS;
+        Value parameters = Values.parameters("rows", rows);
+        long started = System.nanoTime();
+        Result result = tx.run(query, parameters);
+        while(result.hasNext()){
+            Record record = result.next();
+            created[record.get("i").asInt()] = record.get("created").asBoolean();
+        }
+        profiler.record(query, parameters, started, result.consume());
+    }
 
-            //Relationship did not exist and was added
-            return true;
+    /**
+    * This method adds a batch of actors in one transaction. Batches can be written from several threads at once, so
+    * they run as managed transactions that the driver retries on transient errors such as deadlocks.
+    * @param rows one map per actor, holding its actorId and name
+    * @return   how many of the actors were not already in the database
+    */
+    public int addActors(List<Map<String, Object>> rows){
+        int created;
+        try(Session session = this.driver.session()){
+            created = session.writeTransaction(tx -> consume(tx, Queries.BULK_MERGE_ACTORS,
+                    Values.parameters("rows", rows)).counters().nodesCreated());
         }
-        //Relationship already existed and was not added
-        return false;
+        for(Map<String, Object> row : rows){
+            this.cache.invalidate(EntityCache.actorKey((String) row.get("actorId")));
+            this.graphStore.addActor((String) row.get("actorId"));
+        }
+        return created;
+    }
+
+    /**
+    * This method adds a batch of movies in one transaction
+    * @param rows one map per movie, holding its movieId and name
+    * @return   how many of the movies were not already in the database
+    */
+    public int addMovies(List<Map<String, Object>> rows){
+        int created;
+        try(Session session = this.driver.session()){
+            created = session.writeTransaction(tx -> consume(tx, Queries.BULK_MERGE_MOVIES,
+                    Values.parameters("rows", rows)).counters().nodesCreated());
+        }
+        for(Map<String, Object> row : rows){
+            this.cache.invalidate(EntityCache.movieKey((String) row.get("movieId")));
+            this.graphStore.addMovie((String) row.get("movieId"));
+        }
+        return created;
     }
 
     /**
-    * This method gets the information of an actor, given their actorId
+    * This method adds a batch of relationships in one transaction. Rows whose actor or movie is missing are skipped.
+    * @param rows one map per relationship, holding its actorId and movieId
+    * @return   how many of the relationships were not already in the database
+    */
+    public int addRelationships(List<Map<String, Object>> rows){
+        List<Record> matched = new ArrayList<>();
+        int created;
+        try(Session session = this.driver.session()){
+            created = session.writeTransaction(tx -> {
+                matched.clear();
+                Value parameters = Values.parameters("rows", rows);
+                long started = System.nanoTime();
+                Result result = tx.run(Queries.BULK_MERGE_RELATIONSHIPS, parameters);
+                matched.addAll(result.list());
+                ResultSummary summary = result.consume();
+                this.profiler.record(Queries.BULK_MERGE_RELATIONSHIPS, parameters, started, summary);
+                return summary.counters().relationshipsCreated();
+            });
+        }
+        // Every row that matched both ends comes back, the graph store ignores edges it already has
+        for(Record record : matched){
+            String actorId = record.get("actorId").asString();
+            String movieId = record.get("movieId").asString();
+            this.cache.invalidate(EntityCache.relationshipKey(actorId, movieId));
+            this.graphStore.addRelationship(actorId, movieId);
+        }
+        return created;
+    }
+
+    /**
+    * This method gets the information of an actor, given their actorId, from the cache when it is there
     * @param actorId the id of the actor for which information is wanted
-    * @return   the information of the actor, if found
+    * @return   the actor as JSON, or "Not Found"
     */
     public String getActor(String actorId){
-        //Create the text needed to be sent to the database
-        String query;
-        query = "MATCH (a:actor)" +
-                "WHERE a.id=\"%s\"" +
-                "RETURN a";
-        query = String.format(query, actorId);
+        String key = EntityCache.actorKey(actorId);
+        String cached = this.cache.get(key);
+        if(cached != null){
+            return cached;
+        }
+        long version = this.cache.version(key);
+        String actor = "Not Found";
 
         //Sending information to database and taking result
-        Result node = this.session.run(query);
-
-        // Checking if node has correct information, if so, storing it in a map and returning it
-        if(node.hasNext()){
-            Record record = node.next();
-            Map<String, Object> actorMap = record.get("a").asMap();
-            return actorMap.toString();
+        try(Session session = this.driver.session()){
+            Value parameters = Values.parameters("actorId", actorId);
+            long started = System.nanoTime();
+            Result node = session.run(Queries.GET_ACTOR, parameters);
+
+            // Checking if node has correct information, if so, storing it in a map and returning it
+            if(node.hasNext()){
+                Record record = node.next();
+                Map<String, Object> actorMap = record.get("a").asMap();
+                actor = toJson("actorId", actorMap);
+            }
+            this.profiler.record(Queries.GET_ACTOR, parameters, started, node.consume());
         }
-        //Actor was not found
-        return "Not Found";
+        this.cache.put(key, actor, actor.equals("Not Found"), version);
+        return actor;
     }
 
     /**
     * This method gets the information of a movie, given their movieId
     * @param movieId the id of the movie for which information is wanted
-    * @return   the information of the movie, if found
+    * @return   the movie as JSON, or "Not Found"
     */
     public String getMovie(String movieId){
-        //Create the text needed to be sent to the database
-        String query;
-        query = "MATCH (m:movie)" +
-                "WHERE m.id=\"%s\"" +
-                "RETURN m";
-        query = String.format(query, movieId);
+        String key = EntityCache.movieKey(movieId);
+        String cached = this.cache.get(key);
+        if(cached != null){
+            return cached;
+        }
+        long version = this.cache.version(key);
+        String movie = "Not Found";
 
         //Sending information to database and taking result
-        Result node = this.session.run(query);
-
-        // Checking if node has correct information, if so, storing it in a map and returning it
-        if(node.hasNext()){
-            Record record = node.next();
-            Map<String, Object> movieMap = record.get("m").asMap();
-            return movieMap.toString();
+        try(Session session = this.driver.session()){
+            Value parameters = Values.parameters("movieId", movieId);
+            long started = System.nanoTime();
+            Result node = session.run(Queries.GET_MOVIE, parameters);
+
+            // Checking if node has correct information, if so, storing it in a map and returning it
+            if(node.hasNext()){
+                Record record = node.next();
+                Map<String, Object> movieMap = record.get("m").asMap();
+                movie = toJson("movieId", movieMap);
+            }
+            this.profiler.record(Queries.GET_MOVIE, parameters, started, node.consume());
         }
-        //Movie was not found
-        return "Not Found";
+        this.cache.put(key, movie, movie.equals("Not Found"), version);
+        return movie;
     }
 
     /**
@@ -174,24 +386,227 @@ public class Neo4jDAO {
     * @return   true or false, depending on whether a relationship exists
     */
     public String hasRelationship(String actorId, String movieId){
-        // Create the text needed to be sent to the database
-        String query;
-        query = "RETURN EXISTS((:actor {id:\"%s\"})-[:ACTED_IN]-(:movie {id:\"%s\"}))";
-        query = String.format(query, actorId, movieId);
+        String key = EntityCache.relationshipKey(actorId, movieId);
+        String cached = this.cache.get(key);
+        if(cached != null){
+            return cached;
+        }
+        long version = this.cache.version(key);
+        String relationship = "Not Found";
 
         // Sending information to database and taking result
-        Result node = this.session.run(query);
+        try(Session session = this.driver.session()){
+            Value parameters = Values.parameters("actorId", actorId, "movieId", movieId);
+            long started = System.nanoTime();
+            Result node = session.run(Queries.HAS_RELATIONSHIP, parameters);
+
+            // Checking if node has correct information, if so, storing it in a map and returning it
+            if(node.hasNext()){
+                Record record = node.next();
+                Value exists = record.get("exists");
+                relationship = exists.toString();
+            }
+            this.profiler.record(Queries.HAS_RELATIONSHIP, parameters, started, node.consume());
+        }
+        // Only TRUE is certain to stay true, FALSE is a miss that may be created elsewhere
+        this.cache.put(key, relationship, !relationship.equals("TRUE"), version);
+        return relationship;
+    }
+
+    /**
+    * This method reads one page of an actor's movies, in order of movieId. Rows are handed on as the driver streams
+    * them in, so the caller can write each one out before the next has arrived.
+    * @param actorId the id of the actor
+    * @param after the page starts at the first movieId greater than this, "" for the first page
+    * @param limit the most movies on the page
+    * @param row given the movieId and name of each movie on the page
+    * @return   -1 if the actor is not found, otherwise the number of movies found, where more than limit means
+    *           there is another page
+    */
+    public int getFilmography(String actorId, String after, int limit, BiConsumer<String, String> row){
+        return readPage(Queries.FILMOGRAPHY_PAGE, Values.parameters("actorId", actorId, "after", after,
+                "limit", limit + 1), limit, row);
+    }
 
-        // Checking if node has correct information, if so, storing it in a map and returning it
-        if(node.hasNext()){
-            Record record = node.next();
-            Value relationship = record.get
-                    ("EXISTS((:actor {id:\"" + actorId +
-                            "\"})-[:ACTED_IN]-(:movie {id:\"" + movieId + "\"}))");
-            return relationship.toString();
+    /**
+    * This method reads one page of a movie's cast, in order of actorId, the same way as getFilmography
+    * @param movieId the id of the movie
+    * @param after the page starts at the first actorId greater than this, "" for the first page
+    * @param limit the most actors on the page
+    * @param row given the actorId and name of each actor on the page
+    * @return   -1 if the movie is not found, otherwise the number of actors found, where more than limit means
+    *           there is another page
+    */
+    public int getCast(String movieId, String after, int limit, BiConsumer<String, String> row){
+        return readPage(Queries.CAST_PAGE, Values.parameters("movieId", movieId, "after", after,
+                "limit", limit + 1), limit, row);
+    }
+
+    /**
+    * This method runs a page query, which asks for one row past the limit so the caller knows whether to offer a
+    * next page without a second count query
+    */
+    private int readPage(String query, Value parameters, int limit, BiConsumer<String, String> row){
+        int found = -1;
+        try(Session session = this.driver.session()){
+            long started = System.nanoTime();
+            Result result = session.run(query, parameters);
+            while(result.hasNext()){
+                Record record = result.next();
+                found = Math.max(found, 0);
+                // The single row of nulls of an actor or movie with nothing on this page
+                if(record.get("id").isNull()){
+                    continue;
+                }
+                if(++found <= limit){
+                    row.accept(record.get("id").asString(), record.get("name").asString(null));
+                }
+            }
+            this.profiler.record(query, parameters, started, result.consume());
+        }
+        return found;
+    }
+
+    /**
+    * This method gets many actors at once. Those in the cache are answered from it, and the rest are fetched with
+    * one UNWIND query and cached.
+    * @param actorIds the ids of the actors
+    * @return   each actor as JSON, or "Not Found", in the same order as the ids
+    */
+    public String[] getActors(List<String> actorIds){
+        return lookupAll(actorIds, EntityCache::actorKey, Queries.GET_ACTORS, "a", "actorId");
+    }
+
+    /**
+    * This method gets many movies at once, the same way as getActors
+    * @param movieIds the ids of the movies
+    * @return   each movie as JSON, or "Not Found", in the same order as the ids
+    */
+    public String[] getMovies(List<String> movieIds){
+        return lookupAll(movieIds, EntityCache::movieKey, Queries.GET_MOVIES, "m", "movieId");
+    }
+
+    /**
+    * This method checks many actor-movie pairs for a relationship at once, the same way as getActors
+    * @param actorIds the id of the actor in each pair
+    * @param movieIds the id of the movie in each pair
+    * @return   "TRUE" or "FALSE" for each pair, in the same order
+    */
+    public String[] hasRelationships(List<String> actorIds, List<String> movieIds){
+        String[] results = new String[actorIds.size()];
+        Map<String, Long> versions = new HashMap<>();
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for(int i = 0; i < results.length; i++){
+            String key = EntityCache.relationshipKey(actorIds.get(i), movieIds.get(i));
+            results[i] = this.cache.get(key);
+            if(results[i] == null && !versions.containsKey(key)){
+                versions.put(key, this.cache.version(key));
+                rows.add(Map.of("actorId", actorIds.get(i), "movieId", movieIds.get(i)));
+            }
+        }
+        if(rows.isEmpty()){
+            return results;
+        }
+
+        Map<String, String> fetched = new HashMap<>();
+        try(Session session = this.driver.session()){
+            Value parameters = Values.parameters("rows", rows);
+            long started = System.nanoTime();
+            Result result = session.run(Queries.HAS_RELATIONSHIPS, parameters);
+            while(result.hasNext()){
+                Record record = result.next();
+                String key = EntityCache.relationshipKey(record.get("actorId").asString(),
+                        record.get("movieId").asString());
+                String relationship = record.get("exists").toString();
+                fetched.put(key, relationship);
+                this.cache.put(key, relationship, !relationship.equals("TRUE"), versions.get(key));
+            }
+            this.profiler.record(Queries.HAS_RELATIONSHIPS, parameters, started, result.consume());
         }
-        //Relationship not found
-        return "Not Found";
+        for(int i = 0; i < results.length; i++){
+            if(results[i] == null){
+                results[i] = fetched.getOrDefault(EntityCache.relationshipKey(actorIds.get(i), movieIds.get(i)),
+                        "Not Found");
+            }
+        }
+        return results;
+    }
+
+    /**
+    * This method runs a batch of node lookups through the cache, fetching every miss in one query
+    */
+    private String[] lookupAll(List<String> ids, Function<String, String> keyOf, String query, String column,
+                               String idField){
+        String[] results = new String[ids.size()];
+        Map<String, Long> versions = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        for(int i = 0; i < results.length; i++){
+            String key = keyOf.apply(ids.get(i));
+            results[i] = this.cache.get(key);
+            if(results[i] == null && missing.add(ids.get(i))){
+                versions.put(ids.get(i), this.cache.version(key));
+            }
+        }
+        if(missing.isEmpty()){
+            return results;
+        }
+
+        Map<String, String> fetched = new HashMap<>();
+        try(Session session = this.driver.session()){
+            Value parameters = Values.parameters("ids", new ArrayList<>(missing));
+            long started = System.nanoTime();
+            Result result = session.run(query, parameters);
+            while(result.hasNext()){
+                Record record = result.next();
+                fetched.put(record.get("id").asString(), toJson(idField, record.get(column).asMap()));
+            }
+            this.profiler.record(query, parameters, started, result.consume());
+        }
+        for(String id : missing){
+            String node = fetched.getOrDefault(id, "Not Found");
+            this.cache.put(keyOf.apply(id), node, node.equals("Not Found"), versions.get(id));
+        }
+        for(int i = 0; i < results.length; i++){
+            if(results[i] == null){
+                results[i] = fetched.getOrDefault(ids.get(i), "Not Found");
+            }
+        }
+        return results;
+    }
+
+    /**
+    * This method runs a statement whose rows are not needed and counts it in the profiler
+    * @return   the summary of its result
+    */
+    private ResultSummary consume(QueryRunner runner, String query, Value parameters){
+        long started = System.nanoTime();
+        ResultSummary summary = runner.run(query, parameters).consume();
+        this.profiler.record(query, parameters, started, summary);
+        return summary;
+    }
+
+    /**
+    * This method turns an actor or movie node into the JSON sent back to the client
+    * @param idField the name the id is given, actorId or movieId
+    * @param node the properties of the node
+    * @return   the JSON text
+    */
+    static String toJson(String idField, Map<String, Object> node){
+        return toJson(idField, (String) node.get("id"), (String) node.get("name"));
+    }
+
+    /**
+    * This method turns an actor or movie into the JSON sent back to the client
+    * @param idField the name the id is given, actorId or movieId
+    * @param id the id
+    * @param name the name
+    * @return   the JSON text
+    */
+    static String toJson(String idField, String id, String name){
+        return JsonWriter.get().beginObject()
+                .name(idField).value(id)
+                .name("name").value(name)
+                .endObject().toString();
     }
 
     /**
@@ -200,57 +615,62 @@ public class Neo4jDAO {
      * @return
      */
     public int computeBaconNumber(String actorId){
-        if (actorId.equals("nm0000102")){
+        if (actorId.equals(GraphStore.KEVIN_BACON)){
             return 0; // Kevin Bacon's actor ID
-        }else if(getActor(actorId).equals("Not Found")){
+        }else if(!this.graphStore.hasActor(actorId)){
             return -1;
         }
-        ArrayList<String> baconPath = computeBaconPath(actorId);
-        if(baconPath != null){
-            return (int)Math.floor(baconPath.size()/2.0);
-        }else{
-            return -1;
+        return this.graphStore.computeBaconNumber(actorId);
+    }
+
+    /**
+     * This method determines the Bacon numbers of many actors in one pass over the graph store
+     * @param actorIds the actors
+     * @return   the Bacon number of each actor, or -1 if the actor is missing or has no path
+     */
+    public int[] computeBaconNumbers(List<String> actorIds){
+        int[] numbers = this.graphStore.computeBaconNumbers(actorIds);
+        for(int i = 0; i < numbers.length; i++){
+            if(actorIds.get(i).equals(GraphStore.KEVIN_BACON)){
+                numbers[i] = 0;
+            }
         }
+        return numbers;
     }
 
     /**
-     * This method determines the Bacon path of any actor
+     * This method determines the Bacon path of any actor, using whichever graph store was configured
      * @param actorId
      */
     public ArrayList<String> computeBaconPath(String actorId){
-        ArrayList<String> baconPath = new ArrayList<>();
-
-        // In case actor does not exist
-        if(getActor(actorId).equals("Not Found")) return null;
-
-        // Incase actorId is Kevin Bacon
-        if (actorId.equals("nm0000102")){
-            baconPath.add("nm0000102");
-            return baconPath;
-        }
-
-        String query;
-        query = "MATCH (k:actor {id:\"nm0000102\"})," +
-                "(a:actor {id:\"%s\"})," +
-                "p = shortestPath((k)-[:ACTED_IN*]-(a))" +
-                "RETURN p";
-        query = String.format(query, actorId);
-        Result record = this.session.run(query);
-        Record rec = null;
-
-        // Check for edge cases
-        if(!record.hasNext()){
-            return null;
-        }
-
-        rec = record.next();
+        return this.graphStore.computeBaconPath(actorId);
+    }
 
-        // Looping through nodes to get path
-        for(Node node : rec.get("p").asPath().nodes()){
-            baconPath.add(node.get("id").asString());
-        }
+    /**
+     * This method counts the shortest paths from Kevin Bacon to any actor, using whichever graph store was configured
+     * @param actorId the actor the paths end at
+     * @param sample whether to also choose one of the paths uniformly at random
+     * @return   the count, or null if the actor is missing or has no path, or the store does not count paths
+     */
+    public BaconPathCount countBaconPaths(String actorId, boolean sample){
+        return this.graphStore.countBaconPaths(actorId, sample);
+    }
 
+    /**
+     * This method tells whether the configured graph store can count Bacon paths
+     * @return   true if countBaconPaths gives an answer
+     */
+    public boolean supportsPathCounting(){
+        return this.graphStore.supportsPathCounting();
+    }
 
-        return baconPath;
+    /**
+     * This method determines the degrees of separation between any two actors
+     * @param fromActorId the actor the path starts at
+     * @param toActorId the actor the path ends at
+     * @return   the distance and path, or null if either actor is missing or they are not connected
+     */
+    public Separation computeSeparation(String fromActorId, String toActorId){
+        return this.graphStore.computeSeparation(fromActorId, toActorId);
     }
 }
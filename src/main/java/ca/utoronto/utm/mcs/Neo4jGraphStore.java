@@ -0,0 +1,211 @@
+package ca.utoronto.utm.mcs;
+
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Result;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.Values;
+import org.neo4j.driver.types.Node;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class answers path queries directly against the Neo4j database with a shortestPath query. The database is
+ * the store, so there is nothing to load or keep in sync.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+public class Neo4jGraphStore implements GraphStore {
+    // Driver that a short-lived session is taken from for every path query
+    private final Driver driver;
+
+    // Timings of every path query sent
+    private final QueryProfiler profiler;
+
+    /**
+     * Constructor, keeps the driver for the database
+     * @param driver the driver for the database
+     * @param profiler the profiler every path query is timed in
+     */
+    public Neo4jGraphStore(Driver driver, QueryProfiler profiler){
+        this.driver = driver;
+        this.profiler = profiler;
+    }
+
+    @Override
+    public void load(Driver driver){
+        // The database already holds the graph
+    }
+
+    @Override
+    public void addActor(String actorId){
+    }
+
+    @Override
+    public void addMovie(String movieId){
+    }
+
+    @Override
+    public void addRelationship(String actorId, String movieId){
+    }
+
+    @Override
+    public boolean hasActor(String actorId){
+        try(Session session = this.driver.session()){
+            Value parameters = Values.parameters("actorId", actorId);
+            long started = System.nanoTime();
+            Result result = session.run(Queries.GET_ACTOR, parameters);
+            boolean found = result.hasNext();
+            this.profiler.record(Queries.GET_ACTOR, parameters, started, result.consume());
+            return found;
+        }
+    }
+
+    @Override
+    public int computeBaconNumber(String actorId){
+        ArrayList<String> baconPath = computeBaconPath(actorId);
+        if(baconPath != null){
+            return (int)Math.floor(baconPath.size()/2.0);
+        }
+        return -1;
+    }
+
+    /**
+     * This method determines many Bacon numbers with one shortestPath query per actor, all sent in one UNWIND
+     * @param actorIds the actors
+     * @return   the Bacon number of each actor, or -1 where there is no path
+     */
+    @Override
+    public int[] computeBaconNumbers(List<String> actorIds){
+        Map<String, Integer> found = new HashMap<>();
+        try(Session session = this.driver.session()){
+            Value parameters = Values.parameters("baconId", KEVIN_BACON,
+                    "ids", new ArrayList<>(new HashSet<>(actorIds)));
+            long started = System.nanoTime();
+            Result result = session.run(Queries.BACON_NUMBERS, parameters);
+            while(result.hasNext()){
+                Record record = result.next();
+                found.put(record.get("id").asString(), record.get("number").asInt());
+            }
+            this.profiler.record(Queries.BACON_NUMBERS, parameters, started, result.consume());
+        }
+        int[] numbers = new int[actorIds.size()];
+        for(int i = 0; i < numbers.length; i++){
+            String actorId = actorIds.get(i);
+            if(actorId.equals(KEVIN_BACON)){
+                numbers[i] = hasActor(actorId) ? 0 : -1;
+            }else{
+                numbers[i] = found.getOrDefault(actorId, -1);
+            }
+        }
+        return numbers;
+    }
+
+    @Override
+    public ArrayList<String> computeBaconPath(String actorId){
+        ArrayList<String> baconPath = new ArrayList<>();
+
+        // In case actor does not exist
+        if(!hasActor(actorId)) return null;
+
+        // Incase actorId is Kevin Bacon
+        if (actorId.equals(KEVIN_BACON)){
+            baconPath.add(KEVIN_BACON);
+            return baconPath;
+        }
+
+        try(Session session = this.driver.session()){
+            Value parameters = Values.parameters("baconId", KEVIN_BACON, "actorId", actorId);
+            long started = System.nanoTime();
+            Result record = session.run(Queries.BACON_PATH, parameters);
+
+            // Check for edge cases
+            if(!record.hasNext()){
+                this.profiler.record(Queries.BACON_PATH, parameters, started, record.consume());
+                return null;
+            }
+
+            Record rec = record.next();
+
+            // Looping through nodes to get path
+            for(Node node : rec.get("p").asPath().nodes()){
+                baconPath.add(node.get("id").asString());
+            }
+            this.profiler.record(Queries.BACON_PATH, parameters, started, record.consume());
+        }
+        return baconPath;
+    }
+
+    /**
+     * This method sends a shortestPath query between the two actors. The database does not report how many nodes it
+     * expanded, so that count is left at -1.
+     */
+    @Override
+    public Separation computeSeparation(String fromActorId, String toActorId){
+        if(!hasActor(fromActorId) || !hasActor(toActorId)) return null;
+
+        ArrayList<String> path = new ArrayList<>();
+        if(fromActorId.equals(toActorId)){
+            path.add(fromActorId);
+            return new Separation(path, -1);
+        }
+
+        try(Session session = this.driver.session()){
+            Value parameters = Values.parameters("fromActorId", fromActorId, "toActorId", toActorId);
+            long started = System.nanoTime();
+            Result record = session.run(Queries.SEPARATION_PATH, parameters);
+            boolean connected = record.hasNext();
+            if(connected){
+                for(Node node : record.next().get("p").asPath().nodes()){
+                    path.add(node.get("id").asString());
+                }
+            }
+            this.profiler.record(Queries.SEPARATION_PATH, parameters, started, record.consume());
+            if(!connected){
+                return null;
+            }
+        }
+        return new Separation(path, -1);
+    }
+
+    @Override
+    public BaconPathCount countBaconPaths(String actorId, boolean sample){
+        // allShortestPaths lists every path, and their number grows exponentially with the distance, so this store
+        // does not count them at all
+        return null;
+    }
+
+    @Override
+    public boolean supportsPathCounting(){
+        // See countBaconPaths
+        return false;
+    }
+
+    @Override
+    public GraphView view(){
+        // Whole-graph jobs need the adjacency in process, which this store never holds
+        return null;
+    }
+
+    @Override
+    public long version(){
+        // Nothing is built from this store's views, since it never has any
+        return 0;
+    }
+
+    @Override
+    public long saveSnapshot(){
+        // The database is the store, there is nothing to write
+        return -1;
+    }
+
+    @Override
+    public void clear(){
+        // cleanDatabase already emptied the database
+    }
+}
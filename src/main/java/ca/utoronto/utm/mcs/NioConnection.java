@@ -0,0 +1,444 @@
+package ca.utoronto.utm.mcs;
+
+import com.sun.net.httpserver.Headers;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is one keep-alive connection of the NioHttpServer. Requests are parsed straight out of its direct read
+ * buffer and responses are written from its direct write buffer, both kept for the life of the connection. Every
+ * request gets a new NioExchange with its own headers, body and response, so a handler thread still unwinding its
+ * filters after it answered never sees the connection's next request.
+ *
+ * The read buffer and parser are only touched by the connection's loop thread. A response is encoded into the write
+ * buffer by the thread that finished its exchange, which then hands the connection back to the loop to be written.
+ * Nothing more is read until then, so pipelined requests wait in the buffer and are answered in order.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+class NioConnection {
+    // Largest request line and headers, past which the request gets a 431
+    private static final int HEAD_BYTES = 16 << 10;
+
+    // A write buffer that grew past this for one response is dropped afterwards rather than kept for the connection
+    private static final int POOLED_BYTES = 1 << 20;
+
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private enum State { HEAD, BODY, CHUNK_SIZE, CHUNK_DATA, CHUNK_END, TRAILER, HANDLING }
+
+    private final NioHttpServer server;
+    private final NioHttpServer.Loop loop;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+
+    private final ByteBuffer in = ByteBuffer.allocateDirect(HEAD_BYTES);
+    private ByteBuffer out = ByteBuffer.allocateDirect(HEAD_BYTES);
+    private final byte[] head = new byte[HEAD_BYTES];
+    private State state = State.HEAD;
+
+    // The request being read, and how much of its body or current chunk is still to come
+    private NioExchange request;
+    private long remaining;
+
+    // Whether the connection stays open once the response in the write buffer is out
+    private boolean keepAlive;
+
+    NioConnection(NioHttpServer server, NioHttpServer.Loop loop, SocketChannel channel, SelectionKey key){
+        this.server = server;
+        this.loop = loop;
+        this.channel = channel;
+        this.key = key;
+    }
+
+    SocketChannel channel(){
+        return channel;
+    }
+
+    /**
+     * This method reads what the socket has and parses as much of a request as it holds. Called on the loop thread.
+     */
+    void read(){
+        if(state == State.HANDLING){
+            return;
+        }
+        try{
+            if(channel.read(in) < 0){
+                disconnect();
+                return;
+            }
+            in.flip();
+            parse();
+            in.compact();
+        }catch(IOException e){
+            disconnect();
+        }
+    }
+
+    /**
+     * This method runs the parser over the buffered bytes until it needs more of them or a request is complete
+     */
+    private void parse() throws IOException{
+        while(state != State.HANDLING){
+            switch(state){
+                case HEAD:
+                    int end = find(in.position(), true);
+                    if(end < 0){
+                        if(in.remaining() == in.capacity()){
+                            fail(431);
+                        }
+                        return;
+                    }
+                    if(!parseHead(end)){
+                        return;
+                    }
+                    break;
+                case BODY:
+                    if(!copyBody()){
+                        return;
+                    }
+                    complete();
+                    break;
+                case CHUNK_SIZE:
+                    int lineEnd = find(in.position(), false);
+                    if(lineEnd < 0){
+                        if(in.remaining() == in.capacity()){
+                            fail(400);
+                        }
+                        return;
+                    }
+                    long size = chunkSize(lineEnd);
+                    if(size < 0 || request.bodyLength + size > server.maxBody()){
+                        fail(size < 0 ? 400 : 413);
+                        return;
+                    }
+                    remaining = size;
+                    state = size == 0 ? State.TRAILER : State.CHUNK_DATA;
+                    ensureBody((int) (request.bodyLength + size));
+                    break;
+                case CHUNK_DATA:
+                    if(!copyBody()){
+                        return;
+                    }
+                    state = State.CHUNK_END;
+                    break;
+                case CHUNK_END:
+                    if(in.remaining() < 2){
+                        return;
+                    }
+                    in.position(in.position() + 2);
+                    state = State.CHUNK_SIZE;
+                    break;
+                case TRAILER:
+                    int trailerEnd = find(in.position(), false);
+                    if(trailerEnd < 0){
+                        return;
+                    }
+                    boolean last = trailerEnd == in.position() + 2;
+                    in.position(trailerEnd);
+                    if(last){
+                        complete();
+                    }
+                    break;
+                default:
+                    return;
+            }
+        }
+    }
+
+    /**
+     * This method finds the end of the next line, or of the whole head, in the read buffer
+     * @param from where to start looking
+     * @param blank true to look for the blank line ending the head, false for the end of one line
+     * @return   the index just past the terminator, or -1 if it is not buffered yet
+     */
+    private int find(int from, boolean blank){
+        int limit = in.limit();
+        for(int i = from; i + 1 < limit; i++){
+            if(in.get(i) == '\r' && in.get(i + 1) == '\n'){
+                if(!blank){
+                    return i + 2;
+                }
+                if(i + 3 < limit && in.get(i + 2) == '\r' && in.get(i + 3) == '\n'){
+                    return i + 4;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * This method parses the request line and headers into a new exchange, and works out how the body is framed
+     * @param end the index just past the blank line
+     * @return   false if the request was rejected
+     */
+    private boolean parseHead(int end) throws IOException{
+        int length = end - in.position();
+        in.get(head, 0, length);
+
+        int lineEnd = indexOf(head, 0, length, (byte) '\r');
+        int firstSpace = indexOf(head, 0, lineEnd, (byte) ' ');
+        int secondSpace = firstSpace < 0 ? -1 : indexOf(head, firstSpace + 1, lineEnd, (byte) ' ');
+        if(secondSpace < 0){
+            fail(400);
+            return false;
+        }
+        String method = new String(head, 0, firstSpace, StandardCharsets.US_ASCII);
+        String protocol = new String(head, secondSpace + 1, lineEnd - secondSpace - 1, StandardCharsets.US_ASCII);
+        URI uri;
+        try{
+            uri = URI.create(new String(head, firstSpace + 1, secondSpace - firstSpace - 1,
+                    StandardCharsets.ISO_8859_1));
+        }catch(IllegalArgumentException e){
+            fail(400);
+            return false;
+        }
+
+        Headers headers = new Headers();
+        for(int at = lineEnd + 2; at < length - 2; ){
+            int next = indexOf(head, at, length, (byte) '\r');
+            int colon = indexOf(head, at, next, (byte) ':');
+            if(colon > at){
+                headers.add(new String(head, at, colon - at, StandardCharsets.ISO_8859_1),
+                        new String(head, colon + 1, next - colon - 1, StandardCharsets.ISO_8859_1).trim());
+            }
+            at = next + 2;
+        }
+
+        String connection = headers.getFirst("Connection");
+        boolean alive = protocol.equals("HTTP/1.1") ? !"close".equalsIgnoreCase(connection)
+                : "keep-alive".equalsIgnoreCase(connection);
+        NioHttpServer.Context context = server.contextFor(uri.getPath() == null ? "" : uri.getPath());
+        if(context == null || context.getHandler() == null){
+            fail(404);
+            return false;
+        }
+        request = new NioExchange(this, method, uri, protocol, headers, context, alive);
+        if("100-continue".equalsIgnoreCase(headers.getFirst("Expect"))){
+            channel.write(ByteBuffer.wrap(CONTINUE));
+        }
+
+        String transferEncoding = headers.getFirst("Transfer-Encoding");
+        String contentLength = headers.getFirst("Content-Length");
+        if(transferEncoding != null && transferEncoding.equalsIgnoreCase("chunked")){
+            state = State.CHUNK_SIZE;
+        }else if(contentLength != null){
+            try{
+                remaining = Long.parseLong(contentLength);
+            }catch(NumberFormatException e){
+                remaining = -1;
+            }
+            if(remaining < 0 || remaining > server.maxBody()){
+                fail(remaining < 0 ? 400 : 413);
+                return false;
+            }
+            ensureBody((int) remaining);
+            state = State.BODY;
+        }else{
+            complete();
+        }
+        return true;
+    }
+
+    /**
+     * This method copies as much of the body as is buffered
+     * @return   true once the body, or the current chunk, is all copied
+     */
+    private boolean copyBody(){
+        int count = (int) Math.min(in.remaining(), remaining);
+        in.get(request.body, request.bodyLength, count);
+        request.bodyLength += count;
+        remaining -= count;
+        return remaining == 0;
+    }
+
+    /**
+     * This method reads the hex size at the start of a chunk, ignoring any extensions
+     * @return   the size, or -1 if it is not a valid one
+     */
+    private long chunkSize(int lineEnd){
+        long size = 0;
+        int digits = 0;
+        for(int i = in.position(); i < lineEnd - 2; i++){
+            int digit = Character.digit(in.get(i), 16);
+            if(digit < 0){
+                break;
+            }
+            size = size * 16 + digit;
+            if(++digits > 15){
+                return -1;
+            }
+        }
+        in.position(lineEnd);
+        return digits == 0 ? -1 : size;
+    }
+
+    /**
+     * This method hands a complete request to the handler. The connection stops reading until it is answered.
+     */
+    private void complete(){
+        state = State.HANDLING;
+        key.interestOps(0);
+        NioExchange exchange = request;
+        request = null;
+        server.dispatch(exchange);
+    }
+
+    /**
+     * This method answers a request the server could not accept, and closes the connection afterwards
+     */
+    private void fail(int code){
+        state = State.HANDLING;
+        key.interestOps(0);
+        request = null;
+        respond(code, null, null, 0, false);
+    }
+
+    /**
+     * This method encodes a response into the write buffer and queues the connection on its loop. Called once per
+     * request, from whichever thread finished it.
+     * @param status the status, or -1 to drop the connection without a response
+     * @param headers the response headers, or null for none
+     * @param body the response body
+     * @param length the number of bytes of the body to send
+     * @param alive whether the connection stays open afterwards
+     */
+    void respond(int status, Headers headers, byte[] body, int length, boolean alive){
+        if(status < 0){
+            // Closed without a response, the same as the JDK server: the connection is dropped
+            keepAlive = false;
+            out.clear().flip();
+            loop.finished(this);
+            return;
+        }
+        keepAlive = alive;
+
+        StringBuilder text = new StringBuilder(128);
+        text.append("HTTP/1.1 ").append(status).append(' ').append(reason(status)).append("\r\n");
+        text.append("Content-Length: ").append(length).append("\r\n");
+        if(!alive){
+            text.append("Connection: close\r\n");
+        }
+        if(headers != null){
+            for(Map.Entry<String, List<String>> header : headers.entrySet()){
+                if(header.getKey().equalsIgnoreCase("Content-Length")
+                        || header.getKey().equalsIgnoreCase("Transfer-Encoding")){
+                    continue;
+                }
+                for(String value : header.getValue()){
+                    text.append(header.getKey()).append(": ").append(value).append("\r\n");
+                }
+            }
+        }
+        text.append("\r\n");
+
+        int size = text.length() + length;
+        if(out.capacity() < size){
+            out = ByteBuffer.allocateDirect(Math.max(size, out.capacity() * 2));
+        }
+        out.clear();
+        for(int i = 0; i < text.length(); i++){
+            out.put((byte) text.charAt(i));
+        }
+        if(length > 0){
+            out.put(body, 0, length);
+        }
+        out.flip();
+        loop.finished(this);
+    }
+
+    /**
+     * This method writes what is left of the response. Once it is all out, the connection goes back to reading, or
+     * is closed if it is not being kept alive. Called on the loop thread.
+     */
+    void write(){
+        try{
+            channel.write(out);
+            if(out.hasRemaining()){
+                key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+            if(!keepAlive){
+                disconnect();
+                return;
+            }
+            if(out.capacity() > POOLED_BYTES){
+                out = ByteBuffer.allocateDirect(HEAD_BYTES);
+            }
+            state = State.HEAD;
+            key.interestOps(SelectionKey.OP_READ);
+
+            // A pipelined request may already be waiting in the buffer
+            in.flip();
+            parse();
+            in.compact();
+        }catch(IOException e){
+            disconnect();
+        }
+    }
+
+    private void disconnect(){
+        key.cancel();
+        try{
+            channel.close();
+        }catch(IOException e){
+            // Already gone
+        }
+    }
+
+    /**
+     * This method makes room for the body of the request being read, doubling for chunks up to the largest body
+     */
+    private void ensureBody(int size){
+        if(request.body.length < size){
+            request.body = Arrays.copyOf(request.body,
+                    Math.max(size, Math.min(request.body.length * 2, server.maxBody())));
+        }
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to, byte b){
+        for(int i = from; i < to; i++){
+            if(bytes[i] == b){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static String reason(int status){
+        switch(status){
+            case 200: return "OK";
+            case 201: return "Created";
+            case 202: return "Accepted";
+            case 204: return "No Content";
+            case 400: return "Bad Request";
+            case 401: return "Unauthorized";
+            case 403: return "Forbidden";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 408: return "Request Timeout";
+            case 409: return "Conflict";
+            case 411: return "Length Required";
+            case 413: return "Payload Too Large";
+            case 415: return "Unsupported Media Type";
+            case 422: return "Unprocessable Entity";
+            case 429: return "Too Many Requests";
+            case 431: return "Request Header Fields Too Large";
+            case 500: return "Internal Server Error";
+            case 501: return "Not Implemented";
+            case 502: return "Bad Gateway";
+            case 503: return "Service Unavailable";
+            case 504: return "Gateway Timeout";
+            case 505: return "HTTP Version Not Supported";
+            default: return "Status";
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package ca.utoronto.utm.mcs;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class is one request on a NioConnection and the response to it. The connection's loop fills in the request
+ * and its body before dispatching it; the response is collected here by the handler's thread and handed to the
+ * connection to be encoded and written once the exchange is finished. Nothing is shared with the connection's other
+ * requests, so the exchange can still be read after it is answered.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+class NioExchange extends HttpExchange {
+    private static final byte[] EMPTY = new byte[0];
+
+    private final NioConnection connection;
+
+    // The request, and the streams over it and the response, made when first asked for
+    private final String method;
+    private final URI uri;
+    private final String protocol;
+    private final Headers requestHeaders;
+    private final NioHttpServer.Context context;
+    private final boolean keepAlive;
+    private final Map<String, Object> attributes = new HashMap<>();
+    private InputStream requestStream;
+    private OutputStream responseStream;
+
+    // The body, filled in by the connection's loop before the exchange is dispatched
+    byte[] body = EMPTY;
+    int bodyLength;
+
+    // The response, filled in by the handler's thread
+    private final Headers responseHeaders = new Headers();
+    private volatile int status = -1;
+    private byte[] responseBody = new byte[1024];
+    private int responseLength;
+    private volatile boolean finished;
+
+    NioExchange(NioConnection connection, String method, URI uri, String protocol, Headers requestHeaders,
+                NioHttpServer.Context context, boolean keepAlive){
+        this.connection = connection;
+        this.method = method;
+        this.uri = uri;
+        this.protocol = protocol;
+        this.requestHeaders = requestHeaders;
+        this.context = context;
+        this.keepAlive = keepAlive;
+    }
+
+    NioHttpServer.Context context(){
+        return context;
+    }
+
+    /**
+     * This method hands the response to the connection to be written. Only the first call does anything.
+     */
+    private void finish(){
+        if(finished){
+            return;
+        }
+        finished = true;
+        connection.respond(status, responseHeaders, responseBody, responseLength, keepAlive);
+    }
+
+    @Override
+    public Headers getRequestHeaders(){
+        return requestHeaders;
+    }
+
+    @Override
+    public Headers getResponseHeaders(){
+        return responseHeaders;
+    }
+
+    @Override
+    public URI getRequestURI(){
+        return uri;
+    }
+
+    @Override
+    public String getRequestMethod(){
+        return method;
+    }
+
+    @Override
+    public HttpContext getHttpContext(){
+        return context;
+    }
+
+    @Override
+    public void close(){
+        finish();
+    }
+
+    @Override
+    public InputStream getRequestBody(){
+        if(requestStream == null){
+            requestStream = new BodyInput();
+        }
+        return requestStream;
+    }
+
+    @Override
+    public OutputStream getResponseBody(){
+        if(responseStream == null){
+            responseStream = new BodyOutput();
+        }
+        return responseStream;
+    }
+
+    /**
+     * This method sets the status. A length of -1 means there is no body, and finishes the response at once;
+     * otherwise it is finished when the body stream or the exchange is closed, and the length sent is what was
+     * actually written.
+     */
+    @Override
+    public void sendResponseHeaders(int code, long length) throws IOException{
+        if(status >= 0){
+            throw new IOException("The response headers were already sent");
+        }
+        status = code;
+        if(length < 0){
+            finish();
+        }
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress(){
+        try{
+            return (InetSocketAddress) connection.channel().getRemoteAddress();
+        }catch(IOException e){
+            return null;
+        }
+    }
+
+    @Override
+    public int getResponseCode(){
+        return status;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress(){
+        try{
+            return (InetSocketAddress) connection.channel().getLocalAddress();
+        }catch(IOException e){
+            return null;
+        }
+    }
+
+    @Override
+    public String getProtocol(){
+        return protocol;
+    }
+
+    @Override
+    public Object getAttribute(String name){
+        return attributes.get(name);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value){
+        attributes.put(name, value);
+    }
+
+    @Override
+    public void setStreams(InputStream i, OutputStream o){
+        if(i != null){
+            requestStream = i;
+        }
+        if(o != null){
+            responseStream = o;
+        }
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal(){
+        return null;
+    }
+
+    /**
+     * This class reads the request body out of the exchange's array
+     */
+    private class BodyInput extends InputStream {
+        private int position;
+
+        @Override
+        public int read(){
+            return position < bodyLength ? body[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len){
+            if(position >= bodyLength){
+                return len == 0 ? 0 : -1;
+            }
+            int count = Math.min(len, bodyLength - position);
+            System.arraycopy(body, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available(){
+            return bodyLength - position;
+        }
+    }
+
+    /**
+     * This class collects the response body in the exchange's array, and finishes the response when closed
+     */
+    private class BodyOutput extends OutputStream {
+        @Override
+        public void write(int b){
+            ensure(1);
+            responseBody[responseLength++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len){
+            ensure(len);
+            System.arraycopy(b, off, responseBody, responseLength, len);
+            responseLength += len;
+        }
+
+        @Override
+        public void close(){
+            finish();
+        }
+
+        private void ensure(int extra){
+            if(responseLength + extra > responseBody.length){
+                responseBody = Arrays.copyOf(responseBody, Math.max(responseBody.length * 2, responseLength + extra));
+            }
+        }
+    }
+}
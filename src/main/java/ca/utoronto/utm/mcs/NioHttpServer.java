@@ -0,0 +1,336 @@
+package ca.utoronto.utm.mcs;
+
+import com.sun.net.httpserver.Authenticator;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * This class is a selector-based HTTP/1.1 server behind the same HttpServer API as the JDK's, so ReqHandler and its
+ * filters run on it unchanged. One thread accepts connections and hands them round robin to a few event loops, each
+ * with its own selector, which read into direct buffers, parse requests in place and write responses back. Handlers
+ * run on the executor, as they do on the JDK server, each with a new exchange. Connections are kept alive between
+ * requests, and requests that arrive pipelined are answered one after another in order.
+ *
+ * Request bodies are read whole before the handler runs, up to maxBody bytes; anything larger gets a 413, so very
+ * large bulk loads should go through the JDK transport, which streams them.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+public class NioHttpServer extends HttpServer {
+    private final int loopCount;
+    private final int maxBody;
+    private final List<Context> contexts = new CopyOnWriteArrayList<>();
+
+    private ServerSocketChannel channel;
+    private InetSocketAddress address;
+    private Executor executor;
+    private Loop[] loops;
+    private Thread acceptor;
+    private volatile boolean running = false;
+
+    /**
+     * Constructor, creates a server bound to an address that is not started yet
+     * @param address the address to listen on
+     * @param loopCount the number of event loops
+     * @param maxBody the largest request body accepted, in bytes
+     * @throws IOException if the address cannot be bound
+     */
+    public NioHttpServer(InetSocketAddress address, int loopCount, int maxBody) throws IOException{
+        this.loopCount = loopCount;
+        this.maxBody = maxBody;
+        bind(address, 0);
+    }
+
+    @Override
+    public void bind(InetSocketAddress address, int backlog) throws IOException{
+        if(channel != null){
+            throw new IllegalStateException("The server is already bound");
+        }
+        channel = ServerSocketChannel.open();
+        channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        channel.bind(address, backlog);
+        this.address = (InetSocketAddress) channel.getLocalAddress();
+    }
+
+    @Override
+    public void start(){
+        if(running){
+            throw new IllegalStateException("The server is already started");
+        }
+        running = true;
+        loops = new Loop[loopCount];
+        for(int i = 0; i < loopCount; i++){
+            try{
+                loops[i] = new Loop(Selector.open());
+            }catch(IOException e){
+                throw new IllegalStateException(e);
+            }
+            Thread thread = new Thread(loops[i], "nio-loop-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        acceptor = new Thread(this::accept, "nio-acceptor");
+        acceptor.start();
+    }
+
+    /**
+     * This method is the acceptor thread, handing each new connection to the next loop
+     */
+    private void accept(){
+        int next = 0;
+        while(running){
+            try{
+                SocketChannel client = channel.accept();
+                client.configureBlocking(false);
+                client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                loops[next].register(client);
+                next = (next + 1) % loops.length;
+            }catch(IOException e){
+                if(running){
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void setExecutor(Executor executor){
+        this.executor = executor;
+    }
+
+    @Override
+    public Executor getExecutor(){
+        return executor;
+    }
+
+    @Override
+    public void stop(int delay){
+        running = false;
+        try{
+            channel.close();
+        }catch(IOException e){
+            e.printStackTrace();
+        }
+        if(loops != null){
+            for(Loop loop : loops){
+                loop.close();
+            }
+        }
+    }
+
+    @Override
+    public HttpContext createContext(String path, HttpHandler handler){
+        Context context = new Context(path, handler);
+        contexts.add(context);
+        return context;
+    }
+
+    @Override
+    public HttpContext createContext(String path){
+        return createContext(path, null);
+    }
+
+    @Override
+    public void removeContext(String path){
+        if(!contexts.removeIf(context -> context.path.equals(path))){
+            throw new IllegalArgumentException("No context for " + path);
+        }
+    }
+
+    @Override
+    public void removeContext(HttpContext context){
+        contexts.remove(context);
+    }
+
+    @Override
+    public InetSocketAddress getAddress(){
+        return address;
+    }
+
+    int maxBody(){
+        return maxBody;
+    }
+
+    /**
+     * This method finds the context with the longest path that prefixes a request path
+     * @return   the context, or null if none matches
+     */
+    Context contextFor(String path){
+        Context best = null;
+        for(Context context : contexts){
+            if(path.startsWith(context.path) && (best == null || context.path.length() > best.path.length())){
+                best = context;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * This method runs a request's filters and handler, on the executor when there is one
+     */
+    void dispatch(NioExchange exchange){
+        Runnable run = () -> {
+            try{
+                Context context = exchange.context();
+                new Filter.Chain(context.getFilters(), context.getHandler()).doFilter(exchange);
+            }catch(Exception e){
+                e.printStackTrace();
+                exchange.close();
+            }
+        };
+        if(executor == null){
+            run.run();
+        }else{
+            executor.execute(run);
+        }
+    }
+
+    /**
+     * This class is one event loop: a selector and the connections registered with it
+     */
+    class Loop implements Runnable {
+        private final Selector selector;
+        private final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<>();
+
+        // Connections whose response is ready, handed over from handler threads
+        private final Queue<NioConnection> finished = new ConcurrentLinkedQueue<>();
+
+        Loop(Selector selector){
+            this.selector = selector;
+        }
+
+        void register(SocketChannel client){
+            accepted.add(client);
+            selector.wakeup();
+        }
+
+        /**
+         * This method queues a connection whose response is ready to be written by the loop
+         */
+        void finished(NioConnection connection){
+            finished.add(connection);
+            selector.wakeup();
+        }
+
+        void close(){
+            try{
+                for(SelectionKey key : selector.keys()){
+                    key.channel().close();
+                }
+                selector.close();
+            }catch(IOException e){
+                e.printStackTrace();
+            }
+        }
+
+        @Override
+        public void run(){
+            while(running && selector.isOpen()){
+                try{
+                    selector.select();
+                    SocketChannel client;
+                    while((client = accepted.poll()) != null){
+                        SelectionKey key = client.register(selector, SelectionKey.OP_READ);
+                        key.attach(new NioConnection(NioHttpServer.this, this, client, key));
+                    }
+                    NioConnection done;
+                    while((done = finished.poll()) != null){
+                        done.write();
+                    }
+                    for(SelectionKey key : selector.selectedKeys()){
+                        NioConnection connection = (NioConnection) key.attachment();
+                        if(!key.isValid()){
+                            continue;
+                        }
+                        if(key.isReadable()){
+                            connection.read();
+                        }else if(key.isWritable()){
+                            connection.write();
+                        }
+                    }
+                    selector.selectedKeys().clear();
+                }catch(Exception e){
+                    if(running){
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * This class is a path prefix and the handler and filters for it
+     */
+    class Context extends HttpContext {
+        private final String path;
+        private HttpHandler handler;
+        private final List<Filter> filters = new ArrayList<>();
+        private final Map<String, Object> attributes = new HashMap<>();
+        private Authenticator authenticator;
+
+        Context(String path, HttpHandler handler){
+            this.path = path;
+            this.handler = handler;
+        }
+
+        @Override
+        public HttpHandler getHandler(){
+            return handler;
+        }
+
+        @Override
+        public void setHandler(HttpHandler handler){
+            this.handler = handler;
+        }
+
+        @Override
+        public String getPath(){
+            return path;
+        }
+
+        @Override
+        public HttpServer getServer(){
+            return NioHttpServer.this;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes(){
+            return attributes;
+        }
+
+        @Override
+        public List<Filter> getFilters(){
+            return filters;
+        }
+
+        @Override
+        public Authenticator setAuthenticator(Authenticator authenticator){
+            Authenticator old = this.authenticator;
+            this.authenticator = authenticator;
+            return old;
+        }
+
+        @Override
+        public Authenticator getAuthenticator(){
+            return authenticator;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package ca.utoronto.utm.mcs;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This class counts the shortest paths from the root of a distance index to a node without listing them. Every
+ * shortest path steps down one layer of the index at a time, so the nodes on them are exactly those found by walking
+ * back from the target through neighbours one hop closer to the root. The count of a node is the sum of the counts of
+ * its neighbours one layer down, filled in from the root upwards over that region only, so the cost is linear in the
+ * edges between the root and the target rather than in the number of paths, which grows exponentially.
+ *
+ * Counts saturate at Long.MAX_VALUE. A double of each count is kept alongside, so a path can still be sampled
+ * uniformly by walking back from the target and stepping to each neighbour in proportion to its count.
+ * Buffers are reused between calls, so an instance is only used by one caller at a time.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+class PathCounter {
+    // Marks the nodes in the current region, bumped per call instead of clearing
+    private int[] seen = new int[0];
+    private int epoch = 0;
+
+    // Nodes of the region, target first and in order of falling distance
+    private int[] region = new int[0];
+
+    private long[] counts = new long[0];
+    private double[] weights = new double[0];
+
+    // Results of the last count
+    private long count;
+    private double weight;
+    private int[] path;
+
+    /**
+     * This method counts the shortest paths from the root to a node
+     * @param graph the graph
+     * @param index the distances from the root over the graph
+     * @param target the node the paths end at
+     * @param sample whether to also sample one of the paths
+     * @return   false if the target is not reached from the root
+     */
+    boolean count(CsrGraph graph, DistanceIndex index, int target, boolean sample){
+        path = null;
+        int hops = index.distance(target);
+        if(hops < 0){
+            return false;
+        }
+        ensure(graph.nodeCount);
+        if(++epoch == 0){
+            Arrays.fill(seen, 0);
+            epoch = 1;
+        }
+
+        // Walking back layer by layer to find the region
+        int size = 0;
+        region[size++] = target;
+        seen[target] = epoch;
+        for(int head = 0; head < size; head++){
+            int v = region[head];
+            int down = index.distance(v) - 1;
+            if(down < 0){
+                continue;
+            }
+            int from = v < graph.csrNodes ? graph.offsets[v] : 0;
+            int to = v < graph.csrNodes ? graph.offsets[v + 1] : 0;
+            for(int i = from; i < to; i++){
+                size = visit(index, graph.neighbors[i], down, size);
+            }
+            int[] extra = graph.delta[v];
+            for(int i = 0, end = graph.deltaSize[v]; i < end; i++){
+                size = visit(index, extra[i], down, size);
+            }
+        }
+
+        // Filling in counts from the root, which is last, upwards
+        for(int at = size - 1; at >= 0; at--){
+            int v = region[at];
+            int down = index.distance(v) - 1;
+            if(down < 0){
+                counts[v] = 1;
+                weights[v] = 1;
+                continue;
+            }
+            long sum = 0;
+            double sumWeight = 0;
+            int from = v < graph.csrNodes ? graph.offsets[v] : 0;
+            int to = v < graph.csrNodes ? graph.offsets[v + 1] : 0;
+            for(int i = from; i < to; i++){
+                int u = graph.neighbors[i];
+                if(index.distance(u) == down){
+                    sum = saturatingAdd(sum, counts[u]);
+                    sumWeight += weights[u];
+                }
+            }
+            int[] extra = graph.delta[v];
+            for(int i = 0, end = graph.deltaSize[v]; i < end; i++){
+                int u = extra[i];
+                if(index.distance(u) == down){
+                    sum = saturatingAdd(sum, counts[u]);
+                    sumWeight += weights[u];
+                }
+            }
+            counts[v] = sum;
+            weights[v] = sumWeight;
+        }
+        count = counts[target];
+        weight = weights[target];
+
+        if(sample){
+            path = new int[hops + 1];
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int v = target;
+            for(int at = hops; at > 0; at--){
+                path[at] = v;
+                v = pick(graph, index, v, random.nextDouble() * weights[v]);
+            }
+            path[0] = v;
+        }
+        return true;
+    }
+
+    long getCount(){
+        return count;
+    }
+
+    double getWeight(){
+        return weight;
+    }
+
+    /**
+     * This method returns the sampled path, starting at the root, or null if none was asked for
+     */
+    int[] getPath(){
+        return path;
+    }
+
+    /**
+     * This method adds a neighbour to the region if it is one layer down and not there yet
+     */
+    private int visit(DistanceIndex index, int u, int down, int size){
+        if(seen[u] != epoch && index.distance(u) == down){
+            seen[u] = epoch;
+            region[size++] = u;
+        }
+        return size;
+    }
+
+    /**
+     * This method steps from v to the neighbour one layer down that a point in v's weight falls on
+     */
+    private int pick(CsrGraph graph, DistanceIndex index, int v, double point){
+        int down = index.distance(v) - 1;
+        int last = -1;
+        int from = v < graph.csrNodes ? graph.offsets[v] : 0;
+        int to = v < graph.csrNodes ? graph.offsets[v + 1] : 0;
+        for(int i = from; i < to; i++){
+            int u = graph.neighbors[i];
+            if(index.distance(u) == down){
+                last = u;
+                point -= weights[u];
+                if(point < 0){
+                    return u;
+                }
+            }
+        }
+        int[] extra = graph.delta[v];
+        for(int i = 0, end = graph.deltaSize[v]; i < end; i++){
+            int u = extra[i];
+            if(index.distance(u) == down){
+                last = u;
+                point -= weights[u];
+                if(point < 0){
+                    return u;
+                }
+            }
+        }
+        // Rounding can leave the point just past the end
+        return last;
+    }
+
+    private static long saturatingAdd(long a, long b){
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    private void ensure(int nodes){
+        if(seen.length < nodes){
+            int size = Math.max(nodes, seen.length * 2);
+            seen = Arrays.copyOf(seen, size);
+            region = new int[size];
+            counts = new long[size];
+            weights = new double[size];
+        }
+    }
+}
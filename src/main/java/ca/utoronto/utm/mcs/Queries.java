@@ -0,0 +1,135 @@
+package ca.utoronto.utm.mcs;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is the catalogue of every Cypher statement sent to the database. Values are always passed as
+ * parameters, so each statement has one fixed text that Neo4j plans once and then finds in its plan cache.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+public final class Queries {
+    public static final String CLEAN_DATABASE = "MATCH (n) DETACH DELETE n";
+
+    // Writes are single MERGE statements; whether anything was created is read from the summary counters. Every
+    // created node and relationship is stamped with createdAt so a graph snapshot can replay what came after it.
+    public static final String MERGE_ACTOR = "MERGE (a:actor {id: $actorId}) " +
+            "ON CREATE SET a.name = $name, a.createdAt = timestamp()";
+
+    public static final String MERGE_MOVIE = "MERGE (m:movie {id: $movieId}) " +
+            "ON CREATE SET m.name = $name, m.createdAt = timestamp()";
+
+    public static final String MERGE_RELATIONSHIP = "MATCH (a:actor {id: $actorId}), (m:movie {id: $movieId}) " +
+            "MERGE (a)-[r:ACTED_IN]->(m) ON CREATE SET r.createdAt = timestamp()";
+
+    // Batched versions of the writes above, one row per entity in $rows
+    public static final String BULK_MERGE_ACTORS = "UNWIND $rows AS row " +
+            "MERGE (a:actor {id: row.actorId}) ON CREATE SET a.name = row.name, a.createdAt = timestamp()";
+
+    public static final String BULK_MERGE_MOVIES = "UNWIND $rows AS row " +
+            "MERGE (m:movie {id: row.movieId}) ON CREATE SET m.name = row.name, m.createdAt = timestamp()";
+
+    public static final String BULK_MERGE_RELATIONSHIPS = "UNWIND $rows AS row " +
+            "MATCH (a:actor {id: row.actorId}), (m:movie {id: row.movieId}) " +
+            "MERGE (a)-[r:ACTED_IN]->(m) ON CREATE SET r.createdAt = timestamp() " +
+            "RETURN row.actorId AS actorId, row.movieId AS movieId";
+
+    // Group-commit versions of the single writes, which report for each row (by its index i) whether it created
+    // anything, so every request still gets its own 200 or 400. Ids must be unique within one statement.
+    public static final String GROUP_MERGE_ACTORS = "UNWIND $rows AS row " +
+            "OPTIONAL MATCH (e:actor {id: row.actorId}) WITH row, e IS NULL AS created " +
+            "MERGE (a:actor {id: row.actorId}) ON CREATE SET a.name = row.name, a.createdAt = timestamp() " +
+            "RETURN row.i AS i, created";
+
+    public static final String GROUP_MERGE_MOVIES = "UNWIND $rows AS row " +
+            "OPTIONAL MATCH (e:movie {id: row.movieId}) WITH row, e IS NULL AS created " +
+            "MERGE (m:movie {id: row.movieId}) ON CREATE SET m.name = row.name, m.createdAt = timestamp() " +
+            "RETURN row.i AS i, created";
+
+    public static final String GROUP_MERGE_RELATIONSHIPS = "UNWIND $rows AS row " +
+            "MATCH (a:actor {id: row.actorId}), (m:movie {id: row.movieId}) " +
+            "OPTIONAL MATCH (a)-[e:ACTED_IN]->(m) WITH row, a, m, e IS NULL AS created " +
+            "MERGE (a)-[r:ACTED_IN]->(m) ON CREATE SET r.createdAt = timestamp() " +
+            "RETURN row.i AS i, created";
+
+    // One page of an actor's movies or a movie's cast, by keyset on id: the ids after $after, in order. The OPTIONAL
+    // MATCH gives one row of nulls when the actor or movie exists but has nothing past $after, and no rows when it
+    // does not exist.
+    public static final String FILMOGRAPHY_PAGE = "MATCH (a:actor {id: $actorId}) " +
+            "OPTIONAL MATCH (a)-[:ACTED_IN]->(m:movie) WHERE m.id > $after " +
+            "WITH m ORDER BY m.id LIMIT $limit RETURN m.id AS id, m.name AS name";
+
+    public static final String CAST_PAGE = "MATCH (m:movie {id: $movieId}) " +
+            "OPTIONAL MATCH (a:actor)-[:ACTED_IN]->(m) WHERE a.id > $after " +
+            "WITH a ORDER BY a.id LIMIT $limit RETURN a.id AS id, a.name AS name";
+
+    public static final String GET_ACTOR = "MATCH (a:actor {id: $actorId}) RETURN a";
+
+    public static final String GET_MOVIE = "MATCH (m:movie {id: $movieId}) RETURN m";
+
+    public static final String HAS_RELATIONSHIP = "RETURN EXISTS((:actor {id: $actorId})-[:ACTED_IN]-" +
+            "(:movie {id: $movieId})) AS exists";
+
+    // Batched versions of the lookups above, one row per id in $ids or per pair in $rows. Ids that match nothing
+    // return no row.
+    public static final String GET_ACTORS = "UNWIND $ids AS id MATCH (a:actor {id: id}) RETURN id, a";
+
+    public static final String GET_MOVIES = "UNWIND $ids AS id MATCH (m:movie {id: id}) RETURN id, m";
+
+    public static final String HAS_RELATIONSHIPS = "UNWIND $rows AS row RETURN row.actorId AS actorId, " +
+            "row.movieId AS movieId, EXISTS((:actor {id: row.actorId})-[:ACTED_IN]-(:movie {id: row.movieId})) " +
+            "AS exists";
+
+    public static final String BACON_NUMBERS = "MATCH (k:actor {id: $baconId}) UNWIND $ids AS id " +
+            "MATCH (a:actor {id: id}) WHERE a <> k MATCH p = shortestPath((k)-[:ACTED_IN*]-(a)) " +
+            "RETURN id, length(p) / 2 AS number";
+
+    public static final String BACON_PATH = "MATCH (k:actor {id: $baconId}), (a:actor {id: $actorId}), " +
+            "p = shortestPath((k)-[:ACTED_IN*]-(a)) RETURN p";
+
+    public static final String SEPARATION_PATH = "MATCH (a:actor {id: $fromActorId}), (b:actor {id: $toActorId}), " +
+            "p = shortestPath((a)-[:ACTED_IN*]-(b)) RETURN p";
+
+    public static final String ALL_ACTOR_IDS = "MATCH (a:actor) RETURN a.id AS id";
+
+    public static final String ALL_MOVIE_IDS = "MATCH (m:movie) RETURN m.id AS id";
+
+    public static final String ALL_RELATIONSHIPS = "MATCH (a:actor)-[:ACTED_IN]->(m:movie) " +
+            "RETURN a.id AS actorId, m.id AS movieId";
+
+    // Everything created since a snapshot's epoch, replayed on top of it at startup
+    public static final String ACTOR_IDS_SINCE = "MATCH (a:actor) WHERE a.createdAt >= $epoch RETURN a.id AS id";
+
+    public static final String MOVIE_IDS_SINCE = "MATCH (m:movie) WHERE m.createdAt >= $epoch RETURN m.id AS id";
+
+    public static final String RELATIONSHIPS_SINCE = "MATCH (a:actor)-[r:ACTED_IN]->(m:movie) " +
+            "WHERE r.createdAt >= $epoch RETURN a.id AS actorId, m.id AS movieId";
+
+    public static final String NOW = "RETURN timestamp() AS now";
+
+    // Uniqueness constraints on the ids, each backed by an index that every lookup and MERGE above uses, and
+    // indexes on createdAt for the snapshot replay
+    public static final List<String> SCHEMA = List.of(
+            "CREATE CONSTRAINT actor_id IF NOT EXISTS FOR (a:actor) REQUIRE a.id IS UNIQUE",
+            "CREATE CONSTRAINT movie_id IF NOT EXISTS FOR (m:movie) REQUIRE m.id IS UNIQUE",
+            "CREATE INDEX actor_created IF NOT EXISTS FOR (a:actor) ON (a.createdAt)",
+            "CREATE INDEX movie_created IF NOT EXISTS FOR (m:movie) ON (m.createdAt)",
+            "CREATE INDEX acted_in_created IF NOT EXISTS FOR ()-[r:ACTED_IN]-() ON (r.createdAt)");
+
+    // Reads served on the request path, warmed by running them against an id that matches nothing
+    public static final List<String> READS = List.of(GET_ACTOR, GET_MOVIE, HAS_RELATIONSHIP, BACON_PATH,
+            SEPARATION_PATH, GET_ACTORS, GET_MOVIES, HAS_RELATIONSHIPS, BACON_NUMBERS, FILMOGRAPHY_PAGE, CAST_PAGE);
+
+    // Writes served on the request path, warmed with EXPLAIN so nothing is written
+    public static final List<String> WRITES = List.of(MERGE_ACTOR, MERGE_MOVIE, MERGE_RELATIONSHIP,
+            GROUP_MERGE_ACTORS, GROUP_MERGE_MOVIES, GROUP_MERGE_RELATIONSHIPS);
+
+    // Parameters for warming, Neo4j ignores the ones a statement does not use
+    public static final Map<String, Object> WARM_UP_PARAMETERS = Map.of(
+            "actorId", "", "movieId", "", "name", "", "baconId", "", "fromActorId", "", "toActorId", "",
+            "ids", List.of(), "rows", List.of(), "after", "", "limit", 0);
+
+    private Queries(){
+    }
+}
@@ -0,0 +1,295 @@
+package ca.utoronto.utm.mcs;
+
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.summary.ProfiledPlan;
+import org.neo4j.driver.summary.ResultSummary;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class times every statement sent to the database, keyed by its text from the query catalogue. Each run adds
+ * the time the caller waited, and the server's own resultAvailableAfter and resultConsumedAfter from the summary, to
+ * the statistics of its statement, which is a few atomic increments.
+ *
+ * A run slower than the threshold is also kept in a short list of recent slow queries and written as a line of JSON
+ * to the slow-query log. A sample of the slow reads is run again with PROFILE, and the plan with its db hits is kept
+ * with the statement, so a plan that scans a label instead of using the index on id shows up without a database
+ * console. Writes are never run again, since PROFILE executes the statement. Rendering, logging and profiling happen
+ * on one background thread behind a bounded queue, and work that does not fit is dropped rather than queued.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+public class QueryProfiler {
+    // Work waiting for the background thread, past which it is dropped
+    private static final int QUEUE = 256;
+
+    // Characters of the parameters kept with a slow query
+    private static final int PARAMETER_CHARS = 200;
+
+    private final Driver driver;
+    private final long slowMicros;
+    private final double profileRate;
+    private final int keep;
+    private final Path logPath;
+
+    private final ConcurrentHashMap<String, Stats> stats = new ConcurrentHashMap<>();
+
+    // The most recent slow queries as JSON, newest last. Guarded by itself.
+    private final ArrayDeque<String> recent = new ArrayDeque<>();
+
+    private final LongAdder dropped = new LongAdder();
+    private final ThreadPoolExecutor background;
+    private BufferedWriter log;
+
+    /**
+     * Constructor, creates the profiler. Its background thread is only started once there is work for it.
+     * @param driver the driver slow reads are profiled on, or null to never profile
+     * @param slowMillis the time past which a run is slow, negative for none
+     * @param profileRate the share of slow reads run again with PROFILE, from 0 to 1
+     * @param keep the number of recent slow queries kept for the admin endpoint
+     * @param logPath the file slow queries are appended to, or null for none
+     */
+    public QueryProfiler(Driver driver, long slowMillis, double profileRate, int keep, Path logPath){
+        this.driver = driver;
+        this.slowMicros = slowMillis < 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toMicros(slowMillis);
+        this.profileRate = driver == null ? 0 : profileRate;
+        this.keep = keep;
+        this.logPath = logPath;
+        this.background = new ThreadPoolExecutor(0, 1, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(QUEUE),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "query-profiler");
+                    thread.setDaemon(true);
+                    return thread;
+                }, (runnable, executor) -> dropped.increment());
+    }
+
+    /**
+     * This method creates a profiler that only keeps the statistics, for DAOs built without one
+     */
+    static QueryProfiler statisticsOnly(){
+        return new QueryProfiler(null, -1, 0, 0, null);
+    }
+
+    /**
+     * This method counts one run of a statement, once its result has been consumed
+     * @param query the statement, as sent
+     * @param parameters its parameters
+     * @param startedNanos System.nanoTime() from just before it was sent
+     * @param summary the summary of its result
+     */
+    void record(String query, Value parameters, long startedNanos, ResultSummary summary){
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startedNanos);
+        long available = summary.resultAvailableAfter(TimeUnit.MICROSECONDS);
+        long consumed = summary.resultConsumedAfter(TimeUnit.MICROSECONDS);
+        Stats statement = stats.computeIfAbsent(query, Stats::new);
+        statement.latency.record(micros);
+        statement.totalMicros.add(micros);
+        statement.availableMicros.add(Math.max(0, available));
+        statement.consumedMicros.add(Math.max(0, consumed));
+        if(micros < slowMicros){
+            return;
+        }
+        statement.slow.increment();
+
+        long at = System.currentTimeMillis();
+        String shownParameters = parameters == null ? "" : parameters.toString();
+        boolean profile = profileRate > 0 && Queries.READS.contains(query)
+                && ThreadLocalRandom.current().nextDouble() < profileRate;
+        background.execute(() -> slow(statement, at, micros, available, consumed, shownParameters,
+                profile ? parameters : null));
+    }
+
+    /**
+     * This method writes the statistics of every statement, the most time spent first, and the recent slow queries,
+     * newest first
+     * @return   the writer holding the JSON report
+     */
+    JsonWriter report(){
+        List<Stats> statements = new ArrayList<>(stats.values());
+        statements.sort(Comparator.comparingLong((Stats s) -> s.totalMicros.sum()).reversed());
+        List<String> slowQueries;
+        synchronized(recent){
+            slowQueries = new ArrayList<>(recent);
+        }
+
+        JsonWriter writer = JsonWriter.get().beginObject()
+                .name("slowMs").value(slowMicros == Long.MAX_VALUE ? -1 : slowMicros / 1000)
+                .name("profileRate").value(profileRate)
+                .name("dropped").value(dropped.sum())
+                .name("queries").beginArray();
+        for(Stats statement : statements){
+            long count = statement.latency.count();
+            writer.beginObject()
+                    .name("query").value(statement.text)
+                    .name("count").value(count)
+                    .name("totalMs").value(statement.totalMicros.sum() / 1000)
+                    .name("meanMicros").value(statement.totalMicros.sum() / Math.max(1, count))
+                    .name("p50Micros").value(statement.latency.percentile(50))
+                    .name("p99Micros").value(statement.latency.percentile(99))
+                    .name("maxMicros").value(statement.latency.max())
+                    .name("availableAfterMicros").value(statement.availableMicros.sum() / Math.max(1, count))
+                    .name("consumedAfterMicros").value(statement.consumedMicros.sum() / Math.max(1, count))
+                    .name("slow").value(statement.slow.sum());
+            String profile = statement.profile;
+            if(profile != null){
+                writer.name("profile").raw(profile);
+            }
+            writer.endObject();
+        }
+        writer.endArray().name("slowQueries").beginArray();
+        for(int i = slowQueries.size() - 1; i >= 0; i--){
+            writer.raw(slowQueries.get(i));
+        }
+        return writer.endArray().endObject();
+    }
+
+    /**
+     * This method keeps and logs one slow query on the background thread, and profiles it if it was sampled
+     */
+    private void slow(Stats statement, long at, long micros, long available, long consumed, String parameters,
+                      Value profileParameters){
+        // Profiled first, since the plan is rendered with this thread's writer too
+        String profile = null;
+        String profileError = null;
+        if(profileParameters != null){
+            try{
+                profile = profile(statement.text, profileParameters);
+                statement.profile = profile;
+            }catch(Exception e){
+                // The database may be busy or gone, the slow query is still worth keeping
+                profileError = String.valueOf(e.getMessage());
+            }
+        }
+
+        JsonWriter writer = JsonWriter.get().beginObject()
+                .name("at").value(at)
+                .name("query").value(statement.text)
+                .name("micros").value(micros)
+                .name("availableAfterMicros").value(available)
+                .name("consumedAfterMicros").value(consumed)
+                .name("parameters").value(parameters.length() > PARAMETER_CHARS
+                        ? parameters.substring(0, PARAMETER_CHARS) + "..." : parameters);
+        if(profile != null){
+            writer.name("profile").raw(profile);
+        }else if(profileError != null){
+            writer.name("profileError").value(profileError);
+        }
+        String entry = writer.endObject().toString();
+
+        synchronized(recent){
+            recent.addLast(entry);
+            while(recent.size() > keep){
+                recent.removeFirst();
+            }
+        }
+        if(logPath != null){
+            try{
+                if(log == null){
+                    log = Files.newBufferedWriter(logPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                            StandardOpenOption.APPEND);
+                }
+                log.write(entry);
+                log.newLine();
+                log.flush();
+            }catch(IOException e){
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * This method runs a read again with PROFILE and renders its plan
+     * @return   the plan as JSON, with the db hits of the whole plan and whether any operator scanned a label or every
+     *           node instead of seeking an index
+     */
+    private String profile(String query, Value parameters){
+        ProfiledPlan plan;
+        try(Session session = driver.session()){
+            plan = session.run("PROFILE " + query, parameters).consume().profile();
+        }
+        List<String> scans = new ArrayList<>();
+        long dbHits = scans(plan, scans);
+        JsonWriter writer = JsonWriter.get().beginObject()
+                .name("at").value(System.currentTimeMillis())
+                .name("dbHits").value(dbHits)
+                .name("scans").value(scans)
+                .name("plan");
+        plan(writer, plan);
+        return writer.endObject().toString();
+    }
+
+    /**
+     * This method adds up the db hits of a plan and lists the operators that read more than an index seek would
+     */
+    private static long scans(ProfiledPlan plan, List<String> scans){
+        String operator = plan.operatorType();
+        if(operator.startsWith("AllNodesScan") || operator.startsWith("NodeByLabelScan")){
+            scans.add(operator);
+        }
+        long dbHits = plan.dbHits();
+        for(ProfiledPlan child : plan.children()){
+            dbHits += scans(child, scans);
+        }
+        return dbHits;
+    }
+
+    private static void plan(JsonWriter writer, ProfiledPlan plan){
+        writer.beginObject()
+                .name("operator").value(plan.operatorType())
+                .name("dbHits").value(plan.dbHits())
+                .name("rows").value(plan.records());
+        Map<String, Value> arguments = plan.arguments();
+        if(arguments.containsKey("Details")){
+            writer.name("details").value(arguments.get("Details").asString());
+        }
+        if(arguments.containsKey("EstimatedRows")){
+            writer.name("estimatedRows").value(arguments.get("EstimatedRows").asDouble());
+        }
+        if(!plan.children().isEmpty()){
+            writer.name("children").beginArray();
+            for(ProfiledPlan child : plan.children()){
+                plan(writer, child);
+            }
+            writer.endArray();
+        }
+        writer.endObject();
+    }
+
+    /**
+     * This class is the statistics of one statement. The times are in microseconds.
+     */
+    private static class Stats {
+        final String text;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder totalMicros = new LongAdder();
+        final LongAdder availableMicros = new LongAdder();
+        final LongAdder consumedMicros = new LongAdder();
+        final LongAdder slow = new LongAdder();
+
+        // The plan of the last PROFILE of the statement as JSON, or null
+        volatile String profile;
+
+        Stats(String query){
+            // Queries are laid out over several lines in the catalogue
+            this.text = query.trim().replaceAll("\\s+", " ");
+        }
+    }
+}
@@ -2,29 +2,68 @@ package ca.utoronto.utm.mcs;
 
 import java.io.*;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
 
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import javax.inject.Inject;
-
 /**
  * This class handles the requests given to the server, depending on their condition (GET/POST)
  * @version 1.0
  * @author Armand Sarkezians
  */
 public class ReqHandler implements HttpHandler {
+    // Endpoints the async DAO serves when there is one
+    private static final Set<String> ASYNC_ENDPOINTS = Set.of("/api/v1/getActor", "/api/v1/getMovie",
+            "/api/v1/hasRelationship", "/api/v1/addActor", "/api/v1/addMovie", "/api/v1/addRelationship");
+
+    // Page size of getFilmography and getCast when the request does not give one, and the most it may ask for
+    private static final int DEFAULT_PAGE = 100;
+    private static final int MAX_PAGE = 5000;
+
+    // Rows written between flushes of a streamed page
+    private static final int FLUSH_ROWS = 64;
+
     public Neo4jDAO dao;
+    private final AsyncNeo4jDAO asyncDao;
+    private final GroupCommitter groupCommitter;
+    private final BulkLoader bulkLoader;
+    private final BatchLookup batchLookup;
+    private final BaconAnalytics analytics;
+    private final LandmarkOracle landmarks;
+
+    // The server's executor, which async exchanges are finished on instead of the driver's I/O threads
+    private final Executor callbacks;
 
     /**
      * Constructor, creates the DAO for the Neo4j database
+     * @param dao the blocking DAO
+     * @param asyncDao the async DAO for lookups and single writes, or null to use the blocking DAO for everything
+     * @param groupCommitter the group committer for single writes, or null to commit each write on its own
+     * @param bulkLoader the loader behind the bulkLoad endpoint
+     * @param batchLookup the lookups behind the batch endpoint
+     * @param analytics the whole-graph statistics behind the admin analytics endpoint
+     * @param landmarks the distance oracle behind the estimateSeparation endpoint
+     * @param callbacks the executor async exchanges are finished on, only used with an async DAO
      */
-    @Inject
-    public ReqHandler(Neo4jDAO dao){
+    public ReqHandler(Neo4jDAO dao, AsyncNeo4jDAO asyncDao, GroupCommitter groupCommitter, BulkLoader bulkLoader,
+                      BatchLookup batchLookup, BaconAnalytics analytics, LandmarkOracle landmarks,
+                      Executor callbacks){
         this.dao = dao;
+        this.asyncDao = asyncDao;
+        this.groupCommitter = groupCommitter;
+        this.bulkLoader = bulkLoader;
+        this.batchLookup = batchLookup;
+        this.analytics = analytics;
+        this.landmarks = landmarks;
+        this.callbacks = callbacks;
     }
 
     public Neo4jDAO getNeo4j(){
@@ -38,6 +77,15 @@ public class ReqHandler implements HttpHandler {
     @Override
     public void handle(HttpExchange exchange) {
         try{
+            // The batch body is an array, and can be sent as a GET or, for clients that cannot, a POST
+            if(exchange.getRequestURI().getPath().equals("/api/v1/batch")){
+                this.handleBatch(exchange);
+                return;
+            }
+            if(this.asyncDao != null && ASYNC_ENDPOINTS.contains(exchange.getRequestURI().getPath())){
+                this.handleAsync(exchange);
+                return;
+            }
             switch (exchange.getRequestMethod()) {
                 case "GET":
                     this.handleGet(exchange);
@@ -53,6 +101,113 @@ public class ReqHandler implements HttpHandler {
         }
     }
 
+    /**
+     * This method handles the lookups and single writes on the async DAO. The query is only started here; the
+     * exchange is finished from its completion callback, so this thread is free again as soon as the query is sent.
+     * The callback runs on the server's executor, since writing to a slow client would otherwise hold up every query
+     * on the driver's I/O thread. Status codes are the same as on the blocking path.
+     * @param exchange is the information given by the sender
+     * @throws IOException
+     */
+    public void handleAsync(HttpExchange exchange) throws IOException{
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+        try{
+            JsonReader filteredText = JsonReader.read(exchange.getRequestBody());
+            String actorId = filteredText.has("actorId") ? filteredText.getString("actorId") : "";
+            String movieId = filteredText.has("movieId") ? filteredText.getString("movieId") : "";
+            String name = filteredText.has("name") ? filteredText.getString("name") : "";
+
+            CompletionStage<String> lookup = null;
+            CompletionStage<Boolean> write = null;
+            if(method.equals("GET") && path.equals("/api/v1/hasRelationship") && !actorId.equals("")
+                    && !movieId.equals("")){
+                lookup = this.asyncDao.hasRelationship(actorId, movieId);
+            }else if(method.equals("GET") && path.equals("/api/v1/getActor") && !actorId.equals("")){
+                lookup = this.asyncDao.getActor(actorId);
+            }else if(method.equals("GET") && path.equals("/api/v1/getMovie") && !movieId.equals("")){
+                lookup = this.asyncDao.getMovie(movieId);
+            }else if(method.equals("PUT") && path.equals("/api/v1/addRelationship") && !actorId.equals("")
+                    && !movieId.equals("")){
+                write = this.groupCommitter != null ? this.groupCommitter.addRelationship(actorId, movieId)
+                        : this.asyncDao.addRelationship(actorId, movieId);
+            }else if(method.equals("PUT") && path.equals("/api/v1/addActor") && !actorId.equals("")
+                    && !name.equals("")){
+                write = this.groupCommitter != null ? this.groupCommitter.addActor(name, actorId)
+                        : this.asyncDao.addActor(name, actorId);
+            }else if(method.equals("PUT") && path.equals("/api/v1/addMovie") && !movieId.equals("")
+                    && !name.equals("")){
+                write = this.groupCommitter != null ? this.groupCommitter.addMovie(name, movieId)
+                        : this.asyncDao.addMovie(name, movieId);
+            }else{
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+
+            // The response is sent from the callback, so the admission slot is held until then rather than released
+            // when this method returns; taken before the callback is added, since a cached lookup completes at once
+            AdmissionFilter.Permit permit = AdmissionFilter.detach();
+            if(lookup != null){
+                lookup.whenCompleteAsync((res, error) -> {
+                    if(error != null){
+                        error.printStackTrace();
+                        respond(exchange, permit, 500, null);
+                    }else if(res.equals("Not Found") || res.equals("FALSE")){
+                        respond(exchange, permit, 404, null);
+                    }else{
+                        respond(exchange, permit, 200, res);
+                    }
+                }, this.callbacks);
+            }else{
+                write.whenCompleteAsync((created, error) -> {
+                    if(error != null){
+                        error.printStackTrace();
+                        respond(exchange, permit, 500, null);
+                    }else{
+                        respond(exchange, permit, created ? 200 : 400, null);
+                    }
+                }, this.callbacks);
+            }
+        }catch(Exception e){
+            e.printStackTrace();
+            exchange.sendResponseHeaders(500, -1);
+        }
+    }
+
+    /**
+     * This method finishes an exchange from a completion callback, where there is no caller to throw to, and gives
+     * back its admission slot
+     */
+    private static void respond(HttpExchange exchange, AdmissionFilter.Permit permit, int status, String res){
+        try{
+            if(res == null){
+                exchange.sendResponseHeaders(status, -1);
+            }else{
+                send(exchange, status, res);
+            }
+        }catch(IOException e){
+            e.printStackTrace();
+        }finally{
+            exchange.close();
+            if(permit != null){
+                permit.release(status);
+            }
+        }
+    }
+
+    /**
+     * This method sends a body that is already JSON text. The length is that of its UTF-8 encoding, which is more than
+     * its number of chars whenever a name is not ASCII.
+     */
+    private static void send(HttpExchange exchange, int status, String res) throws IOException{
+        byte[] bytes = res.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try(OutputStream os = exchange.getResponseBody()){
+            os.write(bytes);
+        }
+    }
+
     /**
      * This method handles the GET case, and distributes the cases to the Neo4jDAO class, which sends the request
      * to the database
@@ -62,14 +217,38 @@ public class ReqHandler implements HttpHandler {
      */
     public void handleGet(HttpExchange exchange) throws IOException, JSONException{
         URI apiURI = exchange.getRequestURI();
+
+        // Admin reads take no body
+        if(apiURI.getPath().equals("/api/v1/admin/cache")){
+            this.handleCacheStats(exchange);
+            return;
+        }else if(apiURI.getPath().equals("/api/v1/admin/analytics")){
+            this.handleAnalyticsStatus(exchange);
+            return;
+        }else if(apiURI.getPath().equals("/api/v1/admin/queries")){
+            this.handleQueryStats(exchange);
+            return;
+        }else if(apiURI.getPath().equals("/api/v1/getFilmography")){
+            this.handlePage(exchange, "actorId", "movies", "movieId");
+            return;
+        }else if(apiURI.getPath().equals("/api/v1/getCast")){
+            this.handlePage(exchange, "movieId", "actors", "actorId");
+            return;
+        }else if(apiURI.getPath().equals("/api/v1/countBaconPaths")){
+            this.handleCountPaths(exchange);
+            return;
+        }else if(apiURI.getPath().equals("/api/v1/estimateSeparation")){
+            this.handleEstimate(exchange);
+            return;
+        }
         ArrayList<String> baconPath = new ArrayList<>();
+        Separation separation = null;
 
-        // Converting InputStream to String
-        String body = Utils.convert(exchange.getRequestBody());
         String res = "";
         int baconNumber = -1;
         try{
-            JSONObject filteredText = new JSONObject(body);
+            // Parsing the members of the body straight from its bytes
+            JsonReader filteredText = JsonReader.read(exchange.getRequestBody());
 
             // Checks to see if the requesting body has proper information
             if(filteredText.has("actorId") && !filteredText.getString("actorId").equals("") // hasRelationship
@@ -89,6 +268,11 @@ public class ReqHandler implements HttpHandler {
             }else if(filteredText.has("actorId") && !filteredText.getString("actorId").equals("") // computeBaconP
                     && apiURI.toString().equals("/api/v1/computeBaconPath")) {
                 baconPath = this.dao.computeBaconPath(filteredText.getString("actorId"));
+            }else if(filteredText.has("fromActorId") && !filteredText.getString("fromActorId").equals("") // computeS
+                    && filteredText.has("toActorId") && !filteredText.getString("toActorId").equals("")
+                    && apiURI.toString().equals("/api/v1/computeSeparation")) {
+                separation = this.dao.computeSeparation(filteredText.getString("fromActorId"),
+                        filteredText.getString("toActorId"));
             }else{
                 // If information is incorrectly given, 400 error is sent
                 exchange.sendResponseHeaders(400, -1);
@@ -100,33 +284,206 @@ public class ReqHandler implements HttpHandler {
                 exchange.sendResponseHeaders(404, -1);
                 return;
             }else if(apiURI.toString().equals("/api/v1/computeBaconNumber") && baconNumber >= 0){
-                res = String.valueOf(baconNumber);
-                exchange.sendResponseHeaders(200, res.length());
-                OutputStream os = exchange.getResponseBody();
-                os.write(res.getBytes());
-                os.close();
+                JsonWriter.get().value(baconNumber).send(exchange, 200);
             }else if (apiURI.toString().equals("/api/v1/computeBaconNumber") && baconNumber == -1){
                 exchange.sendResponseHeaders(404, -1);
             }else if(apiURI.toString().equals("/api/v1/computeBaconPath") && baconPath != null){
-                res = baconPath.toString();
-                exchange.sendResponseHeaders(200, res.length());
-                OutputStream os = exchange.getResponseBody();
-                os.write(res.getBytes());
-                os.close();
+                JsonWriter.get().value(baconPath).send(exchange, 200);
             }else if (apiURI.toString().equals("/api/v1/computeBaconPath")){
                 exchange.sendResponseHeaders(404, -1);
                 return;
+            }else if(apiURI.toString().equals("/api/v1/computeSeparation") && separation != null){
+                separation.write(JsonWriter.get()).send(exchange, 200);
+            }else if (apiURI.toString().equals("/api/v1/computeSeparation")){
+                exchange.sendResponseHeaders(404, -1);
+                return;
             }else{
-                exchange.sendResponseHeaders(200, res.length());
-                OutputStream os = exchange.getResponseBody();
-                os.write(res.getBytes());
-                os.close();
+                send(exchange, 200, res);
+            }
+
+        }catch(Exception e){
+            e.printStackTrace();
+            exchange.sendResponseHeaders(500, -1);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * This method handles the countBaconPaths case, which counts the distinct shortest paths from Kevin Bacon to an
+     * actor, and with "sample": true also returns one of them chosen uniformly. It sends a 404 if the actor is
+     * missing or has no path, and a 501 if the graph store could only count by listing every path.
+     * @param exchange is the information given by the sender
+     * @throws IOException
+     */
+    public void handleCountPaths(HttpExchange exchange) throws IOException{
+        if(!this.dao.supportsPathCounting()){
+            exchange.sendResponseHeaders(501, -1);
+            return;
+        }
+        try{
+            JsonReader filteredText = JsonReader.read(exchange.getRequestBody());
+            String actorId = filteredText.has("actorId") ? filteredText.getString("actorId") : "";
+            boolean sample = filteredText.has("sample") && filteredText.getString("sample").equals("true");
+            if(actorId.equals("")){
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            BaconPathCount count = this.dao.countBaconPaths(actorId, sample);
+            if(count == null){
+                exchange.sendResponseHeaders(404, -1);
+                return;
             }
+            count.write(JsonWriter.get()).send(exchange, 200);
+        }catch(JSONException e){
+            exchange.sendResponseHeaders(400, -1);
+        }catch(Exception e){
+            e.printStackTrace();
+            exchange.sendResponseHeaders(500, -1);
+        }
+    }
 
+    /**
+     * This method handles the estimateSeparation case, which bounds how many movies apart two actors are from the
+     * landmark tables instead of searching. It sends a 404 if either actor does not exist, a 503 if the tables have
+     * not been built yet, and a 501 if the graph store does not hold the graph in process, so they never will be. An
+     * actor added since the tables were built gets an unknown distance marked stale.
+     * @param exchange is the information given by the sender
+     * @throws IOException
+     */
+    public void handleEstimate(HttpExchange exchange) throws IOException{
+        if(!this.landmarks.supported()){
+            exchange.sendResponseHeaders(501, -1);
+            return;
+        }
+        try{
+            JsonReader filteredText = JsonReader.read(exchange.getRequestBody());
+            String fromActorId = filteredText.has("fromActorId") ? filteredText.getString("fromActorId") : "";
+            String toActorId = filteredText.has("toActorId") ? filteredText.getString("toActorId") : "";
+            if(fromActorId.equals("") || toActorId.equals("")){
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            JsonWriter estimate = this.landmarks.estimate(fromActorId, toActorId);
+            if(estimate == null){
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            estimate.send(exchange, 200);
+        }catch(JSONException e){
+            exchange.sendResponseHeaders(400, -1);
+        }catch(IllegalStateException e){
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            exchange.sendResponseHeaders(503, -1);
         }catch(Exception e){
             e.printStackTrace();
             exchange.sendResponseHeaders(500, -1);
+        }
+    }
+
+    /**
+     * This method handles the getFilmography and getCast cases, which page through an actor's movies or a movie's
+     * cast in order of id. The body gives the id, and optionally the limit and the after cursor, which is the next
+     * field of the page before. The page is streamed with chunked encoding as the driver reads it, so the first rows
+     * are sent before the last have arrived; 404 if the actor or movie is not found, 400 if the body is bad.
+     * @param exchange is the information given by the sender
+     * @param key the id field of the body, actorId or movieId
+     * @param list the name of the array in the response
+     * @param itemKey the id field of each entry in the array
+     * @throws IOException
+     */
+    public void handlePage(HttpExchange exchange, String key, String list, String itemKey) throws IOException{
+        String id;
+        String after;
+        int limit;
+        try{
+            JsonReader filteredText = JsonReader.read(exchange.getRequestBody());
+            id = filteredText.has(key) ? filteredText.getString(key) : "";
+            after = filteredText.has("after") ? filteredText.getString("after") : "";
+            limit = filteredText.has("limit") ? Integer.parseInt(filteredText.getString("limit")) : DEFAULT_PAGE;
+        }catch(JSONException | NumberFormatException e){
+            exchange.sendResponseHeaders(400, -1);
+            return;
+        }
+        if(id.equals("") || limit < 1 || limit > MAX_PAGE){
+            exchange.sendResponseHeaders(400, -1);
+            return;
+        }
+
+        Page page = new Page(exchange, key, id, list, itemKey);
+        try{
+            int found = key.equals("actorId") ? this.dao.getFilmography(id, after, limit, page)
+                    : this.dao.getCast(id, after, limit, page);
+            if(found < 0){
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            page.finish(found > limit ? page.last : null);
+        }catch(Exception e){
             e.printStackTrace();
+            // Once the headers are out the status cannot change, so the truncated body is all the client gets
+            if(page.out == null){
+                exchange.sendResponseHeaders(500, -1);
+            }
+        }finally{
+            exchange.close();
+        }
+    }
+
+    /**
+     * This class writes one page out as its rows arrive. The headers go out with the first row, or at the end if
+     * the page is empty, so a missing actor or movie can still be answered with a 404.
+     */
+    private static class Page implements BiConsumer<String, String> {
+        private final HttpExchange exchange;
+        private final String key;
+        private final String id;
+        private final String list;
+        private final String itemKey;
+        private final JsonWriter writer = JsonWriter.get();
+        private OutputStream out;
+        private String last;
+        private int rows = 0;
+
+        Page(HttpExchange exchange, String key, String id, String list, String itemKey){
+            this.exchange = exchange;
+            this.key = key;
+            this.id = id;
+            this.list = list;
+            this.itemKey = itemKey;
+        }
+
+        @Override
+        public void accept(String itemId, String name){
+            try{
+                begin();
+                writer.beginObject().name(itemKey).value(itemId).name("name").value(name).endObject();
+                last = itemId;
+                if(++rows % FLUSH_ROWS == 0){
+                    writer.flush(out);
+                }
+            }catch(IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void begin() throws IOException{
+            if(out == null){
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                exchange.sendResponseHeaders(200, 0);
+                out = exchange.getResponseBody();
+                writer.beginObject().name(key).value(id).name(list).beginArray();
+            }
+        }
+
+        /**
+         * This method closes the array and the object and sends what is left
+         * @param next the cursor of the next page, or null if this is the last
+         */
+        void finish(String next) throws IOException{
+            begin();
+            writer.endArray().name("next").value(next).endObject();
+            writer.flush(out);
+            out.close();
         }
     }
 
@@ -139,10 +496,22 @@ public class ReqHandler implements HttpHandler {
      */
     public void handlePut(HttpExchange exchange) throws IOException, JSONException{
         URI apiURI = exchange.getRequestURI();
-        // Converting InputStream to String
-        String body = Utils.convert(exchange.getRequestBody());
+
+        // The bulk body is streamed straight into the loader rather than read into one String
+        if(apiURI.getPath().equals("/api/v1/bulkLoad")){
+            this.handleBulkLoad(exchange);
+            return;
+        }else if(apiURI.getPath().equals("/api/v1/admin/snapshot")){
+            this.handleSnapshot(exchange);
+            return;
+        }else if(apiURI.getPath().equals("/api/v1/admin/analytics")){
+            this.handleAnalyticsStart(exchange);
+            return;
+        }
+
         try{
-            JSONObject filteredText = new JSONObject(body);
+            // Parsing the members of the body straight from its bytes
+            JsonReader filteredText = JsonReader.read(exchange.getRequestBody());
 
             // The response is to determine if the actor or movie already existed in the database
             Boolean response = true;
@@ -151,17 +520,26 @@ public class ReqHandler implements HttpHandler {
             if(filteredText.has("actorId") && !filteredText.getString("actorId").equals("") // addRelationship
                     && filteredText.has("movieId") && !filteredText.getString("movieId").equals("")
                     && apiURI.toString().equals("/api/v1/addRelationship")){
-                response = this.dao.addRelationship(filteredText.getString("actorId"),
-                        filteredText.getString("movieId"));
+                response = this.groupCommitter != null
+                        ? this.groupCommitter.addRelationship(filteredText.getString("actorId"),
+                                filteredText.getString("movieId")).join()
+                        : this.dao.addRelationship(filteredText.getString("actorId"),
+                                filteredText.getString("movieId"));
             }else if(filteredText.has("actorId") && !filteredText.getString("actorId").equals("") // addActor
                     && filteredText.has("name") && !filteredText.getString("name").equals("")
                     && apiURI.toString().equals("/api/v1/addActor")){
-                response = this.dao.addActor(filteredText.getString("name"), filteredText.getString("actorId"));
+                response = this.groupCommitter != null
+                        ? this.groupCommitter.addActor(filteredText.getString("name"),
+                                filteredText.getString("actorId")).join()
+                        : this.dao.addActor(filteredText.getString("name"), filteredText.getString("actorId"));
             }else if(filteredText.has("movieId") && !filteredText.getString("movieId").equals("") // addMovie
                     &&filteredText.has("name") && !filteredText.getString("name").equals("")
                     && apiURI.toString().equals("/api/v1/addMovie")){
-                response = this.dao.addMovie(filteredText.getString("name"),
-                        filteredText.getString("movieId"));
+                response = this.groupCommitter != null
+                        ? this.groupCommitter.addMovie(filteredText.getString("name"),
+                                filteredText.getString("movieId")).join()
+                        : this.dao.addMovie(filteredText.getString("name"),
+                                filteredText.getString("movieId"));
             }else{
                 exchange.sendResponseHeaders(400, -1);
                 return;
@@ -181,4 +559,136 @@ public class ReqHandler implements HttpHandler {
             exchange.sendResponseHeaders(500, -1);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * This method handles the bulkLoad case, which takes NDJSON records for actors, movies and relationships and
+     * responds with the counts for every batch
+     * @param exchange is the information given by the sender
+     * @throws IOException
+     */
+    public void handleBulkLoad(HttpExchange exchange) throws IOException{
+        try{
+            send(exchange, 200, this.bulkLoader.load(exchange.getRequestBody()));
+        }catch(Exception e){
+            e.printStackTrace();
+            exchange.sendResponseHeaders(500, -1);
+        }
+    }
+
+    /**
+     * This method handles the batch case, which answers an array of lookups in one response. A body that is not an
+     * array, or holds too many lookups, gets a 400.
+     * @param exchange is the information given by the sender
+     * @throws IOException
+     */
+    public void handleBatch(HttpExchange exchange) throws IOException{
+        String method = exchange.getRequestMethod();
+        if(!method.equals("GET") && !method.equals("POST")){
+            exchange.sendResponseHeaders(405, -1);
+            return;
+        }
+        try{
+            this.batchLookup.lookup(exchange.getRequestBody()).send(exchange, 200);
+        }catch(JSONException e){
+            exchange.sendResponseHeaders(400, -1);
+        }catch(Exception e){
+            e.printStackTrace();
+            exchange.sendResponseHeaders(500, -1);
+        }
+    }
+
+    /**
+     * This method handles the admin cache case, which reports the hit, miss and eviction counters of the DAO's cache
+     * @param exchange is the information given by the sender
+     * @throws IOException
+     */
+    public void handleCacheStats(HttpExchange exchange) throws IOException{
+        try{
+            send(exchange, 200, this.dao.getCache().stats());
+        }catch(Exception e){
+            e.printStackTrace();
+            exchange.sendResponseHeaders(500, -1);
+        }
+    }
+
+    /**
+     * This method handles the admin queries case, which reports the timings of every statement sent to the database,
+     * the plans of the slow reads that were profiled, and the most recent slow queries
+     * @param exchange is the information given by the sender
+     * @throws IOException
+     */
+    public void handleQueryStats(HttpExchange exchange) throws IOException{
+        try{
+            this.dao.getProfiler().report().send(exchange, 200);
+        }catch(Exception e){
+            e.printStackTrace();
+            exchange.sendResponseHeaders(500, -1);
+        }
+    }
+
+    /**
+     * This method handles the admin snapshot case, which writes the in-memory graph to its snapshot file. A store
+     * without a snapshot file gets a 400.
+     * @param exchange is the information given by the sender
+     * @throws IOException
+     */
+    public void handleSnapshot(HttpExchange exchange) throws IOException{
+        try{
+            long started = System.nanoTime();
+            long bytes = this.dao.getGraphStore().saveSnapshot();
+            if(bytes < 0){
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            JSONObject json = new JSONObject();
+            json.put("bytes", bytes);
+            json.put("millis", (System.nanoTime() - started) / 1_000_000);
+            send(exchange, 200, json.toString());
+        }catch(Exception e){
+            e.printStackTrace();
+            exchange.sendResponseHeaders(500, -1);
+        }
+    }
+
+    /**
+     * This method handles starting the admin analytics job, which computes distance statistics and closeness for
+     * every actor in the background. It answers 202 with the job's progress, 409 if a job is already running, and 400
+     * if the graph is not held in memory.
+     * @param exchange is the information given by the sender
+     * @throws IOException
+     */
+    public void handleAnalyticsStart(HttpExchange exchange) throws IOException{
+        try{
+            if(!this.analytics.start()){
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            this.analytics.status().send(exchange, 202);
+        }catch(IllegalStateException e){
+            exchange.sendResponseHeaders(409, -1);
+        }catch(Exception e){
+            e.printStackTrace();
+            exchange.sendResponseHeaders(500, -1);
+        }
+    }
+
+    /**
+     * This method handles the admin analytics case, which reports the progress and estimated time left of the
+     * current job, and its results once it is done. If no job was started it sends a 404.
+     * @param exchange is the information given by the sender
+     * @throws IOException
+     */
+    public void handleAnalyticsStatus(HttpExchange exchange) throws IOException{
+        try{
+            JsonWriter status = this.analytics.status();
+            if(status == null){
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            status.send(exchange, 200);
+        }catch(Exception e){
+            e.printStackTrace();
+            exchange.sendResponseHeaders(500, -1);
+        }
+    }
+}
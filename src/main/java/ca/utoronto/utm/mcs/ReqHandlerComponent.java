@@ -1,7 +1,9 @@
 package ca.utoronto.utm.mcs;
 
+import dagger.BindsInstance;
 import dagger.Component;
 import javax.inject.Singleton;
+import java.util.concurrent.Executor;
 
 /**
  * This is the interface for the Server class
@@ -10,4 +12,13 @@ import javax.inject.Singleton;
 @Component(modules = ReqHandlerModule.class)
 public interface ReqHandlerComponent {
     public ReqHandler buildHandler();
+    public ImdbImporter buildImporter();
+
+    /**
+     * This is the factory for the component, given the executor the server handles requests on
+     */
+    @Component.Factory
+    interface Factory {
+        ReqHandlerComponent create(@BindsInstance Executor executor);
+    }
 }
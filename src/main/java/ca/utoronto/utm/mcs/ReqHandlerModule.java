@@ -4,9 +4,17 @@ import dagger.Module;
 import dagger.Provides;
 import io.github.cdimascio.dotenv.Dotenv;
 import org.neo4j.driver.AuthTokens;
+import org.neo4j.driver.Config;
 import org.neo4j.driver.Driver;
 import org.neo4j.driver.GraphDatabase;
 
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.concurrent.Executor;
+
 /**
  * This class creates the module for the ReqHandle class
  * @version 1.0
@@ -17,13 +25,240 @@ public class ReqHandlerModule {
     private final String user = "neo4j";
     private final String password = "123456";
 
+    /**
+     * This method creates the driver for the database. Its connection pool holds NEO4J_POOL_SIZE connections, which
+     * caps how many requests can talk to the database at once.
+     * @return the driver, shared by the DAO and the graph store
+     */
     @Provides
-    public Neo4jDAO provideNeo4jDAO() {
+    @Singleton
+    public Driver provideDriver() {
         Dotenv env = Dotenv.load();
         String uri = env.get("NEO4J_ADDR");
         uri = "bolt://" + uri + ":7687";
 
-        Driver driver = GraphDatabase.driver(uri, AuthTokens.basic(user, password));
-        return new Neo4jDAO(driver);
+        Config config = Config.builder()
+                .withMaxConnectionPoolSize(Integer.parseInt(env.get("NEO4J_POOL_SIZE", "100")))
+                .build();
+        return GraphDatabase.driver(uri, AuthTokens.basic(user, password), config);
+    }
+
+    /**
+     * This method tells whether STORAGE=embedded, which runs without Neo4j and keeps everything in memory behind a
+     * write-ahead log
+     */
+    private static boolean embedded(Dotenv env) {
+        return "embedded".equalsIgnoreCase(env.get("STORAGE", "neo4j"));
+    }
+
+    /**
+     * This method creates the graph store used for Bacon queries. GRAPH_STORE=neo4j sends every path query to the
+     * database, anything else keeps the graph in memory. The in-memory store starts from the snapshot at SNAPSHOT_PATH
+     * when there is one, and loads everything from the database otherwise; if that load fails, path queries go to
+     * the database instead. In embedded storage it starts empty and the DAO fills it from the log.
+     * @param driver the driver for the database
+     * @param profiler the profiler the database's path queries are timed in
+     * @return the graph store
+     */
+    @Provides
+    @Singleton
+    public GraphStore provideGraphStore(Driver driver, QueryProfiler profiler) {
+        Dotenv env = Dotenv.load();
+        if(embedded(env)){
+            return new InMemoryGraphStore();
+        }
+        if("neo4j".equalsIgnoreCase(env.get("GRAPH_STORE", "memory"))){
+            return new Neo4jGraphStore(driver, profiler);
+        }
+
+        String snapshotPath = env.get("SNAPSHOT_PATH", "");
+        GraphStore graphStore = new InMemoryGraphStore(snapshotPath.isEmpty() ? null : Paths.get(snapshotPath));
+        try{
+            graphStore.load(driver);
+        }catch(Exception e){
+            // An empty graph would answer 404 to every path query, the database still has the right answers
+            System.err.println("Could not load the graph into memory, sending path queries to the database");
+            e.printStackTrace();
+            return new Neo4jGraphStore(driver, profiler);
+        }
+        return graphStore;
+    }
+
+    /**
+     * This method creates the profiler every statement sent to the database is timed in. Runs slower than
+     * SLOW_QUERY_MS are kept, the last SLOW_QUERY_KEEP of them for the admin endpoint, and appended to SLOW_QUERY_LOG
+     * when it is set. SLOW_QUERY_PROFILE_RATE of the slow reads (none by default) are run again with PROFILE.
+     * @param driver the driver for the database
+     * @return the profiler
+     */
+    @Provides
+    @Singleton
+    public QueryProfiler provideQueryProfiler(Driver driver) {
+        Dotenv env = Dotenv.load();
+        String logPath = env.get("SLOW_QUERY_LOG", "");
+        return new QueryProfiler(driver, Long.parseLong(env.get("SLOW_QUERY_MS", "100")),
+                Double.parseDouble(env.get("SLOW_QUERY_PROFILE_RATE", "0")),
+                Integer.parseInt(env.get("SLOW_QUERY_KEEP", "100")),
+                logPath.isEmpty() ? null : Paths.get(logPath));
+    }
+
+    /**
+     * This method creates the cache in front of the DAO's lookups. It holds up to CACHE_MAX_BYTES of entries (64 MB
+     * by default, 0 turns it off) and remembers misses for CACHE_NEGATIVE_TTL_MS.
+     * @return the cache
+     */
+    @Provides
+    @Singleton
+    public EntityCache provideEntityCache() {
+        Dotenv env = Dotenv.load();
+        return new EntityCache(Long.parseLong(env.get("CACHE_MAX_BYTES", String.valueOf(64L << 20))),
+                Long.parseLong(env.get("CACHE_NEGATIVE_TTL_MS", "5000")));
+    }
+
+    /**
+     * This method creates the DAO, makes sure the id constraints exist and warms the database's plan cache for every
+     * statement it sends. In embedded storage the DAO recovers from the log in WAL_DIR instead, closing segments at
+     * WAL_SEGMENT_BYTES (64 MB by default) and checkpointing once WAL_COMPACT_SEGMENTS of them have built up.
+     * @param driver the driver for the database
+     * @param graphStore the graph store for Bacon queries
+     * @param cache the cache for the DAO's lookups
+     * @param profiler the profiler the DAO's statements are timed in
+     * @return the DAO
+     */
+    @Provides
+    @Singleton
+    public Neo4jDAO provideNeo4jDAO(Driver driver, GraphStore graphStore, EntityCache cache,
+                                    QueryProfiler profiler) {
+        Dotenv env = Dotenv.load();
+        if(embedded(env)){
+            try{
+                return new EmbeddedDAO(graphStore, cache, Paths.get(env.get("WAL_DIR", "wal")),
+                        Long.parseLong(env.get("WAL_SEGMENT_BYTES", String.valueOf(64L << 20))),
+                        Integer.parseInt(env.get("WAL_COMPACT_SEGMENTS", "4")));
+            }catch(IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }
+        Neo4jDAO dao = new Neo4jDAO(driver, graphStore, cache, profiler);
+        try{
+            dao.createSchema();
+            dao.warmUp();
+        }catch(Exception e){
+            e.printStackTrace();
+        }
+        return dao;
+    }
+
+    /**
+     * This method creates the request handler. DAO_MODE=async serves the lookups and single writes from the async
+     * DAO, finishing each exchange from the driver's callback; anything else, and embedded storage, keeps every
+     * request on the blocking DAO.
+     * WRITE_MODE=group commits the single writes in groups of up to GROUP_COMMIT_SIZE, the first waiting at most
+     * GROUP_COMMIT_DELAY_MS for the others, with GROUP_COMMIT_QUEUE writes queued at most; anything else commits each
+     * write on its own.
+     * @param dao the blocking DAO
+     * @param driver the driver for the database
+     * @param graphStore the graph store for Bacon queries
+     * @param cache the cache for the DAO's lookups
+     * @param bulkLoader the loader behind the bulkLoad endpoint
+     * @param batchLookup the lookups behind the batch endpoint
+     * @param analytics the whole-graph statistics behind the admin analytics endpoint
+     * @param landmarks the distance oracle behind the estimateSeparation endpoint
+     * @param executor the server's executor, which the async DAO's callbacks run on
+     * @return the handler
+     */
+    @Provides
+    public ReqHandler provideReqHandler(Neo4jDAO dao, Driver driver, GraphStore graphStore, EntityCache cache,
+                                        BulkLoader bulkLoader, BatchLookup batchLookup, BaconAnalytics analytics,
+                                        LandmarkOracle landmarks, Executor executor) {
+        Dotenv env = Dotenv.load();
+        AsyncNeo4jDAO asyncDao = null;
+        if(!embedded(env) && "async".equalsIgnoreCase(env.get("DAO_MODE", "blocking"))){
+            asyncDao = new AsyncNeo4jDAO(driver, graphStore, cache, dao.getProfiler(), executor);
+        }
+        GroupCommitter groupCommitter = null;
+        if("group".equalsIgnoreCase(env.get("WRITE_MODE", "direct"))){
+            groupCommitter = new GroupCommitter(dao, Integer.parseInt(env.get("GROUP_COMMIT_SIZE", "500")),
+                    Long.parseLong(env.get("GROUP_COMMIT_DELAY_MS", "2")),
+                    Integer.parseInt(env.get("GROUP_COMMIT_QUEUE", "10000")));
+        }
+        return new ReqHandler(dao, asyncDao, groupCommitter, bulkLoader, batchLookup, analytics, landmarks,
+                executor);
+    }
+
+    /**
+     * This method creates the loader behind the bulkLoad endpoint, writing BULK_BATCH_SIZE records per transaction
+     * @param dao the DAO for the database
+     * @return the loader
+     */
+    @Provides
+    public BulkLoader provideBulkLoader(Neo4jDAO dao) {
+        Dotenv env = Dotenv.load();
+        return new BulkLoader(dao, Integer.parseInt(env.get("BULK_BATCH_SIZE", "5000")));
+    }
+
+    /**
+     * This method creates the lookups behind the batch endpoint, which takes up to BATCH_MAX_LOOKUPS per request
+     * @param dao the DAO for the database
+     * @return the batch lookups
+     */
+    @Provides
+    public BatchLookup provideBatchLookup(Neo4jDAO dao) {
+        Dotenv env = Dotenv.load();
+        return new BatchLookup(dao, Integer.parseInt(env.get("BATCH_MAX_LOOKUPS", "1000")));
+    }
+
+    /**
+     * This method creates the whole-graph analytics, one job at a time on ANALYTICS_THREADS cores (all of them by
+     * default) reporting the ANALYTICS_TOP most central actors
+     * @param graphStore the graph store for Bacon queries
+     * @return the analytics
+     */
+    @Provides
+    @Singleton
+    public BaconAnalytics provideBaconAnalytics(GraphStore graphStore) {
+        Dotenv env = Dotenv.load();
+        int threads = Integer.parseInt(env.get("ANALYTICS_THREADS",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        return new BaconAnalytics(graphStore, threads, Integer.parseInt(env.get("ANALYTICS_TOP", "20")));
+    }
+
+    /**
+     * This method creates the landmark distance oracle, with the LANDMARKS actors in the most movies as landmarks and
+     * its tables rebuilt at most every LANDMARK_REFRESH_MS once the graph changes
+     * @param graphStore the graph store for Bacon queries
+     * @return the oracle
+     */
+    @Provides
+    @Singleton
+    public LandmarkOracle provideLandmarkOracle(GraphStore graphStore) {
+        Dotenv env = Dotenv.load();
+        return new LandmarkOracle(graphStore, Integer.parseInt(env.get("LANDMARKS", "16")),
+                Long.parseLong(env.get("LANDMARK_REFRESH_MS", "5000")));
+    }
+
+    /**
+     * This method creates the IMDb importer, which parses IMPORT_THREADS chunks at once and writes IMPORT_BATCH_SIZE
+     * rows per transaction. It writes through a DAO of its own over the Neo4j graph store, so the import neither
+     * loads the existing graph into memory nor keeps an in-memory copy up to date for a process about to exit. In
+     * embedded storage the log is the database, so it writes through the embedded DAO.
+     * @param dao the DAO of the handler, only built in embedded storage
+     * @param driver the driver for the database
+     * @param profiler the profiler the import's statements are timed in
+     * @return the importer
+     */
+    @Provides
+    public ImdbImporter provideImdbImporter(Provider<Neo4jDAO> dao, Driver driver, QueryProfiler profiler) {
+        Dotenv env = Dotenv.load();
+        Neo4jDAO importDao;
+        if(embedded(env)){
+            importDao = dao.get();
+        }else{
+            importDao = new Neo4jDAO(driver, new Neo4jGraphStore(driver, profiler), new EntityCache(0, 0), profiler);
+            importDao.createSchema();
+        }
+        int threads = Integer.parseInt(env.get("IMPORT_THREADS",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        return new ImdbImporter(importDao, Integer.parseInt(env.get("IMPORT_BATCH_SIZE", "5000")), threads);
     }
 }
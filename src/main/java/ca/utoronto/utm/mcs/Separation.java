@@ -0,0 +1,66 @@
+package ca.utoronto.utm.mcs;
+
+import org.json.JSONException;
+
+import java.util.ArrayList;
+
+/**
+ * This class holds the result of a separation query between two actors
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+public class Separation {
+    // Number of movies between the two actors
+    private final int distance;
+
+    // The ids along the path, from the first actor to the second
+    private final ArrayList<String> path;
+
+    // Nodes expanded by the search, or -1 when the backend does not report it
+    private final long expanded;
+
+    /**
+     * Constructor, creates the result of a separation query
+     * @param path the ids along the path
+     * @param expanded the number of nodes the search expanded
+     */
+    public Separation(ArrayList<String> path, long expanded){
+        this.distance = path.size() / 2;
+        this.path = path;
+        this.expanded = expanded;
+    }
+
+    public int getDistance(){
+        return distance;
+    }
+
+    public ArrayList<String> getPath(){
+        return path;
+    }
+
+    public long getExpanded(){
+        return expanded;
+    }
+
+    /**
+     * This method writes the result as the JSON sent back to the client
+     * @param writer the writer for the response
+     * @return   the writer
+     */
+    JsonWriter write(JsonWriter writer){
+        return writer.beginObject()
+                .name("distance").value(distance)
+                .name("path").value(path)
+                .name("expanded").value(expanded)
+                .endObject();
+    }
+
+    /**
+     * This method turns the result into JSON text
+     * @return   the JSON text
+     * @throws JSONException
+     */
+    public String toJSON() throws JSONException{
+        return write(JsonWriter.get()).toString();
+    }
+}
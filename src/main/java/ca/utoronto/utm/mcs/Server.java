@@ -4,6 +4,7 @@ import com.sun.net.httpserver.HttpServer;
 
 import javax.inject.Inject;
 import java.net.InetSocketAddress;
+import java.util.concurrent.Executor;
 
 /**
  * This class creates the server for which information will be sent
@@ -18,12 +19,31 @@ public class Server {
     static int port = 8080;
 
     /**
-     * Constructor, this method creates the server
+     * Constructor, this method creates the server on the JDK transport
+     * @param executor the executor that requests are handled on, instead of the single dispatcher thread
      */
     @Inject
-    public Server(){
+    public Server(Executor executor){
+        this(executor, "jdk", 1, 0);
+    }
+
+    /**
+     * Constructor, this method creates the server on either transport. Both are HttpServers, so the handler and its
+     * filters run on either one unchanged.
+     * @param executor the executor that requests are handled on, instead of the single dispatcher thread
+     * @param transport "nio" for the selector-based server, anything else for the JDK's
+     * @param loops the number of event loops of the nio transport
+     * @param maxBody the largest request body the nio transport accepts, in bytes
+     */
+    public Server(Executor executor, String transport, int loops, int maxBody){
         try{
-            this.server = HttpServer.create(new InetSocketAddress("0.0.0.0", port), 0);
+            InetSocketAddress address = new InetSocketAddress("0.0.0.0", port);
+            if(transport.equalsIgnoreCase("nio")){
+                this.server = new NioHttpServer(address, loops, maxBody);
+            }else{
+                this.server = HttpServer.create(address, 0);
+            }
+            this.server.setExecutor(executor);
         }catch(Exception e){
             e.printStackTrace();
         }
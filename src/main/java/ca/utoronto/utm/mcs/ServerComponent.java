@@ -2,6 +2,7 @@ package ca.utoronto.utm.mcs;
 
 import dagger.Component;
 import javax.inject.Singleton;
+import java.util.concurrent.Executor;
 
 /**
  * This is the interface for the Server class
@@ -10,4 +11,6 @@ import javax.inject.Singleton;
 @Component(modules = ServerModule.class)
 public interface ServerComponent {
 	public Server buildServer();
+	public AdmissionFilter buildAdmissionFilter();
+	public Executor buildExecutor();
 }
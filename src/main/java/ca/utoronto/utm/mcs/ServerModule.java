@@ -2,6 +2,14 @@ package ca.utoronto.utm.mcs;
 
 import dagger.Module;
 import dagger.Provides;
+import io.github.cdimascio.dotenv.Dotenv;
+
+import javax.inject.Singleton;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class creates the module for the Server class
@@ -12,11 +20,68 @@ import dagger.Provides;
 public class ServerModule {
 
     /**
-     * This method creates a new Server object
+     * This method creates a new Server object. SERVER_TRANSPORT=nio serves requests from the selector-based server,
+     * with NIO_LOOPS event loops (one per core by default) and bodies of up to NIO_MAX_BODY bytes; anything else uses
+     * the JDK's HttpServer.
+     * @param executor the executor requests are handled on
      * @return the new Server object
      */
     @Provides
-    public Server provideServer(){
-        return new Server();
+    public Server provideServer(Executor executor){
+        Dotenv env = Dotenv.load();
+        return new Server(executor, env.get("SERVER_TRANSPORT", "jdk"),
+                Integer.parseInt(env.get("NIO_LOOPS", String.valueOf(Runtime.getRuntime().availableProcessors()))),
+                Integer.parseInt(env.get("NIO_MAX_BODY", String.valueOf(64 << 20))));
+    }
+
+    /**
+     * This method creates the executor that requests are handled on. SERVER_EXECUTOR=virtual uses one virtual thread
+     * per request when the JVM has them (Java 21+), otherwise a bounded pool of SERVER_THREADS platform threads with a
+     * queue of SERVER_QUEUE requests is used. When the queue is full the dispatcher thread runs the request itself,
+     * which slows down accepting new connections instead of dropping them.
+     * @return the executor
+     */
+    @Provides
+    @Singleton
+    public Executor provideExecutor(){
+        Dotenv env = Dotenv.load();
+        String mode = env.get("SERVER_EXECUTOR", "virtual");
+        int threads = Integer.parseInt(env.get("SERVER_THREADS",
+                String.valueOf(Runtime.getRuntime().availableProcessors() * 4)));
+        int queue = Integer.parseInt(env.get("SERVER_QUEUE", "1024"));
+
+        if(mode.equalsIgnoreCase("virtual") && Runtime.version().feature() >= 21){
+            try{
+                // Looked up reflectively since the project still compiles for an older release
+                return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            }catch(ReflectiveOperationException e){
+                e.printStackTrace();
+            }
+        }
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queue), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * This method creates the admission filter in front of the handler. Each endpoint starts at
+     * ADMISSION_INITIAL_LIMIT requests at once and adapts between ADMISSION_MIN_LIMIT and ADMISSION_MAX_LIMIT to keep
+     * latency under ADMISSION_TARGET_MS; up to ADMISSION_QUEUE more wait ADMISSION_QUEUE_TIMEOUT_MS for a slot, and
+     * the rest get a 503. Waiting requests are parked rather than holding one of the executor's threads, and run on
+     * it once admitted. ADMISSION=off lets every request through.
+     * @param executor the executor requests are handled on
+     * @return the filter
+     */
+    @Provides
+    @Singleton
+    public AdmissionFilter provideAdmissionFilter(Executor executor){
+        Dotenv env = Dotenv.load();
+        return new AdmissionFilter(!"off".equalsIgnoreCase(env.get("ADMISSION", "on")),
+                Integer.parseInt(env.get("ADMISSION_INITIAL_LIMIT", "16")),
+                Integer.parseInt(env.get("ADMISSION_MIN_LIMIT", "1")),
+                Integer.parseInt(env.get("ADMISSION_MAX_LIMIT", "256")),
+                Integer.parseInt(env.get("ADMISSION_QUEUE", "64")),
+                Long.parseLong(env.get("ADMISSION_QUEUE_TIMEOUT_MS", "250")),
+                Long.parseLong(env.get("ADMISSION_TARGET_MS", "500")),
+                executor);
     }
 }
@@ -1,10 +1,8 @@
 package ca.utoronto.utm.mcs;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.stream.Collectors;
+import java.nio.charset.StandardCharsets;
 
 /**
  * This class converts InputStreams to Strings
@@ -12,14 +10,14 @@ import java.util.stream.Collectors;
 public class Utils {
 
     /**
-     * This method converts InputStreams to Strings
+     * This method converts InputStreams to Strings, decoding the bytes as UTF-8 in one go
      * @param inputStream the Inputstream to be converted
      * @return the new converted String
      * @throws IOException
      */
     public static String convert(InputStream inputStream) throws IOException {
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(inputStream))) {
-            return br.lines().collect(Collectors.joining(System.lineSeparator()));
+        try (inputStream) {
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
         }
     }
 }
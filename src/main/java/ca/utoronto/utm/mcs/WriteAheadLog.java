@@ -0,0 +1,501 @@
+package ca.utoronto.utm.mcs;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * This class is the append-only log behind the embedded storage mode. Writes are appended as small binary records to
+ * the current segment file, and a new segment is started once it reaches segmentBytes. A writer only returns once its
+ * record is on disk, but it does not pay for its own fsync: whichever writer finds no sync running writes out
+ * everything appended so far and forces it, and every writer whose record that covered returns with it. Under load
+ * one fsync then covers many writes, and a lone write costs one sequential append and one fsync.
+ *
+ * A checkpoint is the whole state written as records into one file, after which the segments before it are deleted,
+ * so the log does not grow without bound. Recovery reads the latest checkpoint and then every segment after it. A
+ * record cut short by a crash can only be at the end of the last segment, and is cut off.
+ *
+ * Each record is its length and CRC32C (4 bytes each), a type byte, and then its fields as a varint length and UTF-8.
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+class WriteAheadLog implements Closeable {
+    // Record types
+    static final byte ACTOR = 1;
+    static final byte MOVIE = 2;
+    static final byte RELATIONSHIP = 3;
+    static final byte CLEAR = 4;
+
+    private static final int HEADER_BYTES = 8;
+
+    // Anything longer is not a record but garbage after a torn write
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+
+    // Appended bytes are written to the file once this many are waiting, even without a sync
+    private static final int WRITE_BEHIND_BYTES = 1 << 20;
+
+    private static final String SEGMENT = "segment-";
+    private static final String CHECKPOINT = "checkpoint-";
+    private static final String SUFFIX = ".wal";
+
+    /**
+     * This interface is given every record replayed from the log
+     */
+    interface Replay {
+        void apply(byte type, String first, String second);
+    }
+
+    /**
+     * This interface writes state into a checkpoint, one record at a time
+     */
+    interface Sink {
+        void write(byte type, String first, String second) throws IOException;
+    }
+
+    private final Path directory;
+    private final long segmentBytes;
+
+    // Guards everything below, the fsync itself runs without it
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition synced = lock.newCondition();
+
+    private FileChannel segment;
+    private long segmentNumber;
+    private long segmentSize = 0;
+    private ByteBuffer pending = ByteBuffer.allocate(64 << 10);
+
+    // Bytes appended and bytes known to be on disk, counted across segments. A writer's ticket is where its record
+    // ends in this count
+    private long appendedBytes = 0;
+    private long syncedBytes = 0;
+    private boolean syncing = false;
+
+    private long checkpointNumber = -1;
+    private final CRC32C crc = new CRC32C();
+
+    /**
+     * Constructor, replays the log in a directory and opens a new segment after it for appending
+     * @param directory the directory holding the segments and checkpoints, created if missing
+     * @param segmentBytes the size a segment is closed at
+     * @param replay given every record in the log, in order
+     * @throws IOException if the directory cannot be read, or the log is damaged anywhere but at its end
+     */
+    WriteAheadLog(Path directory, long segmentBytes, Replay replay) throws IOException{
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+
+        long[] checkpoints = list(CHECKPOINT);
+        long[] segments = list(SEGMENT);
+        if(checkpoints.length > 0){
+            checkpointNumber = checkpoints[checkpoints.length - 1];
+            read(file(CHECKPOINT, checkpointNumber), replay, false);
+        }
+        // Segments are numbered from 1, and a checkpoint takes the number of the first segment after it
+        long last = Math.max(checkpointNumber, 0);
+        for(int i = 0; i < segments.length; i++){
+            if(segments[i] >= last){
+                read(file(SEGMENT, segments[i]), replay, i == segments.length - 1);
+            }
+            last = Math.max(last, segments[i]);
+        }
+
+        // Appending to a new segment leaves the recovered ones as they are
+        openSegment(last + 1);
+    }
+
+    /**
+     * This method adds a record to the log. It is not on disk until a sync covering its ticket returns.
+     * @param type the record type
+     * @param first the first field, or null for a CLEAR
+     * @param second the second field, or null
+     * @return   the ticket to sync on
+     * @throws IOException if a full buffer or segment could not be written out
+     */
+    long append(byte type, String first, String second) throws IOException{
+        byte[] a = first == null ? new byte[0] : first.getBytes(StandardCharsets.UTF_8);
+        byte[] b = second == null ? new byte[0] : second.getBytes(StandardCharsets.UTF_8);
+        int body = 1 + varintSize(a.length) + a.length + varintSize(b.length) + b.length;
+        if(body > MAX_RECORD_BYTES){
+            throw new IllegalArgumentException("Record of " + body + " bytes is too large for the log");
+        }
+        lock.lock();
+        try{
+            if(segmentSize > 0 && segmentSize + HEADER_BYTES + body > segmentBytes){
+                roll();
+            }
+            ensure(HEADER_BYTES + body);
+            int start = pending.position();
+            pending.position(start + HEADER_BYTES);
+            pending.put(type);
+            putVarint(a.length);
+            pending.put(a);
+            putVarint(b.length);
+            pending.put(b);
+            crc.reset();
+            crc.update(pending.array(), start + HEADER_BYTES, body);
+            pending.putInt(start, body);
+            pending.putInt(start + 4, (int) crc.getValue());
+
+            segmentSize += HEADER_BYTES + body;
+            appendedBytes += HEADER_BYTES + body;
+            if(pending.position() >= WRITE_BEHIND_BYTES && !syncing){
+                writePending();
+            }
+            return appendedBytes;
+        }finally{
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method returns once everything up to a ticket is on disk, forcing the segment itself unless a sync
+     * already running covers it
+     * @param ticket the ticket returned by append
+     * @throws IOException if the fsync failed
+     */
+    void sync(long ticket) throws IOException{
+        lock.lock();
+        try{
+            while(syncedBytes < ticket){
+                if(syncing){
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+                syncing = true;
+                long target = appendedBytes;
+                FileChannel channel = segment;
+                try{
+                    writePending();
+                    lock.unlock();
+                    try{
+                        channel.force(false);
+                    }finally{
+                        lock.lock();
+                    }
+                    syncedBytes = Math.max(syncedBytes, target);
+                }finally{
+                    syncing = false;
+                    synced.signalAll();
+                }
+            }
+        }finally{
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method closes the current segment and starts the next, so everything before the new one can be replaced
+     * by a checkpoint
+     * @return   the number of the new segment, which the checkpoint should be written as
+     * @throws IOException
+     */
+    long startCheckpoint() throws IOException{
+        lock.lock();
+        try{
+            roll();
+            return segmentNumber;
+        }finally{
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method writes a checkpoint holding the state as of the start of a segment, then deletes the segments and
+     * checkpoints it replaces. The file is written under a temporary name and renamed once forced, so a crash leaves
+     * either the old files or the new checkpoint, never a partial one.
+     * @param number the segment number returned by startCheckpoint
+     * @param state writes every record of the state into the sink
+     * @return   the size of the checkpoint in bytes
+     * @throws IOException
+     */
+    long writeCheckpoint(long number, IOConsumer<Sink> state) throws IOException{
+        Path target = file(CHECKPOINT, number);
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        long size;
+        try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+            ByteBuffer buffer = ByteBuffer.allocate(2 * MAX_RECORD_BYTES);
+            CRC32C checksum = new CRC32C();
+            state.accept((type, first, second) -> {
+                byte[] a = first == null ? new byte[0] : first.getBytes(StandardCharsets.UTF_8);
+                byte[] b = second == null ? new byte[0] : second.getBytes(StandardCharsets.UTF_8);
+                int body = 1 + varintSize(a.length) + a.length + varintSize(b.length) + b.length;
+                if(buffer.remaining() < HEADER_BYTES + body){
+                    buffer.flip();
+                    while(buffer.hasRemaining()){
+                        channel.write(buffer);
+                    }
+                    buffer.clear();
+                }
+                int start = buffer.position();
+                buffer.position(start + HEADER_BYTES);
+                buffer.put(type);
+                putVarint(buffer, a.length);
+                buffer.put(a);
+                putVarint(buffer, b.length);
+                buffer.put(b);
+                checksum.reset();
+                checksum.update(buffer.array(), start + HEADER_BYTES, body);
+                buffer.putInt(start, body);
+                buffer.putInt(start + 4, (int) checksum.getValue());
+            });
+            buffer.flip();
+            while(buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+            channel.force(false);
+            size = channel.size();
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+
+        for(long old : list(SEGMENT)){
+            if(old < number){
+                Files.deleteIfExists(file(SEGMENT, old));
+            }
+        }
+        for(long old : list(CHECKPOINT)){
+            if(old < number){
+                Files.deleteIfExists(file(CHECKPOINT, old));
+            }
+        }
+        lock.lock();
+        try{
+            checkpointNumber = number;
+        }finally{
+            lock.unlock();
+        }
+        return size;
+    }
+
+    /**
+     * This method counts the segments written since the last checkpoint, not counting the one being appended to
+     */
+    int segmentsSinceCheckpoint(){
+        lock.lock();
+        try{
+            return (int) (segmentNumber - Math.max(checkpointNumber, 1));
+        }finally{
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method writes out and forces whatever is left, and closes the segment
+     */
+    @Override
+    public void close() throws IOException{
+        lock.lock();
+        try{
+            while(syncing){
+                synced.awaitUninterruptibly();
+            }
+            writePending();
+            segment.force(false);
+            segment.close();
+        }finally{
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This interface is a Consumer that may throw an IOException
+     */
+    interface IOConsumer<T> {
+        void accept(T value) throws IOException;
+    }
+
+    /**
+     * This method forces the current segment and moves on to the next. Called with the lock held; it waits for a
+     * running sync, which is still using the current segment.
+     */
+    private void roll() throws IOException{
+        while(syncing){
+            synced.awaitUninterruptibly();
+        }
+        writePending();
+        segment.force(false);
+        segment.close();
+        syncedBytes = appendedBytes;
+        synced.signalAll();
+        openSegment(segmentNumber + 1);
+    }
+
+    private void openSegment(long number) throws IOException{
+        segment = FileChannel.open(file(SEGMENT, number), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segmentNumber = number;
+        segmentSize = 0;
+        forceDirectory();
+    }
+
+    /**
+     * This method hands the appended bytes to the file, called with the lock held
+     */
+    private void writePending() throws IOException{
+        pending.flip();
+        while(pending.hasRemaining()){
+            segment.write(pending);
+        }
+        pending.clear();
+    }
+
+    private void ensure(int bytes){
+        if(pending.remaining() < bytes){
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + bytes));
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+    }
+
+    /**
+     * This method makes a file creation or rename durable, which on Linux takes a force of the directory itself
+     */
+    private void forceDirectory(){
+        try(FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)){
+            channel.force(true);
+        }catch(IOException e){
+            // Not every platform can open a directory, there the rename is as durable as it gets
+        }
+    }
+
+    /**
+     * This method replays one file. In the last segment a damaged record is where a crash cut the log short, so the
+     * file is truncated there; anywhere else it is real damage.
+     */
+    private void read(Path path, Replay replay, boolean last) throws IOException{
+        long good = 0;
+        CRC32C checksum = new CRC32C();
+        try(InputStream file = Files.newInputStream(path);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(file, 1 << 16))){
+            byte[] body = new byte[256];
+            while(true){
+                int length;
+                try{
+                    length = in.readInt();
+                }catch(EOFException e){
+                    break;
+                }
+                String problem = null;
+                int expected = 0;
+                if(length < 1 || length > MAX_RECORD_BYTES){
+                    problem = "a bad length";
+                }else{
+                    try{
+                        expected = in.readInt();
+                        if(body.length < length){
+                            body = new byte[Math.max(length, body.length * 2)];
+                        }
+                        in.readFully(body, 0, length);
+                        checksum.reset();
+                        checksum.update(body, 0, length);
+                        if((int) checksum.getValue() != expected){
+                            problem = "a bad checksum";
+                        }
+                    }catch(EOFException e){
+                        problem = "a truncated record";
+                    }
+                }
+                if(problem != null){
+                    if(!last){
+                        throw new IOException(path + " has " + problem + " at byte " + good);
+                    }
+                    System.out.printf("Cutting %s off at byte %d, after %s\n", path.getFileName(), good, problem);
+                    break;
+                }
+                apply(body, length, replay);
+                good += HEADER_BYTES + length;
+            }
+        }
+        if(last && good < Files.size(path)){
+            try(FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)){
+                channel.truncate(good);
+                channel.force(true);
+            }
+        }
+    }
+
+    private static void apply(byte[] body, int length, Replay replay) throws IOException{
+        ByteBuffer in = ByteBuffer.wrap(body, 0, length);
+        byte type = in.get();
+        String first = readString(in);
+        String second = readString(in);
+        if(in.hasRemaining()){
+            throw new IOException("Record of type " + type + " has " + in.remaining() + " bytes left over");
+        }
+        replay.apply(type, first, second);
+    }
+
+    private static String readString(ByteBuffer in){
+        int length = 0;
+        for(int shift = 0; ; shift += 7){
+            byte b = in.get();
+            length |= (b & 0x7f) << shift;
+            if(b >= 0){
+                break;
+            }
+        }
+        String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private void putVarint(int value){
+        putVarint(pending, value);
+    }
+
+    private static void putVarint(ByteBuffer buffer, int value){
+        while((value & ~0x7f) != 0){
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int varintSize(int value){
+        int size = 1;
+        while((value & ~0x7f) != 0){
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private Path file(String prefix, long number){
+        return directory.resolve(String.format("%s%016d%s", prefix, number, SUFFIX));
+    }
+
+    /**
+     * This method finds the numbers of every file with a prefix, in order
+     */
+    private long[] list(String prefix) throws IOException{
+        List<Long> numbers = new ArrayList<>();
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + SUFFIX)){
+            for(Path path : files){
+                String name = path.getFileName().toString();
+                numbers.add(Long.parseLong(name.substring(prefix.length(), name.length() - SUFFIX.length())));
+            }
+        }
+        long[] sorted = numbers.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+}
@@ -0,0 +1,83 @@
+package ca.utoronto.utm.mcs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is for testing that an endpoint's limit parks requests past its slots and hands them slots in order
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+public class AdaptiveLimitTest {
+
+    /**
+     * This method creates a waiter that records what happened to it in a shared list
+     */
+    static AdaptiveLimit.Waiter waiter(String name, long deadline, List<String> events){
+        return new AdaptiveLimit.Waiter(deadline){
+            @Override
+            void admit(){
+                events.add(name + " admitted");
+            }
+
+            @Override
+            void shed(){
+                events.add(name + " shed");
+            }
+        };
+    }
+
+    /**
+     * This method tests that requests past the limit are queued without blocking and admitted oldest first as slots
+     * are given back
+     */
+    @Test
+    public void queuedPass(){
+        AdaptiveLimit limit = new AdaptiveLimit(2, 1, 2, 2, 1000);
+        List<String> events = new ArrayList<>();
+        long later = System.nanoTime() + 60_000_000_000L;
+        assertEquals(AdaptiveLimit.Admission.ADMITTED, limit.acquire(waiter("a", later, events)));
+        assertEquals(AdaptiveLimit.Admission.ADMITTED, limit.acquire(waiter("b", later, events)));
+        assertEquals(AdaptiveLimit.Admission.QUEUED, limit.acquire(waiter("c", later, events)));
+        assertEquals(AdaptiveLimit.Admission.QUEUED, limit.acquire(waiter("d", later, events)));
+        assertEquals(AdaptiveLimit.Admission.SHED, limit.acquire(waiter("e", later, events)));
+        assertEquals(2, limit.waiting());
+        assertEquals(0, events.size());
+
+        limit.release(1_000_000, false);
+        assertEquals(List.of("c admitted"), events);
+        limit.release(1_000_000, false);
+        assertEquals(List.of("c admitted", "d admitted"), events);
+        assertEquals(2, limit.inFlight());
+        assertEquals(0, limit.waiting());
+        assertEquals(4, limit.admitted());
+        assertEquals(1, limit.rejected());
+    }
+
+    /**
+     * This method tests that a request that waited past its deadline is shed instead of admitted, and that a new
+     * request does not jump ahead of one already waiting
+     */
+    @Test
+    public void expiredFail(){
+        AdaptiveLimit limit = new AdaptiveLimit(1, 1, 1, 4, 1000);
+        List<String> events = new ArrayList<>();
+        long now = System.nanoTime();
+        assertEquals(AdaptiveLimit.Admission.ADMITTED, limit.acquire(waiter("a", now, events)));
+        assertEquals(AdaptiveLimit.Admission.QUEUED, limit.acquire(waiter("b", now + 10, events)));
+        assertEquals(AdaptiveLimit.Admission.QUEUED, limit.acquire(waiter("c", now + 20, events)));
+
+        limit.expire(now + 10);
+        assertEquals(List.of("b shed"), events);
+        assertEquals(1, limit.waiting());
+
+        limit.release(1_000_000, false);
+        assertEquals(List.of("b shed", "c admitted"), events);
+        assertEquals(AdaptiveLimit.Admission.QUEUED, limit.acquire(waiter("d", now + 30, events)));
+        assertEquals(1, limit.rejected());
+    }
+}
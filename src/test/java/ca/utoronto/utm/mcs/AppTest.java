@@ -2,6 +2,7 @@ package ca.utoronto.utm.mcs;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.jupiter.api.AfterEach;
@@ -49,7 +50,8 @@ public class AppTest {
     public static void setup(){
         try{
             ServerComponent serverComponent = DaggerServerComponent.create();
-            ReqHandlerComponent reqHandlerComponent = DaggerReqHandlerComponent.create();
+            ReqHandlerComponent reqHandlerComponent = DaggerReqHandlerComponent.factory()
+                    .create(serverComponent.buildExecutor());
 
             //Building the handler and server
             ReqHandler reqHandler = reqHandlerComponent.buildHandler();
@@ -373,4 +375,289 @@ public class AppTest {
         assertEquals(404, confirmRes.statusCode());
     }
 
+    /**
+     * This method tests computeSeparation in a passing environment
+     * @throws JSONException
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    public void computeSeparationPass() throws JSONException, IOException, InterruptedException{
+        // Adding actor, movie, and relationship to the database
+        neo4j.addActor("Denzel Washington", "nm1001213");
+        neo4j.addActor("Kevin Bacon", "nm0000102");
+        neo4j.addActor("Chris Evans", "nm1873921");
+        neo4j.addMovie("Parasite", "nm7001453");
+        neo4j.addMovie("Captain America", "nm7001454");
+        neo4j.addRelationship("nm0000102", "nm7001453");
+        neo4j.addRelationship("nm1001213", "nm7001453");
+        neo4j.addRelationship("nm1001213", "nm7001454");
+        neo4j.addRelationship("nm1873921", "nm7001454");
+
+        JSONObject confirmReq = new JSONObject()
+                .put("fromActorId", "nm1873921")
+                .put("toActorId", "nm1001213");
+        HttpResponse<String> confirmRes = sendRequest("/computeSeparation",
+                "GET", confirmReq.toString());
+        assertEquals(200, confirmRes.statusCode());
+        assertEquals(1, new JSONObject(confirmRes.body()).getInt("distance"));
+    }
+
+    /**
+     * This method tests computeSeparation in a failing environment
+     * @throws JSONException
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    public void computeSeparationFail() throws JSONException, IOException, InterruptedException{
+        // Adding actor, movie, and relationship to the database
+        neo4j.addActor("Denzel Washington", "nm1001213");
+        neo4j.addActor("Chris Evans", "nm1873921");
+        neo4j.addMovie("Parasite", "nm7001453");
+        neo4j.addRelationship("nm1001213", "nm7001453");
+
+        // No relationship between Chris Evans and any movie
+
+        JSONObject confirmReq = new JSONObject()
+                .put("fromActorId", "nm1873921")
+                .put("toActorId", "nm1001213");
+        HttpResponse<String> confirmRes = sendRequest("/computeSeparation",
+                "GET", confirmReq.toString());
+        assertEquals(404, confirmRes.statusCode());
+    }
+
+    /**
+     * This method tests bulkLoad in a passing environment
+     * @throws JSONException
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    public void bulkLoadPass() throws JSONException, IOException, InterruptedException{
+        String body = new JSONObject().put("type", "actor").put("actorId", "nm1001213")
+                        .put("name", "Denzel Washington") + "\n" +
+                new JSONObject().put("type", "movie").put("movieId", "nm7001453").put("name", "Parasite") + "\n" +
+                new JSONObject().put("type", "relationship").put("actorId", "nm1001213")
+                        .put("movieId", "nm7001453") + "\n" +
+                "not json\n";
+        HttpResponse<String> confirmRes = sendRequest("/bulkLoad", "PUT", body);
+        assertEquals(200, confirmRes.statusCode());
+
+        JSONObject report = new JSONObject(confirmRes.body());
+        assertEquals(3, report.getInt("created"));
+        assertEquals(1, report.getInt("rejected"));
+        assertEquals("TRUE", neo4j.hasRelationship("nm1001213", "nm7001453"));
+    }
+
+    /**
+     * This method tests that a repeated getActor is served from the cache, and that adding the actor replaces a cached
+     * miss
+     * @throws JSONException
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    public void entityCachePass() throws JSONException, IOException, InterruptedException{
+        JSONObject confirmReq = new JSONObject().put("actorId", "nm1001213");
+        assertEquals(404, sendRequest("/getActor", "GET", confirmReq.toString()).statusCode());
+
+        neo4j.addActor("Denzel Washington", "nm1001213");
+        assertEquals(200, sendRequest("/getActor", "GET", confirmReq.toString()).statusCode());
+
+        long hits = new JSONObject(sendRequest("/admin/cache", "GET", "").body()).getLong("hits");
+        assertEquals(200, sendRequest("/getActor", "GET", confirmReq.toString()).statusCode());
+        HttpResponse<String> confirmRes = sendRequest("/admin/cache", "GET", "");
+        assertEquals(200, confirmRes.statusCode());
+        assertEquals(hits + 1, new JSONObject(confirmRes.body()).getLong("hits"));
+    }
+
+    /**
+     * This method tests batch in a passing environment, with a found, a missing and a malformed lookup
+     * @throws JSONException
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    public void batchPass() throws JSONException, IOException, InterruptedException{
+        neo4j.addActor("Kevin Bacon", "nm0000102");
+        neo4j.addActor("Denzel Washington", "nm1001213");
+        neo4j.addMovie("Parasite", "nm7001453");
+        neo4j.addRelationship("nm0000102", "nm7001453");
+        neo4j.addRelationship("nm1001213", "nm7001453");
+
+        JSONArray confirmReq = new JSONArray()
+                .put(new JSONObject().put("type", "getActor").put("actorId", "nm1001213"))
+                .put(new JSONObject().put("type", "getActor").put("actorId", "nm0000000"))
+                .put(new JSONObject().put("type", "hasRelationship").put("actorId", "nm1001213")
+                        .put("movieId", "nm7001453"))
+                .put(new JSONObject().put("type", "computeBaconNumber").put("actorId", "nm1001213"))
+                .put(new JSONObject().put("type", "getMovie"));
+        HttpResponse<String> confirmRes = sendRequest("/batch", "GET", confirmReq.toString());
+        assertEquals(200, confirmRes.statusCode());
+
+        JSONArray results = new JSONArray(confirmRes.body());
+        assertEquals(5, results.length());
+        assertEquals("Denzel Washington", results.getJSONObject(0).getJSONObject("result").getString("name"));
+        assertEquals(404, results.getJSONObject(1).getInt("status"));
+        assertEquals(200, results.getJSONObject(2).getInt("status"));
+        assertEquals(1, results.getJSONObject(3).getInt("result"));
+        assertEquals(400, results.getJSONObject(4).getInt("status"));
+    }
+
+    /**
+     * This method tests the admin analytics job in a passing environment, polling until it is done
+     * @throws JSONException
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    public void analyticsPass() throws JSONException, IOException, InterruptedException{
+        neo4j.addActor("Kevin Bacon", "nm0000102");
+        neo4j.addActor("Denzel Washington", "nm1001213");
+        neo4j.addMovie("Parasite", "nm7001453");
+        neo4j.addRelationship("nm0000102", "nm7001453");
+        neo4j.addRelationship("nm1001213", "nm7001453");
+
+        assertEquals(202, sendRequest("/admin/analytics", "PUT", "").statusCode());
+        JSONObject confirmRes = new JSONObject(sendRequest("/admin/analytics", "GET", "").body());
+        for(int i = 0; i < 100 && confirmRes.getString("state").equals("running"); i++){
+            Thread.sleep(100);
+            confirmRes = new JSONObject(sendRequest("/admin/analytics", "GET", "").body());
+        }
+        assertEquals("done", confirmRes.getString("state"));
+        assertEquals(1, confirmRes.getJSONArray("actorsAtBaconNumber").getLong(1));
+        assertEquals(1, confirmRes.getJSONObject("kevinBacon").getInt("rank"));
+    }
+
+    /**
+     * This method tests getFilmography in a passing environment, following the cursor to the second page
+     * @throws JSONException
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    public void getFilmographyPass() throws JSONException, IOException, InterruptedException{
+        neo4j.addActor("Kevin Bacon", "nm0000102");
+        neo4j.addMovie("Parasite", "nm7001453");
+        neo4j.addMovie("Footloose", "nm7001454");
+        neo4j.addMovie("Apollo 13", "nm7001455");
+        neo4j.addRelationship("nm0000102", "nm7001453");
+        neo4j.addRelationship("nm0000102", "nm7001454");
+        neo4j.addRelationship("nm0000102", "nm7001455");
+
+        JSONObject confirmReq = new JSONObject().put("actorId", "nm0000102").put("limit", 2);
+        HttpResponse<String> confirmRes = sendRequest("/getFilmography", "GET", confirmReq.toString());
+        assertEquals(200, confirmRes.statusCode());
+        JSONObject page = new JSONObject(confirmRes.body());
+        assertEquals(2, page.getJSONArray("movies").length());
+        assertEquals("nm7001453", page.getJSONArray("movies").getJSONObject(0).getString("movieId"));
+        assertEquals("nm7001454", page.getString("next"));
+
+        confirmReq.put("after", page.getString("next"));
+        page = new JSONObject(sendRequest("/getFilmography", "GET", confirmReq.toString()).body());
+        assertEquals(1, page.getJSONArray("movies").length());
+        assertEquals("Apollo 13", page.getJSONArray("movies").getJSONObject(0).getString("name"));
+        assertEquals(true, page.isNull("next"));
+    }
+
+    /**
+     * This method tests getCast in a failing environment
+     * @throws JSONException
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    public void getCastFail() throws JSONException, IOException, InterruptedException{
+        JSONObject confirmReq = new JSONObject().put("movieId", "nm0000000");
+        assertEquals(404, sendRequest("/getCast", "GET", confirmReq.toString()).statusCode());
+
+        confirmReq.put("limit", 0);
+        assertEquals(400, sendRequest("/getCast", "GET", confirmReq.toString()).statusCode());
+    }
+
+    /**
+     * This method tests estimateSeparation in a passing environment
+     * @throws JSONException
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    public void estimateSeparationPass() throws JSONException, IOException, InterruptedException{
+        neo4j.addActor("Kevin Bacon", "nm0000102");
+        neo4j.addActor("Denzel Washington", "nm1001213");
+        neo4j.addMovie("Parasite", "nm7001453");
+        neo4j.addRelationship("nm0000102", "nm7001453");
+        neo4j.addRelationship("nm1001213", "nm7001453");
+
+        // The landmark tables are rebuilt in the background, so the estimate is only current once they catch up
+        JSONObject confirmReq = new JSONObject().put("fromActorId", "nm1001213").put("toActorId", "nm0000102");
+        HttpResponse<String> confirmRes = sendRequest("/estimateSeparation", "GET", confirmReq.toString());
+        for(int i = 0; i < 100 && (confirmRes.statusCode() != 200
+                || new JSONObject(confirmRes.body()).getBoolean("stale")); i++){
+            Thread.sleep(100);
+            confirmRes = sendRequest("/estimateSeparation", "GET", confirmReq.toString());
+        }
+        assertEquals(200, confirmRes.statusCode());
+        JSONObject estimate = new JSONObject(confirmRes.body());
+        assertEquals(1, estimate.getInt("lowerBound"));
+        assertEquals(1, estimate.getInt("upperBound"));
+    }
+
+    /**
+     * This method tests countBaconPaths in a passing environment
+     * @throws JSONException
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    public void countBaconPathsPass() throws JSONException, IOException, InterruptedException{
+        neo4j.addActor("Kevin Bacon", "nm0000102");
+        neo4j.addActor("Denzel Washington", "nm1001213");
+        neo4j.addMovie("Parasite", "nm7001453");
+        neo4j.addMovie("Footloose", "nm7001454");
+        neo4j.addRelationship("nm0000102", "nm7001453");
+        neo4j.addRelationship("nm1001213", "nm7001453");
+        neo4j.addRelationship("nm0000102", "nm7001454");
+        neo4j.addRelationship("nm1001213", "nm7001454");
+
+        JSONObject confirmReq = new JSONObject().put("actorId", "nm1001213").put("sample", true);
+        HttpResponse<String> confirmRes = sendRequest("/countBaconPaths", "GET", confirmReq.toString());
+        assertEquals(200, confirmRes.statusCode());
+        JSONObject count = new JSONObject(confirmRes.body());
+        assertEquals(1, count.getInt("baconNumber"));
+        assertEquals(2, count.getLong("paths"));
+        assertEquals(3, count.getJSONArray("path").length());
+        assertEquals("nm0000102", count.getJSONArray("path").getString(0));
+    }
+
+    /**
+     * This method tests the query statistics in a passing environment
+     * @throws JSONException
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    public void queryStatsPass() throws JSONException, IOException, InterruptedException{
+        JSONObject confirmReq = new JSONObject().put("movieId", "tt1001213").put("name", "Training Day");
+        assertEquals(200, sendRequest("/addMovie", "PUT", confirmReq.toString()).statusCode());
+
+        HttpResponse<String> confirmRes = sendRequest("/admin/queries", "GET", "");
+        assertEquals(200, confirmRes.statusCode());
+        JSONObject stats = new JSONObject(confirmRes.body());
+        assertEquals(true, stats.getJSONArray("queries").length() > 0);
+        assertEquals(true, stats.getJSONArray("queries").getJSONObject(0).getLong("count") > 0);
+    }
+
+    /**
+     * This method tests countBaconPaths in a failing environment
+     * @throws JSONException
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    public void countBaconPathsFail() throws JSONException, IOException, InterruptedException{
+        JSONObject confirmReq = new JSONObject().put("actorId", "nm0000000");
+        assertEquals(404, sendRequest("/countBaconPaths", "GET", confirmReq.toString()).statusCode());
+    }
 }
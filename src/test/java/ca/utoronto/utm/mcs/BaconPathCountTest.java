@@ -0,0 +1,88 @@
+package ca.utoronto.utm.mcs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class is for testing path counts too large for a long, and the stores that cannot count paths at all
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+public class BaconPathCountTest {
+
+    /**
+     * This method tests a count of 2^62 shortest paths, the most a long holds, in a passing environment
+     */
+    @Test
+    public void exactCountPass(){
+        BaconPathCount count = TestGraphs.ladder(63).countBaconPaths("nm1000063", false);
+        assertEquals(63, count.getBaconNumber());
+        assertEquals(1L << 62, count.getPaths());
+        assertEquals(false, count.isSaturated());
+    }
+
+    /**
+     * This method tests a count of 2^69 shortest paths in a passing environment, where the long saturates and the
+     * approximate count carries on
+     * @throws JSONException
+     */
+    @Test
+    public void saturatedCountPass() throws JSONException{
+        BaconPathCount count = TestGraphs.ladder(70).countBaconPaths("nm2000070", true);
+        assertEquals(70, count.getBaconNumber());
+        assertEquals(Long.MAX_VALUE, count.getPaths());
+        assertEquals(true, count.isSaturated());
+        assertEquals(141, count.getPath().size());
+
+        // The double keeps counting where the long stopped
+        JSONObject json = new JSONObject(count.write(JsonWriter.get()).toString());
+        assertEquals(true, json.getBoolean("saturated"));
+        assertEquals(Math.pow(2, 69), json.getDouble("approximatePaths"), Math.pow(2, 69) * 1e-9);
+    }
+
+    /**
+     * This method tests which stores count paths in a passing environment, and that the Neo4j store answers null
+     * instead of counting
+     */
+    @Test
+    public void neo4jStorePass(){
+        // Only the in-memory store can count without listing every path
+        assertEquals(true, new InMemoryGraphStore().supportsPathCounting());
+        assertEquals(false, new Neo4jGraphStore(null, null).supportsPathCounting());
+        assertEquals(null, new Neo4jGraphStore(null, null).countBaconPaths("nm0000102", true));
+    }
+
+    /**
+     * This method tests counts running on many threads at once, which share the store's pooled buffers
+     * @throws Exception
+     */
+    @Test
+    public void concurrentCountsPass() throws Exception{
+        InMemoryGraphStore store = TestGraphs.ladder(40);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try{
+            List<Future<BaconPathCount>> counts = new ArrayList<>();
+            for(int i = 0; i < 200; i++){
+                String actorId = String.format("nm%d%06d", 1 + i % 2, 1 + i % 40);
+                counts.add(executor.submit(() -> store.countBaconPaths(actorId, true)));
+            }
+            for(int i = 0; i < counts.size(); i++){
+                BaconPathCount count = counts.get(i).get();
+                assertEquals(1 + i % 40, count.getBaconNumber());
+                assertEquals(1L << (i % 40), count.getPaths());
+                assertEquals(3 + 2 * (i % 40), count.getPath().size());
+            }
+        }finally{
+            executor.shutdownNow();
+        }
+    }
+}
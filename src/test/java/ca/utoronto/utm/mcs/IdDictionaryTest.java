@@ -0,0 +1,97 @@
+package ca.utoronto.utm.mcs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * This class is for testing that ids survive being packed into the id dictionary's codes
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+public class IdDictionaryTest {
+
+    /**
+     * This method puts an id at a node and checks it is found and turned back into the same string
+     */
+    static void assertRoundTrip(IdDictionary ids, int namespace, String id, int node){
+        ids.put(namespace, id, node);
+        assertEquals(node, ids.get(namespace, id));
+        assertEquals(id, ids.id(node));
+        assertEquals(namespace, ids.namespace(node));
+    }
+
+    /**
+     * This method tests IMDb style ids in a passing environment, which are packed keeping their leading zeros
+     */
+    @Test
+    public void imdbIdsPass(){
+        IdDictionary ids = new IdDictionary();
+        // Leading zeros are kept by the digit count
+        assertRoundTrip(ids, IdDictionary.ACTOR, "nm0000102", 0);
+        assertRoundTrip(ids, IdDictionary.MOVIE, "tt0000001", 1);
+        assertEquals(-1, ids.get(IdDictionary.MOVIE, "tt1"));
+        assertEquals(-1, ids.get(IdDictionary.MOVIE, "tt00000001"));
+    }
+
+    /**
+     * This method tests ids with the most digits that pack and one digit more in a passing environment
+     */
+    @Test
+    public void longIdsPass(){
+        IdDictionary ids = new IdDictionary();
+        // 15 digits is the most that packs, 16 falls back to the map
+        assertRoundTrip(ids, IdDictionary.ACTOR, "nm999999999999999", 0);
+        assertRoundTrip(ids, IdDictionary.ACTOR, "nm0000000000000001", 1);
+        assertRoundTrip(ids, IdDictionary.MOVIE, "tt9999999999999999", 2);
+        assertEquals(-1, ids.get(IdDictionary.ACTOR, "nm000000000000001"));
+    }
+
+    /**
+     * This method tests ids that are not a prefix and digits in a passing environment, which are kept as strings
+     */
+    @Test
+    public void otherIdsPass(){
+        IdDictionary ids = new IdDictionary();
+        assertRoundTrip(ids, IdDictionary.ACTOR, "kevin-bacon", 0);
+        assertRoundTrip(ids, IdDictionary.MOVIE, "nm", 1);
+        assertRoundTrip(ids, IdDictionary.MOVIE, "tt12a4", 2);
+        assertRoundTrip(ids, IdDictionary.ACTOR, "", 3);
+        assertEquals(-1, ids.get(IdDictionary.MOVIE, "kevin-bacon"));
+    }
+
+    /**
+     * This method tests an actor and a movie sharing an id in a passing environment, which are kept apart
+     */
+    @Test
+    public void namespacesPass(){
+        IdDictionary ids = new IdDictionary();
+        // An actor and a movie may share an id, packed or not
+        assertRoundTrip(ids, IdDictionary.ACTOR, "nm7001453", 0);
+        assertRoundTrip(ids, IdDictionary.MOVIE, "nm7001453", 1);
+        assertRoundTrip(ids, IdDictionary.ACTOR, "footloose", 2);
+        assertRoundTrip(ids, IdDictionary.MOVIE, "footloose", 3);
+        assertEquals(0, ids.get(IdDictionary.ACTOR, "nm7001453"));
+        assertEquals(2, ids.get(IdDictionary.ACTOR, "footloose"));
+    }
+
+    /**
+     * This method tests a dictionary grown well past its first size in a passing environment, and that a copy keeps
+     * every id after the original is cleared
+     */
+    @Test
+    public void growAndCopyPass(){
+        IdDictionary ids = new IdDictionary();
+        for(int node = 0; node < 10000; node++){
+            ids.put(node % 2, (node % 3 == 0 ? "nm" : "tt") + String.format("%07d", node), node);
+        }
+        IdDictionary copy = ids.copy();
+        ids.clear();
+        assertEquals(-1, ids.get(IdDictionary.ACTOR, "nm0000000"));
+        for(int node = 0; node < 10000; node++){
+            String id = (node % 3 == 0 ? "nm" : "tt") + String.format("%07d", node);
+            assertEquals(node, copy.get(node % 2, id));
+            assertEquals(id, copy.id(node));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package ca.utoronto.utm.mcs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+/**
+ * This class is for testing what the landmark oracle claims about actors in different components
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+public class LandmarkOracleTest {
+
+    /**
+     * This method builds the oracle over TestGraphs' two components. With one landmark it is Kevin Bacon, the actor
+     * in the most movies, so the second component has no landmark.
+     */
+    static LandmarkOracle oracle(){
+        LandmarkOracle oracle = new LandmarkOracle(TestGraphs.components(), 1, 0);
+        oracle.refresh();
+        return oracle;
+    }
+
+    /**
+     * This method tests estimates between actors in the landmark's component in a passing environment, exact when
+     * one of them is the landmark and bounded otherwise
+     * @throws JSONException
+     */
+    @Test
+    public void sameComponentPass() throws JSONException{
+        LandmarkOracle oracle = oracle();
+        JSONObject estimate = new JSONObject(oracle.estimate("nm0000102", "nm0000001").toString());
+        assertEquals(true, estimate.getBoolean("connected"));
+        assertEquals(1, estimate.getInt("lowerBound"));
+        assertEquals(1, estimate.getInt("upperBound"));
+        assertEquals(true, estimate.getBoolean("exact"));
+
+        // Two co-stars of the landmark are at the same distance from it, so the bounds only bracket their 2
+        estimate = new JSONObject(oracle.estimate("nm0000001", "nm0000002").toString());
+        assertEquals(true, estimate.getBoolean("connected"));
+        assertEquals(1, estimate.getInt("lowerBound"));
+        assertEquals(2, estimate.getInt("upperBound"));
+        assertEquals(false, estimate.getBoolean("exact"));
+    }
+
+    /**
+     * This method tests an estimate between an actor the landmark reaches and one it does not in a passing
+     * environment, which are known to be unconnected
+     * @throws JSONException
+     */
+    @Test
+    public void separatedPass() throws JSONException{
+        JSONObject estimate = new JSONObject(oracle().estimate("nm0000001", "nm0000003").toString());
+        assertEquals(false, estimate.getBoolean("connected"));
+        assertEquals(false, estimate.has("upperBound"));
+    }
+
+    /**
+     * This method tests estimates between actors no landmark reaches in a passing environment, where whether they
+     * are connected is unknown
+     * @throws JSONException
+     */
+    @Test
+    public void noLandmarkPass() throws JSONException{
+        // Neither component has a landmark, so whether they are one component is unknown
+        LandmarkOracle oracle = oracle();
+        JSONObject estimate = new JSONObject(oracle.estimate("nm0000003", "nm0000005").toString());
+        assertEquals(true, estimate.isNull("connected"));
+        assertEquals(true, estimate.isNull("upperBound"));
+        assertEquals(false, estimate.getBoolean("exact"));
+
+        // The same is true of two actors that are in fact connected
+        estimate = new JSONObject(oracle.estimate("nm0000003", "nm0000004").toString());
+        assertEquals(true, estimate.isNull("connected"));
+        assertEquals(1, estimate.getInt("lowerBound"));
+    }
+
+    /**
+     * This method tests an actor added since the tables were built in a passing environment, which gets an unknown
+     * distance flagged as stale, while an actor in neither the store nor the tables gets nothing
+     * @throws JSONException
+     */
+    @Test
+    public void addedSinceBuildPass() throws JSONException{
+        // Built before the actor existed, so it is in the store but not the tables
+        InMemoryGraphStore store = new InMemoryGraphStore();
+        store.addActor("nm0000102");
+        LandmarkOracle oracle = new LandmarkOracle(store, 1, 0);
+        oracle.refresh();
+        TestGraphs.cast(store, "tt0000001", "nm0000102", "nm0000001");
+
+        JSONObject estimate = new JSONObject(oracle.estimate("nm0000102", "nm0000001").toString());
+        assertEquals(true, estimate.isNull("connected"));
+        assertEquals(true, estimate.isNull("upperBound"));
+        assertEquals(true, estimate.getBoolean("stale"));
+        assertEquals(null, oracle.estimate("nm0000102", "nm9999999"));
+    }
+
+    /**
+     * This method tests a store without a view in a failing environment, where the oracle reports it cannot answer
+     */
+    @Test
+    public void unsupportedFail(){
+        // The Neo4j store gives no view, so there will never be tables
+        LandmarkOracle oracle = new LandmarkOracle(new Neo4jGraphStore(null, null), 1, 0);
+        oracle.refresh();
+        assertEquals(false, oracle.supported());
+        assertEquals(true, new LandmarkOracle(new InMemoryGraphStore(), 1, 0).supported());
+    }
+}
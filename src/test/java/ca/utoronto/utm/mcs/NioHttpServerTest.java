@@ -0,0 +1,277 @@
+package ca.utoronto.utm.mcs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.sun.net.httpserver.Headers;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class is for testing the NIO transport over a plain socket, the way a client that keeps its connection open
+ * or pipelines its requests talks to it
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+public class NioHttpServerTest {
+
+    // The largest body the server under test accepts
+    final static int MAX_BODY = 1024;
+
+    private NioHttpServer server;
+    private ExecutorService executor;
+    private Socket socket;
+
+    /**
+     * This method starts a server whose handler echoes the request body back, except on /api/v1/unsupported, which
+     * it answers with a 501. The admission filter is in front of it, as it is in App.
+     * @throws IOException
+     */
+    @BeforeEach
+    public void setup() throws IOException{
+        executor = Executors.newFixedThreadPool(4);
+        server = new NioHttpServer(new InetSocketAddress("127.0.0.1", 0), 1, MAX_BODY);
+        server.setExecutor(executor);
+        server.createContext("/api/v1/", exchange -> {
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            if(exchange.getRequestURI().getPath().equals("/api/v1/unsupported")){
+                exchange.sendResponseHeaders(501, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try(OutputStream out = exchange.getResponseBody()){
+                out.write(body);
+            }
+        }).getFilters().add(new AdmissionFilter(true, 16, 1, 256, 64, 250, 500, executor));
+        server.start();
+        socket = new Socket("127.0.0.1", server.getAddress().getPort());
+        socket.setSoTimeout(5000);
+    }
+
+    @AfterEach
+    public void teardown() throws IOException{
+        socket.close();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * This method writes raw bytes of one or more requests to the server
+     * @param request the request text, sent as is
+     * @throws IOException
+     */
+    void send(String request) throws IOException{
+        socket.getOutputStream().write(request.getBytes(StandardCharsets.ISO_8859_1));
+        socket.getOutputStream().flush();
+    }
+
+    /**
+     * This method reads one response off the socket
+     * @return   the response
+     * @throws IOException
+     */
+    Response receive() throws IOException{
+        InputStream in = socket.getInputStream();
+        String statusLine = line(in);
+        Headers headers = new Headers();
+        for(String header = line(in); !header.isEmpty(); header = line(in)){
+            int colon = header.indexOf(':');
+            headers.add(header.substring(0, colon), header.substring(colon + 1).trim());
+        }
+        String contentLength = headers.getFirst("Content-Length");
+        byte[] body = in.readNBytes(contentLength == null ? 0 : Integer.parseInt(contentLength));
+        return new Response(statusLine, headers, new String(body, StandardCharsets.UTF_8));
+    }
+
+    private static String line(InputStream in) throws IOException{
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for(int b = in.read(); b != '\n'; b = in.read()){
+            if(b < 0){
+                throw new IOException("The connection closed mid response");
+            }
+            if(b != '\r'){
+                bytes.write(b);
+            }
+        }
+        return bytes.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * This method reads the admission filter's counters for an endpoint over the same connection
+     */
+    JSONObject admission(String endpoint) throws IOException, JSONException{
+        send("GET /api/v1/admin/admission HTTP/1.1\r\n\r\n");
+        return new JSONObject(receive().body).getJSONObject("endpoints").getJSONObject(endpoint);
+    }
+
+    /**
+     * This method tests keep-alive requests sent one after another in a passing environment, and that each one gives
+     * its admission slot back
+     * @throws IOException
+     * @throws JSONException
+     */
+    @Test
+    public void keepAlivePass() throws IOException, JSONException{
+        for(int i = 0; i < 50; i++){
+            String body = "request " + i;
+            send("PUT /api/v1/echo HTTP/1.1\r\nContent-Length: " + body.length() + "\r\n\r\n" + body);
+            Response response = receive();
+            assertEquals("HTTP/1.1 200 OK", response.statusLine);
+            assertEquals(body, response.body);
+            assertEquals(null, response.headers.getFirst("Connection"));
+        }
+        JSONObject echo = admission("/api/v1/echo");
+        assertEquals(50, echo.getLong("admitted"));
+        assertEquals(0, echo.getInt("inFlight"));
+        assertEquals(16, echo.getInt("limit"));
+    }
+
+    /**
+     * This method tests requests pipelined in one write in a passing environment, which are answered in order
+     * @throws IOException
+     * @throws JSONException
+     */
+    @Test
+    public void pipeliningPass() throws IOException, JSONException{
+        StringBuilder requests = new StringBuilder();
+        for(int i = 0; i < 10; i++){
+            requests.append("PUT /api/v1/echo HTTP/1.1\r\nContent-Length: 1\r\n\r\n").append(i);
+        }
+        send(requests.toString());
+        for(int i = 0; i < 10; i++){
+            Response response = receive();
+            assertEquals("HTTP/1.1 200 OK", response.statusLine);
+            assertEquals(String.valueOf(i), response.body);
+        }
+        JSONObject echo = admission("/api/v1/echo");
+        assertEquals(10, echo.getLong("admitted"));
+        assertEquals(0, echo.getInt("inFlight"));
+    }
+
+    /**
+     * This method tests a chunked request body with an extension and a trailer in a passing environment
+     * @throws IOException
+     */
+    @Test
+    public void chunkedPass() throws IOException{
+        send("PUT /api/v1/echo HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "5\r\nKevin\r\n"
+                + "7;name=value\r\n Bacon!\r\n"
+                + "0\r\nX-Trailer: ignored\r\n\r\n");
+        Response response = receive();
+        assertEquals("HTTP/1.1 200 OK", response.statusLine);
+        assertEquals("Kevin Bacon!", response.body);
+
+        // The connection is still good for the next request
+        send("PUT /api/v1/echo HTTP/1.1\r\nContent-Length: 2\r\n\r\nok");
+        assertEquals("ok", receive().body);
+    }
+
+    /**
+     * This method tests a request that waits for 100 Continue before sending its body in a passing environment
+     * @throws IOException
+     */
+    @Test
+    public void continuePass() throws IOException{
+        send("PUT /api/v1/echo HTTP/1.1\r\nExpect: 100-continue\r\nContent-Length: 9\r\n\r\n");
+        assertEquals("HTTP/1.1 100 Continue", line(socket.getInputStream()));
+        assertEquals("", line(socket.getInputStream()));
+        send("Footloose");
+        Response response = receive();
+        assertEquals("HTTP/1.1 200 OK", response.statusLine);
+        assertEquals("Footloose", response.body);
+    }
+
+    /**
+     * This method tests a body larger than the server accepts in a failing environment, which is refused before it
+     * is read and the connection closed
+     * @throws IOException
+     */
+    @Test
+    public void bodyTooLargeFail() throws IOException{
+        send("PUT /api/v1/echo HTTP/1.1\r\nContent-Length: " + (MAX_BODY + 1) + "\r\n\r\n");
+        Response response = receive();
+        assertEquals("HTTP/1.1 413 Payload Too Large", response.statusLine);
+        assertEquals("close", response.headers.getFirst("Connection"));
+        assertEquals(-1, socket.getInputStream().read());
+    }
+
+    /**
+     * This method tests chunks adding up to more than the server accepts in a failing environment
+     * @throws IOException
+     */
+    @Test
+    public void chunkedTooLargeFail() throws IOException{
+        send("PUT /api/v1/echo HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + Integer.toHexString(MAX_BODY + 1) + "\r\n");
+        assertEquals("HTTP/1.1 413 Payload Too Large", receive().statusLine);
+    }
+
+    /**
+     * This method tests a request head larger than the read buffer in a failing environment
+     * @throws IOException
+     */
+    @Test
+    public void headersTooLargeFail() throws IOException{
+        send("GET /api/v1/echo HTTP/1.1\r\nX-Filler: " + "a".repeat(32 << 10) + "\r\n\r\n");
+        Response response = receive();
+        assertEquals("HTTP/1.1 431 Request Header Fields Too Large", response.statusLine);
+        assertEquals("close", response.headers.getFirst("Connection"));
+    }
+
+    /**
+     * This method tests a path outside every context and a malformed request line in a failing environment
+     * @throws IOException
+     */
+    @Test
+    public void notFoundFail() throws IOException{
+        send("GET /api/v2/getActor HTTP/1.1\r\n\r\n");
+        assertEquals("HTTP/1.1 404 Not Found", receive().statusLine);
+
+        socket.close();
+        socket = new Socket("127.0.0.1", server.getAddress().getPort());
+        socket.setSoTimeout(5000);
+        send("GARBAGE\r\n\r\n");
+        assertEquals("HTTP/1.1 400 Bad Request", receive().statusLine);
+    }
+
+    /**
+     * This method tests that a status the handler sends, such as countBaconPaths' 501, goes out with its own reason
+     * phrase
+     * @throws IOException
+     */
+    @Test
+    public void notImplementedFail() throws IOException{
+        send("GET /api/v1/unsupported HTTP/1.1\r\n\r\n");
+        Response response = receive();
+        assertEquals("HTTP/1.1 501 Not Implemented", response.statusLine);
+        assertEquals("0", response.headers.getFirst("Content-Length"));
+    }
+
+    /**
+     * This class is one response as read off the socket
+     */
+    static class Response {
+        final String statusLine;
+        final Headers headers;
+        final String body;
+
+        Response(String statusLine, Headers headers, String body){
+            this.statusLine = statusLine;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+}
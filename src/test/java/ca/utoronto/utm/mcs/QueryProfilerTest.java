@@ -0,0 +1,107 @@
+package ca.utoronto.utm.mcs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.neo4j.driver.Values;
+import org.neo4j.driver.summary.ResultSummary;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is for testing that the query profiler keeps slow queries with the server's own timings
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+public class QueryProfilerTest {
+
+    /**
+     * This method creates the summary of a result the server made available after one time and consumed after
+     * another, without a database
+     */
+    static ResultSummary summary(long availableMicros, long consumedMicros){
+        return (ResultSummary) Proxy.newProxyInstance(ResultSummary.class.getClassLoader(),
+                new Class<?>[]{ResultSummary.class}, (proxy, method, args) -> {
+                    if(method.getName().equals("resultAvailableAfter")){
+                        return ((TimeUnit) args[0]).convert(availableMicros, TimeUnit.MICROSECONDS);
+                    }else if(method.getName().equals("resultConsumedAfter")){
+                        return ((TimeUnit) args[0]).convert(consumedMicros, TimeUnit.MICROSECONDS);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * This method waits for the background thread to keep a slow query, and returns the slow queries reported
+     */
+    static JSONArray slowQueries(QueryProfiler profiler) throws JSONException, InterruptedException{
+        for(int attempt = 0; attempt < 100; attempt++){
+            JSONArray slowQueries = new JSONObject(profiler.report().toString()).getJSONArray("slowQueries");
+            if(slowQueries.length() > 0){
+                return slowQueries;
+            }
+            Thread.sleep(20);
+        }
+        return new JSONArray();
+    }
+
+    /**
+     * This method tests a query over the slow threshold in a passing environment, which is kept with the server's
+     * timings and its parameters, and written to the slow query log
+     * @param directory a temporary directory for the slow query log
+     * @throws JSONException
+     * @throws InterruptedException
+     * @throws IOException
+     */
+    @Test
+    public void slowQueryPass(@TempDir Path directory) throws JSONException, InterruptedException, IOException{
+        // With a 0 ms threshold every run is slow
+        Path logPath = directory.resolve("slow-queries.log");
+        QueryProfiler profiler = new QueryProfiler(null, 0, 0, 10, logPath);
+        profiler.record(Queries.GET_ACTOR, Values.parameters("actorId", "nm0000102"), System.nanoTime(),
+                summary(1500, 2500));
+
+        JSONArray slowQueries = slowQueries(profiler);
+        assertEquals(1, slowQueries.length());
+        JSONObject slow = slowQueries.getJSONObject(0);
+        assertEquals(Queries.GET_ACTOR.trim().replaceAll("\\s+", " "), slow.getString("query"));
+        assertEquals(1500, slow.getLong("availableAfterMicros"));
+        assertEquals(2500, slow.getLong("consumedAfterMicros"));
+        assertEquals(true, slow.getString("parameters").contains("nm0000102"));
+
+        JSONObject report = new JSONObject(profiler.report().toString());
+        assertEquals(0, report.getLong("slowMs"));
+        assertEquals(1, report.getJSONArray("queries").getJSONObject(0).getLong("slow"));
+
+        List<String> lines = Files.readAllLines(logPath);
+        assertEquals(1, lines.size());
+        assertEquals(slow.getString("query"), new JSONObject(lines.get(0)).getString("query"));
+    }
+
+    /**
+     * This method tests a query with no slow threshold set in a passing environment, which is counted but not kept
+     * @throws JSONException
+     */
+    @Test
+    public void fastQueryPass() throws JSONException{
+        // Without a threshold nothing is slow, but the run is still counted
+        QueryProfiler profiler = QueryProfiler.statisticsOnly();
+        profiler.record(Queries.GET_ACTOR, Values.parameters("actorId", "nm0000102"), System.nanoTime(),
+                summary(1500, 2500));
+
+        JSONObject report = new JSONObject(profiler.report().toString());
+        assertEquals(-1, report.getLong("slowMs"));
+        assertEquals(0, report.getJSONArray("slowQueries").length());
+        assertEquals(1, report.getJSONArray("queries").getJSONObject(0).getLong("count"));
+        assertEquals(1500, report.getJSONArray("queries").getJSONObject(0).getLong("availableAfterMicros"));
+    }
+}
@@ -0,0 +1,62 @@
+package ca.utoronto.utm.mcs;
+
+/**
+ * This class builds the small in-memory graphs the unit tests share, without a database
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+final class TestGraphs {
+
+    private TestGraphs(){
+    }
+
+    /**
+     * This method adds a movie and its cast to a store, adding any actor not already in it
+     * @param store the store to add to
+     * @param movieId the id of the movie
+     * @param actorIds the ids of the actors in the movie
+     * @return   the same store, to add more movies to
+     */
+    static InMemoryGraphStore cast(InMemoryGraphStore store, String movieId, String... actorIds){
+        store.addMovie(movieId);
+        for(String actorId : actorIds){
+            store.addActor(actorId);
+            store.addRelationship(actorId, movieId);
+        }
+        return store;
+    }
+
+    /**
+     * This method builds two components: Kevin Bacon and two co-stars around one movie each, and two actors sharing
+     * a movie of their own, plus an actor in no movie. Kevin Bacon is the actor in the most movies.
+     * @return   the store
+     */
+    static InMemoryGraphStore components(){
+        InMemoryGraphStore store = new InMemoryGraphStore();
+        cast(store, "tt0000001", "nm0000102", "nm0000001");
+        cast(store, "tt0000002", "nm0000102", "nm0000002");
+        cast(store, "tt0000003", "nm0000003", "nm0000004");
+        store.addActor("nm0000005");
+        return store;
+    }
+
+    /**
+     * This method builds a ladder of pairs of actors below Kevin Bacon, where both actors of a pair share one movie
+     * with both actors of the pair before, so the number of shortest paths doubles with every pair. The actors of
+     * pair n are nm1 and nm2 followed by n in six digits.
+     * @param pairs the number of pairs
+     * @return   the store
+     */
+    static InMemoryGraphStore ladder(int pairs){
+        InMemoryGraphStore store = new InMemoryGraphStore();
+        store.addActor("nm0000102");
+        String[] previous = {"nm0000102"};
+        for(int pair = 1; pair <= pairs; pair++){
+            String[] next = {String.format("nm1%06d", pair), String.format("nm2%06d", pair)};
+            cast(store, String.format("tt%07d", pair), previous);
+            cast(store, String.format("tt%07d", pair), next);
+            previous = next;
+        }
+        return store;
+    }
+}
@@ -0,0 +1,159 @@
+package ca.utoronto.utm.mcs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * This class is for testing that the embedded storage recovers every acknowledged write from its log
+ * @version 1.0
+ * @author Armand Sarkezians
+ */
+public class WriteAheadLogTest {
+
+    // Small segments, so the writes roll over and get checkpointed while the test runs
+    final static long SEGMENT_BYTES = 4096;
+    final static int COMPACT_SEGMENTS = 2;
+
+    /**
+     * This method opens the embedded DAO on a directory, recovering whatever the log holds
+     * @param directory the directory of the log
+     * @return   the DAO
+     * @throws IOException
+     */
+    static EmbeddedDAO open(Path directory) throws IOException{
+        return new EmbeddedDAO(new InMemoryGraphStore(), new EntityCache(0, 0), directory, SEGMENT_BYTES,
+                COMPACT_SEGMENTS);
+    }
+
+    /**
+     * This class is the process that gets killed. It writes actors, movies and relationships to the log in the
+     * directory given until it is stopped, printing the id of every actor once its writes are acknowledged.
+     */
+    public static class Writer {
+        public static void main(String[] args) throws IOException{
+            EmbeddedDAO dao = open(Path.of(args[0]));
+            for(int i = 0; ; i++){
+                dao.addActor("Actor " + i, "nm" + i);
+                dao.addMovie("Movie " + i, "tt" + i);
+                dao.addRelationship("nm" + i, "tt" + i);
+                System.out.println("ACK nm" + i);
+                System.out.flush();
+            }
+        }
+    }
+
+    /**
+     * This method tests a writer killed in the middle of its writes in a passing environment, where every write it
+     * acknowledged is recovered from the log
+     * @param directory a temporary directory for the log
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    public void recoversAfterCrashPass(@TempDir Path directory) throws IOException, InterruptedException{
+        Process writer = new ProcessBuilder(System.getProperty("java.home") + File.separator + "bin"
+                + File.separator + "java", "-cp", System.getProperty("java.class.path"), Writer.class.getName(),
+                directory.toString())
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+
+        // Killing the writer in the middle of its writes once enough of them were acknowledged
+        List<String> acknowledged = new ArrayList<>();
+        try(BufferedReader output = new BufferedReader(new InputStreamReader(writer.getInputStream(),
+                StandardCharsets.UTF_8))){
+            String line;
+            while(acknowledged.size() < 2000 && (line = output.readLine()) != null){
+                if(line.startsWith("ACK ")){
+                    acknowledged.add(line.substring(4));
+                }
+            }
+            writer.destroyForcibly();
+            writer.waitFor();
+        }
+        assertEquals(2000, acknowledged.size());
+
+        EmbeddedDAO dao = open(directory);
+        for(String actorId : acknowledged){
+            String movieId = "tt" + actorId.substring(2);
+            assertEquals(EmbeddedDAO.toJson("actorId", actorId, "Actor " + actorId.substring(2)),
+                    dao.getActor(actorId));
+            assertEquals(EmbeddedDAO.toJson("movieId", movieId, "Movie " + actorId.substring(2)),
+                    dao.getMovie(movieId));
+            assertEquals("TRUE", dao.hasRelationship(actorId, movieId));
+        }
+        // The graph store was rebuilt from the log too
+        assertEquals(true, dao.getGraphStore().hasActor(acknowledged.get(acknowledged.size() - 1)));
+        dao.close();
+    }
+
+    /**
+     * This method tests a log ending in half a record in a passing environment, which is recovered up to the last
+     * whole record and written after
+     * @param directory a temporary directory for the log
+     * @throws IOException
+     */
+    @Test
+    public void tornTailPass(@TempDir Path directory) throws IOException{
+        EmbeddedDAO dao = open(directory);
+        dao.addActor("Kevin Bacon", "nm0000102");
+        dao.addMovie("Footloose", "tt0087277");
+        dao.addRelationship("nm0000102", "tt0087277");
+        dao.close();
+
+        // Half a record at the end of the last segment, as a crash in the middle of a write leaves it
+        Path last;
+        try(Stream<Path> files = Files.list(directory)){
+            last = files.filter(path -> path.getFileName().toString().startsWith("segment-"))
+                    .max(Path::compareTo).get();
+        }
+        Files.write(last, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        dao = open(directory);
+        assertEquals("TRUE", dao.hasRelationship("nm0000102", "tt0087277"));
+        assertEquals(true, dao.addActor("John Lithgow", "nm0001475"));
+        dao.close();
+
+        dao = open(directory);
+        assertEquals(EmbeddedDAO.toJson("actorId", "nm0001475", "John Lithgow"), dao.getActor("nm0001475"));
+        dao.close();
+    }
+
+    /**
+     * This method tests recovering from a checkpoint followed by more writes and a clean in a passing environment
+     * @param directory a temporary directory for the log
+     * @throws IOException
+     */
+    @Test
+    public void checkpointPass(@TempDir Path directory) throws IOException{
+        EmbeddedDAO dao = open(directory);
+        for(int i = 0; i < 500; i++){
+            dao.addActor("Actor " + i, "nm" + i);
+        }
+        dao.checkpoint();
+        dao.addActor("Actor 500", "nm500");
+        dao.cleanDatabase();
+        dao.addMovie("Footloose", "tt0087277");
+        dao.close();
+
+        dao = open(directory);
+        assertEquals("Not Found", dao.getActor("nm0"));
+        assertEquals("Not Found", dao.getActor("nm500"));
+        assertEquals(EmbeddedDAO.toJson("movieId", "tt0087277", "Footloose"), dao.getMovie("tt0087277"));
+        assertEquals(false, dao.addMovie("Footloose", "tt0087277"));
+        dao.close();
+    }
+}